@@ -0,0 +1,135 @@
+package com.github.dakusui.actionunit.benchmarks;
+
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.visitors.ReportingActionPerformer;
+import com.github.dakusui.actionunit.visitors.SimpleActionPerformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
+import static com.github.dakusui.actionunit.core.ActionSupport.parallel;
+import static com.github.dakusui.actionunit.core.ActionSupport.retry;
+import static com.github.dakusui.actionunit.core.ActionSupport.sequential;
+import static com.github.dakusui.actionunit.core.ActionSupport.simple;
+import static com.github.dakusui.actionunit.core.ActionSupport.timeout;
+import static com.github.dakusui.actionunit.core.context.StreamGenerator.fromContextWith;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Measures overhead of action performers for typical shapes of action trees.
+ * Leaves do nothing but consuming their context so that the engine itself is
+ * measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(3)
+public class ActionPerformerBenchmark {
+  public enum PerformerType {
+    SIMPLE {
+      @Override
+      void perform(Action action) {
+        action.accept(SimpleActionPerformer.create());
+      }
+    },
+    REPORTING {
+      @Override
+      void perform(Action action) {
+        ReportingActionPerformer.create().perform(action);
+      }
+    };
+
+    abstract void perform(Action action);
+  }
+
+  @Param({ "SIMPLE", "REPORTING" })
+  public PerformerType performerType;
+
+  private Action deepSequential;
+  private Action wideParallel;
+  private Action sequentialForEach;
+  private Action parallelForEach;
+  private Action retry;
+  private Action timeout;
+  private Action bareLeaf;
+
+  @Setup
+  public void setUp(Blackhole blackhole) {
+    this.bareLeaf = simple("leaf", blackhole::consume);
+    this.deepSequential = deepSequential(100, blackhole);
+    this.wideParallel = parallel(leaves(1_000, blackhole));
+    this.sequentialForEach = forEach("i", fromContextWith(p -> IntStream.range(0, 10_000).boxed()))
+        .perform(simple("consume i", c -> blackhole.consume(c.<Integer>valueOf("i"))));
+    this.parallelForEach = forEach("i", fromContextWith(p -> IntStream.range(0, 10_000).boxed()))
+        .parallelly()
+        .perform(simple("consume i", c -> blackhole.consume(c.<Integer>valueOf("i"))));
+    this.retry = retry(bareLeaf).times(3).withIntervalOf(1, MILLISECONDS).build();
+    this.timeout = timeout(bareLeaf).in(10, SECONDS);
+  }
+
+  @Benchmark
+  public void leaf() {
+    performerType.perform(bareLeaf);
+  }
+
+  @Benchmark
+  public void deepSequentialComposite() {
+    performerType.perform(deepSequential);
+  }
+
+  @Benchmark
+  public void wideParallelComposite() {
+    performerType.perform(wideParallel);
+  }
+
+  @Benchmark
+  public void sequentialForEachOverLargeStream() {
+    performerType.perform(sequentialForEach);
+  }
+
+  @Benchmark
+  public void parallelForEachOverLargeStream() {
+    performerType.perform(parallelForEach);
+  }
+
+  @Benchmark
+  public void retryNotTriggered() {
+    performerType.perform(retry);
+  }
+
+  @Benchmark
+  public void timeoutNotTriggered() {
+    performerType.perform(timeout);
+  }
+
+  static Action deepSequential(int depth, Blackhole blackhole) {
+    Action ret = simple("leaf-" + depth, blackhole::consume);
+    for (int i = depth - 1; i >= 0; i--)
+      ret = sequential(simple("leaf-" + i, blackhole::consume), ret);
+    return ret;
+  }
+
+  static List<Action> leaves(int width, Blackhole blackhole) {
+    return IntStream.range(0, width)
+        .mapToObj(i -> simple("leaf-" + i, blackhole::consume))
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,61 @@
+package com.github.dakusui.actionunit.benchmarks;
+
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.io.Writer;
+import com.github.dakusui.actionunit.visitors.ActionReporter;
+import com.github.dakusui.actionunit.visitors.ReportingActionPerformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.parallel;
+import static com.github.dakusui.actionunit.core.ActionSupport.sequential;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Measures rendering of reports of huge action trees, which have already been
+ * performed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(3)
+public class ActionReporterBenchmark {
+  @Param({ "false", "true" })
+  public boolean verbose;
+
+  private Action                   action;
+  private ReportingActionPerformer performer;
+
+  @Setup
+  public void setUp(Blackhole blackhole) {
+    // 10 branches of 100 leaves each, and a chain of 100 sequential composites.
+    List<Action> branches = IntStream.range(0, 10)
+        .mapToObj(i -> sequential(ActionPerformerBenchmark.leaves(100, blackhole)))
+        .collect(Collectors.toList());
+    this.action = sequential(parallel(branches), ActionPerformerBenchmark.deepSequential(100, blackhole));
+    this.performer = ReportingActionPerformer.create();
+    this.performer.perform(action);
+  }
+
+  @Benchmark
+  public void reportHugeTree(Blackhole blackhole) {
+    Writer writer = blackhole::consume;
+    new ActionReporter(writer, performer.getReport(), verbose).report(action);
+  }
+}
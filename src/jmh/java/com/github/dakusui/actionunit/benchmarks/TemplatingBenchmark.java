@@ -0,0 +1,68 @@
+package com.github.dakusui.actionunit.benchmarks;
+
+import com.github.dakusui.actionunit.actions.cmd.CommandLineComposer;
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.utils.StableTemplatingUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+
+import static com.github.dakusui.actionunit.core.context.ContextFunctions.DEFAULT_PLACE_HOLDER_FORMATTER;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Measures composition of command lines, which is done every time a process is
+ * launched by a commander.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(3)
+public class TemplatingBenchmark {
+  private static final String[] VARIABLE_NAMES = { "src", "dest", "host" };
+  private static final Object[] VALUES         = { "/tmp/src.txt", "/tmp/dest.txt", "example.com" };
+
+  private String                                template;
+  private Map<String, Object>                   mapping;
+  private Context                               context;
+  private BiFunction<Context, Object[], String> composer;
+
+  @Setup
+  public void setUp() {
+    IntFunction<String> placeHolder = DEFAULT_PLACE_HOLDER_FORMATTER.apply(VARIABLE_NAMES);
+    CommandLineComposer.Builder builder = new CommandLineComposer.Builder(DEFAULT_PLACE_HOLDER_FORMATTER)
+        .append("scp -o StrictHostKeyChecking=no ", false)
+        .append(placeHolder.apply(0), false)
+        .append(" ", false)
+        .append(placeHolder.apply(2), false)
+        .append(":", false)
+        .append(placeHolder.apply(1), false);
+    this.context = Context.create();
+    this.template = builder.build().compose(context);
+    this.mapping = StableTemplatingUtils.toMapping(placeHolder, VALUES);
+    this.composer = builder.build().apply(VARIABLE_NAMES);
+  }
+
+  @Benchmark
+  public String template() {
+    return StableTemplatingUtils.template(template, mapping);
+  }
+
+  @Benchmark
+  public String composeCommandLine() {
+    return composer.apply(context, VALUES);
+  }
+}
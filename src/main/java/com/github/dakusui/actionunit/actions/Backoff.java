@@ -0,0 +1,134 @@
+package com.github.dakusui.actionunit.actions;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
+import static com.github.dakusui.actionunit.utils.InternalUtils.formatDuration;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A policy that decides how long a {@link Retry} action waits before its next
+ * attempt.
+ * <p>
+ * Use {@link Backoff#exponential(long, long, TimeUnit)} or
+ * {@link Backoff#decorrelatedJitter(long, long, TimeUnit)} when many actions
+ * may fail at the same time, e.g., iterations of a parallel {@link ForEach}
+ * that access the same remote host, so that their retries do not pile up.
+ */
+public interface Backoff {
+  /**
+   * Returns the shortest interval of this policy in nanoseconds.
+   *
+   * @return The base interval.
+   */
+  long baseIntervalInNanos();
+
+  /**
+   * Returns an interval in nanoseconds to wait before a next attempt.
+   *
+   * @param retry                   The number of retries made so far, which is {@code 0}
+   *                                for the interval after the first failure.
+   * @param previousIntervalInNanos The interval returned last time, or {@code 0}
+   *                                if {@code retry} is {@code 0}.
+   * @return An interval in nanoseconds.
+   */
+  long nextIntervalInNanos(int retry, long previousIntervalInNanos);
+
+  /**
+   * Returns a policy that always waits for the same interval.
+   *
+   * @param interval An interval.
+   * @param timeUnit A time unit of {@code interval}.
+   * @return A fixed backoff policy.
+   */
+  static Backoff fixed(long interval, TimeUnit timeUnit) {
+    long intervalInNanos = requireNonNull(timeUnit).toNanos(requireArgument(v -> v >= 0, interval));
+    return new Backoff() {
+      @Override
+      public long baseIntervalInNanos() {
+        return intervalInNanos;
+      }
+
+      @Override
+      public long nextIntervalInNanos(int retry, long previousIntervalInNanos) {
+        return intervalInNanos;
+      }
+
+      @Override
+      public String toString() {
+        return formatDuration(intervalInNanos);
+      }
+    };
+  }
+
+  /**
+   * Returns a policy that doubles the interval on every retry, starting from
+   * {@code initialInterval}, until it reaches {@code maxInterval}.
+   *
+   * @param initialInterval An interval before the first retry.
+   * @param maxInterval     The longest interval.
+   * @param timeUnit        A time unit of the intervals.
+   * @return An exponential backoff policy.
+   */
+  static Backoff exponential(long initialInterval, long maxInterval, TimeUnit timeUnit) {
+    long initialInNanos = requireNonNull(timeUnit).toNanos(requireArgument(v -> v > 0, initialInterval));
+    long maxInNanos = timeUnit.toNanos(requireArgument(v -> v >= initialInterval, maxInterval));
+    return new Backoff() {
+      @Override
+      public long baseIntervalInNanos() {
+        return initialInNanos;
+      }
+
+      @Override
+      public long nextIntervalInNanos(int retry, long previousIntervalInNanos) {
+        // Shifting more than this overflows for any positive initial interval.
+        if (retry >= Long.numberOfLeadingZeros(initialInNanos) - 1)
+          return maxInNanos;
+        return Math.min(maxInNanos, initialInNanos << retry);
+      }
+
+      @Override
+      public String toString() {
+        return format("%s..%s (exponential)", formatDuration(initialInNanos), formatDuration(maxInNanos));
+      }
+    };
+  }
+
+  /**
+   * Returns a policy that picks an interval at random between {@code baseInterval}
+   * and three times the previous one, capped by {@code maxInterval}.
+   * Unlike {@link Backoff#exponential(long, long, TimeUnit)}, actions that failed
+   * at the same time retry at different times.
+   *
+   * @param baseInterval The shortest interval.
+   * @param maxInterval  The longest interval.
+   * @param timeUnit     A time unit of the intervals.
+   * @return A decorrelated jitter backoff policy.
+   */
+  static Backoff decorrelatedJitter(long baseInterval, long maxInterval, TimeUnit timeUnit) {
+    long baseInNanos = requireNonNull(timeUnit).toNanos(requireArgument(v -> v > 0, baseInterval));
+    long maxInNanos = timeUnit.toNanos(requireArgument(v -> v >= baseInterval, maxInterval));
+    return new Backoff() {
+      @Override
+      public long baseIntervalInNanos() {
+        return baseInNanos;
+      }
+
+      @Override
+      public long nextIntervalInNanos(int retry, long previousIntervalInNanos) {
+        long previous = Math.max(baseInNanos, previousIntervalInNanos);
+        long upper = previous > maxInNanos / 3 ?
+            maxInNanos :
+            previous * 3;
+        return Math.min(maxInNanos, ThreadLocalRandom.current().nextLong(baseInNanos, upper + 1));
+      }
+
+      @Override
+      public String toString() {
+        return format("%s..%s (decorrelated jitter)", formatDuration(baseInNanos), formatDuration(maxInNanos));
+      }
+    };
+  }
+}
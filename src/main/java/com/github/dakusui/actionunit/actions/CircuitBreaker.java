@@ -0,0 +1,281 @@
+package com.github.dakusui.actionunit.actions;
+
+import com.github.dakusui.actionunit.core.Action;
+
+import java.util.Formatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * An action that stops performing another one while it keeps failing.
+ * <p>
+ * Outcomes of the wrapped action are recorded in a {@link Circuit}. Once the
+ * rate of failures in the recent calls exceeds a threshold, the circuit opens
+ * and the action fails immediately with a
+ * {@link com.github.dakusui.actionunit.exceptions.CircuitBreakerOpenException},
+ * without waiting out time-outs or retries inside it. After a while, one trial
+ * call is let through and the circuit closes again if it succeeds.
+ * <p>
+ * A circuit can be shared by actions that access the same resource, e.g., by
+ * giving the same key to {@link Circuit#of(String)}.
+ */
+public interface CircuitBreaker extends Action {
+  Action perform();
+
+  Circuit circuit();
+
+  @Override
+  default void accept(Visitor visitor) {
+    visitor.visit(this);
+  }
+
+  @Override
+  default void formatTo(Formatter formatter, int flags, int width, int precision) {
+    formatter.format("circuit breaker %s", circuit());
+  }
+
+  class Builder extends Action.Builder<CircuitBreaker> {
+    private final Action  perform;
+    private       Circuit circuit;
+
+    public Builder(Action perform) {
+      this.perform = requireNonNull(perform);
+    }
+
+    /**
+     * Makes the action use a circuit registered for {@code key}.
+     *
+     * @param key A key of a circuit, such as a host name.
+     * @return This object
+     * @see Circuit#of(String)
+     */
+    public Builder key(String key) {
+      return this.circuit(Circuit.of(key));
+    }
+
+    public Builder circuit(Circuit circuit) {
+      this.circuit = requireNonNull(circuit);
+      return this;
+    }
+
+    /**
+     * Builds a circuit breaker action. If no circuit is given, a new one with
+     * the default settings is created for the action.
+     *
+     * @return A circuit breaker action.
+     */
+    @Override
+    public CircuitBreaker build() {
+      Circuit circuit = this.circuit != null ?
+          this.circuit :
+          Circuit.builder("(noname)").build();
+      return new CircuitBreaker() {
+        @Override
+        public Action perform() {
+          return Builder.this.perform;
+        }
+
+        @Override
+        public Circuit circuit() {
+          return circuit;
+        }
+      };
+    }
+  }
+
+  /**
+   * Failure-rate state shared by circuit breaker actions.
+   * <p>
+   * Outcomes of the last {@code windowSize} calls are kept. The circuit opens
+   * when at least {@code minimumCalls} of them are recorded and the rate of
+   * failures among them reaches {@code failureRateThreshold}.
+   */
+  class Circuit {
+    public enum State {
+      CLOSED,
+      OPEN,
+      HALF_OPEN
+    }
+
+    private static final Map<String, Circuit> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String    key;
+    private final double    failureRateThreshold;
+    private final int       minimumCalls;
+    private final long      openDurationInNanos;
+    private final boolean[] window;
+    private       int       cursor;
+    private       int       calls;
+    private       int       failures;
+    private       State     state = State.CLOSED;
+    private       long      openedAt;
+    private       boolean   trialInProgress;
+
+    private Circuit(String key, double failureRateThreshold, int windowSize, int minimumCalls, long openDurationInNanos) {
+      this.key = requireNonNull(key);
+      this.failureRateThreshold = failureRateThreshold;
+      this.minimumCalls = minimumCalls;
+      this.openDurationInNanos = openDurationInNanos;
+      this.window = new boolean[windowSize];
+    }
+
+    /**
+     * Returns a circuit registered for {@code key}. A new one with the default
+     * settings is registered if there is none yet.
+     *
+     * @param key A key of a circuit, such as a host name.
+     * @return A circuit for {@code key}.
+     */
+    public static Circuit of(String key) {
+      return REGISTRY.computeIfAbsent(requireNonNull(key), k -> builder(k).build());
+    }
+
+    public static Builder builder(String key) {
+      return new Builder(key);
+    }
+
+    public String key() {
+      return this.key;
+    }
+
+    public synchronized State state() {
+      if (state == State.OPEN && System.nanoTime() - openedAt >= openDurationInNanos) {
+        state = State.HALF_OPEN;
+        trialInProgress = false;
+      }
+      return state;
+    }
+
+    /**
+     * Asks for a permission to perform the wrapped action. When {@code true} is
+     * returned, {@link Circuit#onSuccess()} or {@link Circuit#onFailure()} must
+     * be called after the action.
+     *
+     * @return {@code true} if the action can be performed.
+     */
+    public synchronized boolean tryAcquirePermission() {
+      switch (state()) {
+      case CLOSED:
+        return true;
+      case HALF_OPEN:
+        if (trialInProgress)
+          return false;
+        return trialInProgress = true;
+      default:
+        return false;
+      }
+    }
+
+    public synchronized void onSuccess() {
+      if (state == State.HALF_OPEN) {
+        close();
+        return;
+      }
+      record(false);
+    }
+
+    public synchronized void onFailure() {
+      if (state == State.HALF_OPEN) {
+        open();
+        return;
+      }
+      record(true);
+      if (calls >= minimumCalls && (double) failures / calls >= failureRateThreshold)
+        open();
+    }
+
+    /**
+     * Releases a permission without recording an outcome. Call this instead of
+     * {@link Circuit#onFailure()} when the action was cancelled, which says
+     * nothing about the health of what it calls.
+     */
+    public synchronized void onCancelled() {
+      if (state == State.HALF_OPEN)
+        trialInProgress = false;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return format("%s(%s, %s/%s failed)", key, state(), failures, calls);
+    }
+
+    private void record(boolean failed) {
+      if (calls == window.length) {
+        if (window[cursor])
+          failures--;
+      } else
+        calls++;
+      window[cursor] = failed;
+      if (failed)
+        failures++;
+      cursor = (cursor + 1) % window.length;
+    }
+
+    private void open() {
+      state = State.OPEN;
+      openedAt = System.nanoTime();
+      trialInProgress = false;
+    }
+
+    private void close() {
+      state = State.CLOSED;
+      cursor = 0;
+      calls = 0;
+      failures = 0;
+      trialInProgress = false;
+    }
+
+    public static class Builder {
+      private final String   key;
+      private       double   failureRateThreshold = 0.5;
+      private       int      windowSize           = 10;
+      private       int      minimumCalls         = 5;
+      private       long     openDuration         = 30;
+      private       TimeUnit openDurationTimeUnit = SECONDS;
+
+      Builder(String key) {
+        this.key = requireNonNull(key);
+      }
+
+      public Builder failureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = requireArgument(v -> v > 0 && v <= 1, failureRateThreshold);
+        return this;
+      }
+
+      public Builder windowSize(int windowSize) {
+        this.windowSize = requireArgument(v -> v > 0, windowSize);
+        return this;
+      }
+
+      public Builder minimumCalls(int minimumCalls) {
+        this.minimumCalls = requireArgument(v -> v > 0, minimumCalls);
+        return this;
+      }
+
+      /**
+       * Sets how long a circuit stays open before a trial call is let through.
+       *
+       * @param duration A duration.
+       * @param timeUnit A time unit of {@code duration}.
+       * @return This object
+       */
+      public Builder openFor(long duration, TimeUnit timeUnit) {
+        this.openDuration = requireArgument(v -> v > 0, duration);
+        this.openDurationTimeUnit = requireNonNull(timeUnit);
+        return this;
+      }
+
+      public Circuit build() {
+        requireArgument(v -> v <= windowSize, minimumCalls);
+        return new Circuit(key, failureRateThreshold, windowSize, minimumCalls, openDurationTimeUnit.toNanos(openDuration));
+      }
+
+    }
+  }
+}
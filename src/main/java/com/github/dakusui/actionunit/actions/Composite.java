@@ -6,6 +6,7 @@ import java.util.Collections;
 import java.util.Formatter;
 import java.util.List;
 
+import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
 import static java.util.Objects.requireNonNull;
 
 public interface Composite extends Action {
@@ -13,6 +14,27 @@ public interface Composite extends Action {
 
   boolean isParallel();
 
+  /**
+   * Returns the maximum number of children that can be performed at the same
+   * time. This value is meaningful only when this action is parallel.
+   *
+   * @return The maximum number of children performed at once.
+   */
+  default int parallelism() {
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * Returns {@code true} if the other children are cancelled when one of them
+   * fails. This value is meaningful only when this action is parallel.
+   *
+   * @return {@code true} if this action is fail-fast.
+   * @see com.github.dakusui.actionunit.core.Cancellation
+   */
+  default boolean failFast() {
+    return false;
+  }
+
   @Override
   default void formatTo(Formatter formatter, int flags, int width, int precision) {
     formatter.format(
@@ -21,10 +43,14 @@ public interface Composite extends Action {
             ? "parallelly"
             : "sequentially"
     );
+    if (isParallel() && failFast())
+      formatter.format(" (fail-fast)");
   }
 
   class Builder {
     private       boolean      parallel;
+    private       int          parallelism;
+    private       boolean      failFast;
     private final List<Action> actions;
 
     public Builder(List<Action> actions) {
@@ -33,27 +59,58 @@ public interface Composite extends Action {
     }
 
     public Builder parallel() {
+      return this.parallel(Integer.MAX_VALUE);
+    }
+
+    public Builder parallel(int parallelism) {
       this.parallel = true;
+      this.parallelism = requireArgument(v -> v > 0, parallelism);
+      return this;
+    }
+
+    /**
+     * Makes the action fail fast: when one of its children fails, the others
+     * are cancelled. Their processes are destroyed, {@link Retry} actions stop
+     * backing off, and children not started yet are skipped. This is effective
+     * only when the action is parallel.
+     *
+     * @return This object
+     */
+    public Builder failFast() {
+      this.failFast = true;
       return this;
     }
 
     public Builder sequential() {
       this.parallel = false;
+      this.parallelism = 1;
       return this;
     }
 
     public Composite build() {
-      return new Impl(actions, parallel);
+      return new Impl(actions, parallel, parallelism, failFast);
     }
   }
 
   class Impl implements Composite {
     private final List<Action> actions;
     private final boolean      parallel;
+    private final int          parallelism;
+    private final boolean      failFast;
 
     protected Impl(List<Action> actions, boolean parallel) {
+      this(actions, parallel, parallel ? Integer.MAX_VALUE : 1);
+    }
+
+    protected Impl(List<Action> actions, boolean parallel, int parallelism) {
+      this(actions, parallel, parallelism, false);
+    }
+
+    protected Impl(List<Action> actions, boolean parallel, int parallelism, boolean failFast) {
       this.actions = requireNonNull(actions);
       this.parallel = parallel;
+      this.parallelism = parallelism;
+      this.failFast = failFast;
     }
 
     @Override
@@ -70,5 +127,15 @@ public interface Composite extends Action {
     public boolean isParallel() {
       return this.parallel;
     }
+
+    @Override
+    public int parallelism() {
+      return this.parallelism;
+    }
+
+    @Override
+    public boolean failFast() {
+      return this.failFast;
+    }
   }
 }
@@ -2,21 +2,57 @@ package com.github.dakusui.actionunit.actions;
 
 import com.github.dakusui.actionunit.core.Action;
 import com.github.dakusui.actionunit.core.ActionSupport;
+import com.github.dakusui.actionunit.core.Context;
 import com.github.dakusui.actionunit.core.context.StreamGenerator;
 
 import java.util.Formatter;
 
+import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
 import static java.util.Objects.requireNonNull;
 
 public interface ForEach<E> extends Action {
   String loopVariableName();
 
+  /**
+   * Returns a slot to which the loop variable of this action is resolved.
+   *
+   * @return A slot of the loop variable.
+   */
+  default Context.Slot loopVariableSlot() {
+    return Context.Slot.of(loopVariableName());
+  }
+
   StreamGenerator<E> data();
 
   Action perform();
 
   boolean isParallel();
 
+  /**
+   * Returns the maximum number of iterations that can be performed at the same
+   * time. This value is meaningful only when this action is parallel.
+   * <p>
+   * Elements of {@link ForEach#data()} are pulled one by one when a worker
+   * becomes free, so no more than this number of elements are taken from the
+   * stream ahead of iterations that have finished.
+   *
+   * @return The maximum number of iterations performed at once.
+   */
+  default int parallelism() {
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * Returns {@code true} if the other iterations are cancelled when one of them
+   * fails. This value is meaningful only when this action is parallel.
+   *
+   * @return {@code true} if this action is fail-fast.
+   * @see com.github.dakusui.actionunit.core.Cancellation
+   */
+  default boolean failFast() {
+    return false;
+  }
+
   default void accept(Visitor visitor) {
     visitor.visit(this);
   }
@@ -24,16 +60,24 @@ public interface ForEach<E> extends Action {
   @Override
   default void formatTo(Formatter formatter, int flags, int width, int precision) {
     formatter.format("for each of %s %s", data(), isParallel() ? "parallely" : "sequentially");
+    if (isParallel() && parallelism() != Integer.MAX_VALUE)
+      formatter.format(" (at most %s at once)", parallelism());
+    if (isParallel() && failFast())
+      formatter.format(" (fail-fast)");
   }
 
   class Builder<E> extends Action.Builder<ForEach<E>> {
     private final StreamGenerator<E> streamGenerator;
     private final String             loopVariableName;
+    private final Context.Slot       loopVariableSlot;
     private       Action             perform = ActionSupport.nop();
     private       boolean            parallel;
+    private       int                parallelism;
+    private       boolean            failFast;
 
     public Builder(String loopVariableName, StreamGenerator<E> streamGenerator) {
       this.loopVariableName = requireNonNull(loopVariableName);
+      this.loopVariableSlot = Context.Slot.of(loopVariableName);
       this.streamGenerator = requireNonNull(streamGenerator);
       this.sequentially();
     }
@@ -44,12 +88,40 @@ public interface ForEach<E> extends Action {
     }
 
     public Builder<E> parallelly() {
+      return this.parallelly(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Makes the action performed in parallel, with no more than {@code parallelism}
+     * iterations in flight at the same time. This keeps memory use constant
+     * even if the data stream is very large or unbounded, e.g., one backed by
+     * {@link com.github.dakusui.actionunit.actions.cmd.Commander#toStreamGenerator()}.
+     *
+     * @param parallelism The maximum number of iterations performed at once.
+     * @return This object
+     */
+    public Builder<E> parallelly(int parallelism) {
       this.parallel = true;
+      this.parallelism = requireArgument(v -> v > 0, parallelism);
+      return this;
+    }
+
+    /**
+     * Makes the action fail fast: when one of its iterations fails, the others
+     * are cancelled. Their processes are destroyed, {@link Retry} actions stop
+     * backing off, and elements not taken from the stream yet are skipped.
+     * This is effective only when the action is parallel.
+     *
+     * @return This object
+     */
+    public Builder<E> failFast() {
+      this.failFast = true;
       return this;
     }
 
     public Builder<E> sequentially() {
       this.parallel = false;
+      this.parallelism = 1;
       return this;
     }
 
@@ -60,6 +132,11 @@ public interface ForEach<E> extends Action {
           return Builder.this.loopVariableName;
         }
 
+        @Override
+        public Context.Slot loopVariableSlot() {
+          return Builder.this.loopVariableSlot;
+        }
+
         @Override
         public StreamGenerator<E> data() {
           return Builder.this.streamGenerator;
@@ -74,6 +151,16 @@ public interface ForEach<E> extends Action {
         public boolean isParallel() {
           return Builder.this.parallel;
         }
+
+        @Override
+        public int parallelism() {
+          return Builder.this.parallelism;
+        }
+
+        @Override
+        public boolean failFast() {
+          return Builder.this.failFast;
+        }
       };
     }
   }
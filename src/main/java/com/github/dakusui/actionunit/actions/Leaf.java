@@ -16,6 +16,16 @@ public interface Leaf extends Action, Function<Context, Runnable> {
     return runnable(context);
   }
 
+  /**
+   * Runs this action in {@code context}. Implementations should override this
+   * method so that it runs without creating a {@link Runnable}.
+   *
+   * @param context A context in which this action is run.
+   */
+  default void perform(Context context) {
+    runnable(context).run();
+  }
+
   default void accept(Visitor visitor) {
     visitor.visit(this);
   }
@@ -28,6 +38,11 @@ public interface Leaf extends Action, Function<Context, Runnable> {
         return () -> consumer.accept(context);
       }
 
+      @Override
+      public void perform(Context context) {
+        consumer.accept(context);
+      }
+
       @Override
       public void formatTo(Formatter formatter, int flags, int width, int precision) {
         formatter.format("%s", consumer);
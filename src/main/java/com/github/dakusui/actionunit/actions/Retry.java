@@ -9,6 +9,7 @@ import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
 import static com.github.dakusui.actionunit.utils.InternalUtils.formatDuration;
 import static com.github.dakusui.actionunit.utils.InternalUtils.formatNumberOfTimes;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 public interface Retry extends Action {
@@ -21,6 +22,25 @@ public interface Retry extends Action {
 
   long intervalInNanoseconds();
 
+  /**
+   * Returns a policy that decides intervals between attempts.
+   * By default, {@link Retry#intervalInNanoseconds()} is used for every retry.
+   *
+   * @return A backoff policy.
+   */
+  default Backoff backoff() {
+    return Backoff.fixed(intervalInNanoseconds(), NANOSECONDS);
+  }
+
+  /**
+   * Returns a budget from which this action takes a token for each retry.
+   *
+   * @return A retry budget.
+   */
+  default RetryBudget budget() {
+    return RetryBudget.unlimited();
+  }
+
   default void accept(Visitor visitor) {
     visitor.visit(this);
   }
@@ -29,7 +49,7 @@ public interface Retry extends Action {
   default void formatTo(Formatter formatter, int flags, int width, int precision) {
     formatter.format("retry %s in %s on %s",
         formatNumberOfTimes(times()),
-        formatDuration(intervalInNanoseconds()),
+        backoff(),
         targetExceptionClass().getSimpleName()
     );
   }
@@ -41,6 +61,8 @@ public interface Retry extends Action {
     private       Class<? extends Throwable> targetExceptionClass = Exception.class;
     private       long                       interval             = 10;
     private       TimeUnit                   timeUnit             = SECONDS;
+    private       Backoff                    backoff              = null;
+    private       RetryBudget                budget               = RetryBudget.unlimited();
 
     public Builder(Action perform) {
       this.perform = requireNonNull(perform);
@@ -60,11 +82,40 @@ public interface Retry extends Action {
     public Builder withIntervalOf(long interval, TimeUnit timeUnit) {
       this.interval = requireArgument(v -> v > 0, interval);
       this.timeUnit = requireNonNull(timeUnit);
+      this.backoff = null;
+      return this;
+    }
+
+    /**
+     * Sets a policy that decides intervals between attempts. This overrides an
+     * interval given by {@link Builder#withIntervalOf(long, TimeUnit)}.
+     *
+     * @param backoff A backoff policy.
+     * @return This object
+     */
+    public Builder backoff(Backoff backoff) {
+      this.backoff = requireNonNull(backoff);
+      return this;
+    }
+
+    /**
+     * Sets a budget shared with other retry actions, which limits how many
+     * retries they make in total.
+     *
+     * @param budget A retry budget.
+     * @return This object
+     */
+    public Builder budget(RetryBudget budget) {
+      this.budget = requireNonNull(budget);
       return this;
     }
 
     @Override
     public Retry build() {
+      Backoff backoff = this.backoff != null ?
+          this.backoff :
+          Backoff.fixed(this.interval, this.timeUnit);
+      RetryBudget budget = this.budget;
       return new Retry() {
         @Override
         public Action perform() {
@@ -83,7 +134,17 @@ public interface Retry extends Action {
 
         @Override
         public long intervalInNanoseconds() {
-          return timeUnit.toNanos(Builder.this.interval);
+          return backoff.baseIntervalInNanos();
+        }
+
+        @Override
+        public Backoff backoff() {
+          return backoff;
+        }
+
+        @Override
+        public RetryBudget budget() {
+          return budget;
         }
 
         @Override
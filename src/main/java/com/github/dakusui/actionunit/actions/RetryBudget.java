@@ -0,0 +1,100 @@
+package com.github.dakusui.actionunit.actions;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
+import static com.github.dakusui.actionunit.utils.InternalUtils.formatDuration;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A token bucket shared by {@link Retry} actions, which limits how many retries
+ * they can make in a period of time.
+ * <p>
+ * Give the same budget to retries that access the same resource (e.g., through
+ * {@link RetryOption.Builder#retryBudget(RetryBudget)}). Once the budget is
+ * exhausted, a failing action fails immediately instead of retrying, which
+ * prevents a retry storm against a resource that is already struggling.
+ * <p>
+ * Tokens are refilled continuously, one every {@code period / retries}, and
+ * up to {@code retries} of them are kept. This is implemented as a virtual
+ * scheduling (GCRA) so that no lock is taken.
+ */
+public class RetryBudget {
+  private static final RetryBudget UNLIMITED = new RetryBudget() {
+    @Override
+    public boolean tryAcquire() {
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return "RetryBudget(unlimited)";
+    }
+  };
+
+  private final long       periodInNanos;
+  private final long       nanosPerRetry;
+  /**
+   * A time at which the bucket becomes full ("theoretical arrival time").
+   */
+  private final AtomicLong fullAt;
+
+  private RetryBudget() {
+    this.periodInNanos = 0;
+    this.nanosPerRetry = 0;
+    this.fullAt = null;
+  }
+
+  private RetryBudget(int retries, long periodInNanos) {
+    this.periodInNanos = periodInNanos;
+    this.nanosPerRetry = Math.max(1, periodInNanos / retries);
+    this.fullAt = new AtomicLong(System.nanoTime());
+  }
+
+  /**
+   * Returns a budget that allows at most {@code retries} retries in {@code period}.
+   *
+   * @param retries  The number of retries allowed in a period.
+   * @param period   A period.
+   * @param timeUnit A time unit of {@code period}.
+   * @return A new budget.
+   */
+  public static RetryBudget of(int retries, long period, TimeUnit timeUnit) {
+    return new RetryBudget(
+        requireArgument(v -> v > 0, retries),
+        requireNonNull(timeUnit).toNanos(requireArgument(v -> v > 0, period)));
+  }
+
+  /**
+   * Returns a budget that never runs out.
+   *
+   * @return A budget without limit.
+   */
+  public static RetryBudget unlimited() {
+    return UNLIMITED;
+  }
+
+  /**
+   * Takes a token for a retry from this budget.
+   *
+   * @return {@code true} if a token was taken, {@code false} if the budget is exhausted.
+   */
+  public boolean tryAcquire() {
+    while (true) {
+      long now = System.nanoTime();
+      long current = fullAt.get();
+      long next = (current - now < 0 ? now : current) + nanosPerRetry;
+      if (next - now > periodInNanos)
+        return false;
+      if (fullAt.compareAndSet(current, next))
+        return true;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return format("RetryBudget(%s per %s)", periodInNanos / nanosPerRetry, formatDuration(periodInNanos));
+  }
+}
@@ -4,6 +4,7 @@ import com.github.dakusui.actionunit.core.Action;
 
 import java.util.concurrent.TimeUnit;
 
+import static com.github.dakusui.actionunit.core.ActionSupport.circuitBreaker;
 import static com.github.dakusui.actionunit.core.ActionSupport.retry;
 import static com.github.dakusui.actionunit.core.ActionSupport.timeout;
 import static java.util.Objects.requireNonNull;
@@ -17,6 +18,9 @@ public class RetryOption {
     long                       retryInterval         = -1;
     TimeUnit                   retryIntervalTimeUnit = SECONDS;
     int                        retries               = -1;
+    Backoff                    backoff               = null;
+    RetryBudget                retryBudget           = RetryBudget.unlimited();
+    CircuitBreaker.Circuit     circuit               = null;
 
     public Builder timeoutIn(long timeoutDuration, TimeUnit timeoutTimeUnit) {
       this.timeoutDuration = timeoutDuration;
@@ -40,6 +44,43 @@ public class RetryOption {
       return this;
     }
 
+    /**
+     * Sets a backoff policy, which overrides an interval given by
+     * {@link Builder#retryInterval(long, TimeUnit)}.
+     *
+     * @param backoff A backoff policy.
+     * @return This object
+     */
+    public Builder backoff(Backoff backoff) {
+      this.backoff = requireNonNull(backoff);
+      return this;
+    }
+
+    /**
+     * Sets a budget shared by retries made with this option.
+     *
+     * @param retryBudget A retry budget.
+     * @return This object
+     * @see RetryBudget
+     */
+    public Builder retryBudget(RetryBudget retryBudget) {
+      this.retryBudget = requireNonNull(retryBudget);
+      return this;
+    }
+
+    /**
+     * Sets a circuit, which makes the action fail fast without time-outs or
+     * retries while the circuit is open.
+     *
+     * @param circuit A circuit shared by actions that access the same resource.
+     * @return This object
+     * @see CircuitBreaker
+     */
+    public Builder circuit(CircuitBreaker.Circuit circuit) {
+      this.circuit = requireNonNull(circuit);
+      return this;
+    }
+
     public RetryOption build() {
       return new RetryOption(
           timeoutDuration,
@@ -47,7 +88,10 @@ public class RetryOption {
           retryOn,
           retryInterval,
           retryIntervalTimeUnit,
-          retries);
+          retries,
+          backoff,
+          retryBudget,
+          circuit);
     }
   }
 
@@ -78,6 +122,15 @@ public class RetryOption {
   public final long                       retryInterval;
   public final TimeUnit                   retryIntervalTimeUnit;
   public final int                        retries;
+  /**
+   * A backoff policy, or {@code null} if {@code retryInterval} is used for every retry.
+   */
+  public final Backoff                    backoff;
+  public final RetryBudget                retryBudget;
+  /**
+   * A circuit of a circuit breaker wrapping the action, or {@code null} if none.
+   */
+  public final CircuitBreaker.Circuit     circuit;
 
 
   private RetryOption(
@@ -86,24 +139,37 @@ public class RetryOption {
       Class<? extends Throwable> retryOn,
       long retryInterval,
       TimeUnit retryIntervalTimeUnit,
-      int retries) {
+      int retries,
+      Backoff backoff,
+      RetryBudget retryBudget,
+      CircuitBreaker.Circuit circuit) {
     this.timeoutDuration = timeoutDuration;
     this.timeoutTimeUnit = requireNonNull(timeoutTimeUnit);
     this.retryOn = requireNonNull(retryOn);
     this.retryInterval = retryInterval;
     this.retryIntervalTimeUnit = requireNonNull(retryIntervalTimeUnit);
     this.retries = retries;
+    this.backoff = backoff;
+    this.retryBudget = requireNonNull(retryBudget);
+    this.circuit = circuit;
   }
 
   public static Action retryAndTimeOut(Action action, RetryOption retryOption) {
-    if (retryOption.retries > 0)
-      action = retry(action)
+    if (retryOption.retries > 0) {
+      Retry.Builder builder = retry(action)
           .on(retryOption.retryOn)
           .times(retryOption.retries)
-          .withIntervalOf(retryOption.retryInterval, retryOption.retryIntervalTimeUnit)
+          .budget(retryOption.retryBudget);
+      action = (retryOption.backoff != null ?
+          builder.backoff(retryOption.backoff) :
+          builder.withIntervalOf(retryOption.retryInterval, retryOption.retryIntervalTimeUnit))
           .$();
+    }
     if (retryOption.timeoutDuration >= 0)
       action = timeout(action).in(retryOption.timeoutDuration, retryOption.timeoutTimeUnit);
+    // Outermost, so that an open circuit skips the whole time-out and retry cycle.
+    if (retryOption.circuit != null)
+      action = circuitBreaker(action).circuit(retryOption.circuit).$();
     return action;
   }
 }
@@ -10,6 +10,17 @@ import static com.github.dakusui.actionunit.utils.InternalUtils.formatDuration;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
+/**
+ * An action that performs another one on the calling thread and fails with an
+ * {@link com.github.dakusui.actionunit.exceptions.ActionTimeOutException} if it
+ * does not finish in a given duration.
+ * <p>
+ * When the duration passes, the calling thread is interrupted and the
+ * {@link com.github.dakusui.actionunit.core.Cancellation} bound for the action is
+ * cancelled, which stops tasks of parallel actions in it running on other
+ * threads. The action is not abandoned, though: a body that responds to neither
+ * of them runs past the deadline, and the time-out is reported once it finishes.
+ */
 public interface TimeOut extends Action {
   Action perform();
 
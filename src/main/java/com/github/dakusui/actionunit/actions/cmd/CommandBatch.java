@@ -0,0 +1,227 @@
+package com.github.dakusui.actionunit.actions.cmd;
+
+import com.github.dakusui.actionunit.core.Cancellation;
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.core.context.multiparams.Params;
+import com.github.dakusui.processstreamer.core.process.ProcessStreamer;
+import com.github.dakusui.processstreamer.core.process.ProcessStreamer.Checker;
+import com.github.dakusui.processstreamer.exceptions.CommandExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.github.dakusui.processstreamer.core.process.ProcessStreamer.Checker.createCheckerForExitCode;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Runs command lines of consecutive {@link CommandLeaf} actions in one shell
+ * process and hands the output and exit code of each command back to the action
+ * that it came from.
+ * <p>
+ * The script run by the shell prints a {@code BEGIN} marker before each command
+ * and an {@code END} marker, which has the command's exit code, after it. Each
+ * command is run in a sub-shell, so that a change of directory or variables
+ * made by a command does not affect the following ones, just like when they are
+ * run one by one. Like a command run on its own, stderr of a command is not
+ * passed to its downstream consumer. The script stops after the first command
+ * that exits with non-zero.
+ * <p>
+ * The shell is destroyed when the first action is cancelled, like a process of
+ * a command run on its own, and it terminates the command being run and its
+ * child processes.
+ * <p>
+ * The results of a run of the script are handed from the first action of the
+ * batch to the following ones, which are performed in the same context, and
+ * they are discarded as soon as the last one or a failing one is performed.
+ *
+ * @see CommandBatcher
+ */
+class CommandBatch {
+  private static final Logger LOGGER = LoggerFactory.getLogger(CommandBatch.class);
+
+  private final List<CommandLeaf>     leaves;
+  /**
+   * Results of runs of the script in progress. Since contexts in which the batch
+   * is performed concurrently (e.g., by iterations of a parallel loop) differ,
+   * each of them has its own entry. Context variables are not used, since a
+   * context may be shared by concurrent branches of a parallel action.
+   */
+  private final Map<Context, Results> inProgress = new ConcurrentHashMap<>();
+
+  CommandBatch(List<CommandLeaf> leaves) {
+    this.leaves = new ArrayList<>(requireNonNull(leaves));
+  }
+
+  int size() {
+    return this.leaves.size();
+  }
+
+  CommandLeaf leaf(int index) {
+    return this.leaves.get(index);
+  }
+
+  /**
+   * Performs {@code index}-th command of this batch. The first command runs the
+   * whole script and the others replay what it printed. A command that was not
+   * reached by the script is run by its original action.
+   *
+   * @param index   An index of the command to be performed.
+   * @param context A context in which the command is performed.
+   */
+  void perform(int index, Context context) {
+    if (index == 0)
+      this.inProgress.put(context, runScript(context));
+    Results results = this.inProgress.get(context);
+    Output output = results != null ?
+        results.outputs.get(index) :
+        null;
+    boolean followed = false;
+    try {
+      if (output == null)
+        this.leaves.get(index).runnable(context).run();
+      else
+        replay(this.leaves.get(index).commander(), results.commandLines.get(index), output);
+      followed = index < this.leaves.size() - 1;
+    } finally {
+      // Following actions are not performed once this one fails.
+      if (!followed)
+        this.inProgress.remove(context);
+    }
+  }
+
+  private Results runScript(Context context) {
+    Commander<?> first = this.leaves.get(0).commander();
+    String token = UUID.randomUUID().toString();
+    Results ret = new Results(this.leaves.size());
+    for (CommandLeaf each : this.leaves) {
+      Commander<?> commander = each.commander();
+      ret.commandLines.add(CommanderUtils.composeCommandLine(
+          commander.buildCommandLineComposer(),
+          Params.create(context, commander.variableNames())));
+    }
+    String script = composeScript(token, ret.commandLines);
+    LOGGER.info("Batched command lines:{}", ret.commandLines);
+    LOGGER.trace("Shell:{}", first.shell());
+    ProcessStreamer.Builder builder = ProcessStreamer.pipe(Stream.empty(), first.shell());
+    first.envvars().forEach(builder::env);
+    first.cwd().ifPresent(builder::cwd);
+    // The exit code of the script is not checked. A command that was running when the
+    // script was terminated is reported as a failure by the action that owns it.
+    ProcessStreamer processStreamer = builder.command(script)
+        .checker(createCheckerForExitCode(exitCode -> true))
+        .build();
+    try (Cancellation.Registration ignored = CommanderUtils.destroyOnCancel(processStreamer, context)) {
+      processStreamer.stream().forEach(line -> ret.accept(token, line));
+    }
+    return ret;
+  }
+
+  private static String composeScript(String token, List<String> commandLines) {
+    try (Formatter b = new Formatter()) {
+      // Process#destroy() terminates only the shell, while the running command
+      // would keep the output open. The command is run as a background job and
+      // waited for, so that the shell can pass the termination on to it.
+      b.format("trap 'kill $pid $(pgrep -P $pid 2>/dev/null) 2>/dev/null' TERM%n");
+      for (int i = 0; i < commandLines.size(); i++) {
+        b.format("echo %s:BEGIN:%s%n", token, i);
+        b.format("(%n%s%n) &%n", commandLines.get(i));
+        b.format("pid=$!%n");
+        b.format("wait $pid%n");
+        b.format("rc=$?%n");
+        b.format("echo %s:END:%s:$rc%n", token, i);
+        b.format("[ $rc -eq 0 ] || exit 0%n");
+      }
+      return b.toString();
+    }
+  }
+
+  private static void replay(Commander<?> commander, String commandLine, Output output) {
+    Checker checker = commander.checker();
+    Checker.StreamChecker stdout = checker.forStdOut();
+    Consumer<String> downstreamConsumer = commander.downstreamConsumer();
+    // Makes the exit code available through CommandLeaf#lastExitCode() as if
+    // the command was run on its own.
+    CommanderUtils.LAST_EXIT_CODE.remove();
+    try {
+      output.lines.forEach(stdout.andThen(downstreamConsumer));
+    } finally {
+      if (output.exitCode != null)
+        CommanderUtils.LAST_EXIT_CODE.set(output.exitCode);
+    }
+    if (output.exitCode == null)
+      throw new CommandExecutionException(
+          format("shell=[%s]:command line=[%s]%nShell exited before the command finished%n  Recent output:%s",
+              commander.shell(),
+              commandLine,
+              formatRecentOutput(output.lines)),
+          null);
+    checker.describeMismatch(output.exitCode).ifPresent(mismatch -> {
+      throw new CommandExecutionException(
+          format("shell=[%s]:command line=[%s]%n%s%n  Recent output:%s",
+              commander.shell(),
+              commandLine,
+              mismatch,
+              formatRecentOutput(output.lines)),
+          null);
+    });
+  }
+
+  private static String formatRecentOutput(List<String> lines) {
+    return lines.subList(Math.max(0, lines.size() - 10), lines.size())
+        .stream()
+        .collect(joining(format("%n"), format("%n"), ""));
+  }
+
+  private static class Results {
+    final List<String> commandLines;
+    final List<Output> outputs;
+    Output current;
+
+    Results(int size) {
+      this.commandLines = new ArrayList<>(size);
+      this.outputs = new ArrayList<>(Collections.nCopies(size, null));
+    }
+
+    void accept(String token, String line) {
+      int i = line.indexOf(token);
+      if (i < 0) {
+        appendToCurrent(line);
+        return;
+      }
+      // A command may not end its output with a new line.
+      if (i > 0)
+        appendToCurrent(line.substring(0, i));
+      String[] marker = line.substring(i + token.length() + 1).split(":");
+      if ("BEGIN".equals(marker[0])) {
+        this.current = new Output();
+        this.outputs.set(Integer.parseInt(marker[1]), this.current);
+      } else if ("END".equals(marker[0]) && this.current != null) {
+        this.current.exitCode = Integer.parseInt(marker[2]);
+        this.current = null;
+      }
+    }
+
+    private void appendToCurrent(String line) {
+      if (this.current != null)
+        this.current.lines.add(line);
+      else
+        LOGGER.debug("Output outside commands:{}", line);
+    }
+  }
+
+  private static class Output {
+    final List<String> lines = new ArrayList<>();
+    Integer exitCode;
+  }
+}
@@ -0,0 +1,301 @@
+package com.github.dakusui.actionunit.actions.cmd;
+
+import com.github.dakusui.actionunit.actions.*;
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Context;
+
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A visitor that rewrites an action tree so that consecutive commands in a
+ * sequential composite run in one shell process.
+ * <p>
+ * Children of a sequential composite are batched if they are actions created by
+ * {@link Commander#toAction()} (optionally named), if they have neither retries
+ * nor a time-out, if they do not read stdin, and if they share the same shell,
+ * working directory, and environment variables. Any other action breaks a batch.
+ * Each batched action is replaced with one that keeps its original format,
+ * downstream consumer, and checker, so that actions are reported and checked
+ * one by one as before. A command that is skipped because a preceding one in
+ * the same batch failed is run on its own when it is reached.
+ * <p>
+ * Batching has the following limits, which should be considered before applying
+ * it:
+ * <ul>
+ *   <li>The whole script is run by the first action of a batch, so its record in
+ *   a report is charged with the wall time of all the commands, while the records
+ *   of the following ones show almost no time spent.</li>
+ *   <li>Command lines of all the commands are built from the context in which the
+ *   first one is performed, before downstream consumers of the preceding ones are
+ *   called. A command line that depends on what a preceding command's consumer
+ *   stores, e.g., in a variable of an enclosing loop, should not be batched.</li>
+ * </ul>
+ * <p>
+ * Actions that are not changed by the rewriting are returned as they are.
+ * <pre>
+ *   ReportingActionPerformer.create().perform(CommandBatcher.optimize(action));
+ * </pre>
+ *
+ * @see CommandBatch
+ */
+public class CommandBatcher implements Action.Visitor {
+  private Action result;
+
+  private CommandBatcher() {
+  }
+
+  /**
+   * Returns an action that batches commands in {@code action}.
+   *
+   * @param action An action to be optimized.
+   * @return An optimized action, or {@code action} itself if nothing is batched.
+   */
+  public static Action optimize(Action action) {
+    CommandBatcher batcher = new CommandBatcher();
+    requireNonNull(action).accept(batcher);
+    return batcher.result;
+  }
+
+  @Override
+  public void visit(Leaf action) {
+    this.result = action;
+  }
+
+  @Override
+  public void visit(Named action) {
+    Action child = optimize(action.action());
+    this.result = child == action.action() ?
+        action :
+        Named.of(action.name(), child);
+  }
+
+  @Override
+  public void visit(Composite action) {
+    List<Action> children = action.isParallel() ?
+        optimizeEach(action.children()) :
+        batchConsecutiveCommands(action.children());
+    if (children.equals(action.children())) {
+      this.result = action;
+      return;
+    }
+    Composite.Builder builder = new Composite.Builder(children);
+    if (action.isParallel())
+      builder.parallel(action.parallelism());
+    if (action.failFast())
+      builder.failFast();
+    this.result = builder.build();
+  }
+
+  @Override
+  public <E> void visit(ForEach<E> action) {
+    Action perform = optimize(action.perform());
+    if (perform == action.perform()) {
+      this.result = action;
+      return;
+    }
+    ForEach.Builder<E> builder = new ForEach.Builder<>(action.loopVariableName(), action.data());
+    if (action.isParallel())
+      builder.parallelly(action.parallelism());
+    if (action.failFast())
+      builder.failFast();
+    this.result = builder.perform(perform);
+  }
+
+  @Override
+  public void visit(While action) {
+    Action perform = optimize(action.perform());
+    this.result = perform == action.perform() ?
+        action :
+        new While.Builder(action.condition()).perform(perform).build();
+  }
+
+  @Override
+  public void visit(When action) {
+    Action perform = optimize(action.perform());
+    Action otherwise = optimize(action.otherwise());
+    if (perform == action.perform() && otherwise == action.otherwise()) {
+      this.result = action;
+      return;
+    }
+    // Not rebuilt with When.Builder, which would name the branches again.
+    this.result = new When() {
+      @Override
+      public Predicate<Context> cond() {
+        return action.cond();
+      }
+
+      @Override
+      public Action perform() {
+        return perform;
+      }
+
+      @Override
+      public Action otherwise() {
+        return otherwise;
+      }
+    };
+  }
+
+  @Override
+  public void visit(Attempt action) {
+    Action perform = optimize(action.perform());
+    Action recover = optimize(action.recover());
+    Action ensure = optimize(action.ensure());
+    if (perform == action.perform() && recover == action.recover() && ensure == action.ensure()) {
+      this.result = action;
+      return;
+    }
+    // Not rebuilt with Attempt.Builder, which would name the blocks again.
+    this.result = new Attempt() {
+      @Override
+      public Action perform() {
+        return perform;
+      }
+
+      @Override
+      public Action recover() {
+        return recover;
+      }
+
+      @Override
+      public Action ensure() {
+        return ensure;
+      }
+
+      @Override
+      public Class<? extends Throwable> targetExceptionClass() {
+        return action.targetExceptionClass();
+      }
+    };
+  }
+
+  @Override
+  public void visit(Retry action) {
+    Action perform = optimize(action.perform());
+    this.result = perform == action.perform() ?
+        action :
+        new Retry.Builder(perform)
+            .on(action.targetExceptionClass())
+            .times(action.times())
+            .backoff(action.backoff())
+            .budget(action.budget())
+            .$();
+  }
+
+  @Override
+  public void visit(TimeOut action) {
+    Action perform = optimize(action.perform());
+    this.result = perform == action.perform() ?
+        action :
+        new TimeOut.Builder(perform).in(action.durationInNanos(), NANOSECONDS);
+  }
+
+  @Override
+  public void visit(CircuitBreaker action) {
+    Action perform = optimize(action.perform());
+    this.result = perform == action.perform() ?
+        action :
+        new CircuitBreaker.Builder(perform).circuit(action.circuit()).build();
+  }
+
+  private static List<Action> optimizeEach(List<Action> actions) {
+    List<Action> ret = new ArrayList<>(actions.size());
+    for (Action each : actions)
+      ret.add(optimize(each));
+    return ret;
+  }
+
+  private static List<Action> batchConsecutiveCommands(List<Action> actions) {
+    List<Action> ret = new ArrayList<>(actions.size());
+    List<Action> group = new ArrayList<>();
+    for (Action each : actions) {
+      CommandLeaf leaf = batchableCommandLeafOf(each);
+      if (leaf == null || !group.isEmpty() && !canBeBatched(batchableCommandLeafOf(group.get(0)), leaf)) {
+        flush(group, ret);
+        if (leaf == null) {
+          ret.add(optimize(each));
+          continue;
+        }
+      }
+      group.add(each);
+    }
+    flush(group, ret);
+    return ret;
+  }
+
+  private static void flush(List<Action> group, List<Action> out) {
+    if (group.size() < 2) {
+      out.addAll(group);
+      group.clear();
+      return;
+    }
+    List<CommandLeaf> leaves = new ArrayList<>(group.size());
+    for (Action each : group)
+      leaves.add(batchableCommandLeafOf(each));
+    CommandBatch batch = new CommandBatch(leaves);
+    for (int i = 0; i < group.size(); i++) {
+      Action each = group.get(i);
+      Action batched = new BatchedCommandLeaf(batch, i);
+      out.add(each instanceof Named ?
+          Named.of(((Named) each).name(), batched) :
+          batched);
+    }
+    group.clear();
+  }
+
+  /**
+   * Returns a command leaf in {@code action} if it can be batched, otherwise
+   * {@code null}.
+   */
+  private static CommandLeaf batchableCommandLeafOf(Action action) {
+    Action target = action instanceof Named ?
+        ((Named) action).action() :
+        action;
+    if (!(target instanceof CommandLeaf) || target instanceof BatchedCommandLeaf)
+      return null;
+    CommandLeaf ret = (CommandLeaf) target;
+    return ret.commander().isStdinSpecified() ?
+        null :
+        ret;
+  }
+
+  private static boolean canBeBatched(CommandLeaf a, CommandLeaf b) {
+    Commander<?> c = a.commander();
+    Commander<?> d = b.commander();
+    return Objects.equals(c.shell().format(), d.shell().format()) &&
+        Objects.equals(c.cwd(), d.cwd()) &&
+        Objects.equals(c.envvars(), d.envvars());
+  }
+
+  private static class BatchedCommandLeaf implements CommandLeaf {
+    private final CommandBatch batch;
+    private final int          index;
+
+    BatchedCommandLeaf(CommandBatch batch, int index) {
+      this.batch = requireNonNull(batch);
+      this.index = index;
+    }
+
+    @Override
+    public Commander<?> commander() {
+      return batch.leaf(index).commander();
+    }
+
+    @Override
+    public Runnable runnable(Context context) {
+      return () -> batch.perform(index, context);
+    }
+
+    @Override
+    public void formatTo(Formatter formatter, int flags, int width, int precision) {
+      formatter.format("%s", batch.leaf(index));
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.github.dakusui.actionunit.actions.cmd;
+
+import com.github.dakusui.actionunit.actions.Leaf;
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.core.context.ContextConsumer;
+
+import java.util.Formatter;
+import java.util.Optional;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A leaf action that runs a command built by a {@link Commander}.
+ * This interface lets visitors such as {@link CommandBatcher} know which command
+ * a leaf runs.
+ */
+public interface CommandLeaf extends Leaf {
+  /**
+   * Returns a commander from which this action was created.
+   *
+   * @return A commander.
+   */
+  Commander<?> commander();
+
+  /**
+   * Returns an exit code of the command last run by a command leaf on the
+   * current thread, which is available to listeners notified of the end of the
+   * leaf, for instance. An empty value is returned if the command didn't finish.
+   *
+   * @return An exit code of the last command.
+   */
+  static Optional<Integer> lastExitCode() {
+    return Optional.ofNullable(CommanderUtils.LAST_EXIT_CODE.get());
+  }
+
+  static CommandLeaf of(Commander<?> commander, ContextConsumer consumer) {
+    requireNonNull(commander);
+    requireNonNull(consumer);
+    return new CommandLeaf() {
+      @Override
+      public Commander<?> commander() {
+        return commander;
+      }
+
+      @Override
+      public Runnable runnable(Context context) {
+        return () -> consumer.accept(context);
+      }
+
+      @Override
+      public void perform(Context context) {
+        consumer.accept(context);
+      }
+
+      @Override
+      public void formatTo(Formatter formatter, int flags, int width, int precision) {
+        formatter.format("%s", consumer);
+      }
+    };
+  }
+}
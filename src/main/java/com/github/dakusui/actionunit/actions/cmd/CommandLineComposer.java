@@ -10,6 +10,8 @@ import java.util.Formattable;
 import java.util.Formatter;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.IntFunction;
@@ -20,10 +22,23 @@ import static java.util.stream.Collectors.joining;
 public interface CommandLineComposer extends Function<String[], BiFunction<Context, Object[], String>>, Formattable {
   @Override
   default BiFunction<Context, Object[], String> apply(String[] variableNames) {
-    return (context, argValues) -> StableTemplatingUtils.template(
-        compose(context),
-        StableTemplatingUtils.toMapping(this.parameterPlaceHolderFactory().apply(variableNames), argValues)
-    );
+    Map<String, Integer> placeHolders = StableTemplatingUtils.toSlots(
+        this.parameterPlaceHolderFactory().apply(variableNames),
+        variableNames.length);
+    return (context, argValues) -> compile(compose(context), placeHolders).render(argValues);
+  }
+
+  /**
+   * Compiles a command line composed by this object.
+   * Implementations may cache the returned template since the same command line
+   * is usually composed every time this object is applied.
+   *
+   * @param commandLine  A command line composed by {@link CommandLineComposer#compose(Context)}.
+   * @param placeHolders A map from parameter place holders to their indices.
+   * @return A compiled template.
+   */
+  default StableTemplatingUtils.Template compile(String commandLine, Map<String, Integer> placeHolders) {
+    return StableTemplatingUtils.compile(commandLine, placeHolders);
   }
 
   @Override
@@ -41,11 +56,17 @@ public interface CommandLineComposer extends Function<String[], BiFunction<Conte
     private Function<String[], IntFunction<String>> parameterPlaceHolderFactory;
     private List<String>                            knownVariableNames;
     private List<ContextFunction<String>>           tokens;
+    /*
+     * Shared with clones until either of them is modified, so that a composer is
+     * built only once for the same tokens.
+     */
+    private AtomicReference<CommandLineComposer>    built;
 
     public Builder(Function<String[], IntFunction<String>> parameterPlaceHolderFactory) {
       this.parameterPlaceHolderFactory = requireNonNull(parameterPlaceHolderFactory);
       this.tokens = new LinkedList<>();
       this.knownVariableNames = new LinkedList<>();
+      this.built = new AtomicReference<>();
     }
 
     public Builder append(String text, boolean quoted) {
@@ -58,6 +79,7 @@ public interface CommandLineComposer extends Function<String[], BiFunction<Conte
       if (quoted)
         func = quoteWithApostrophe(func);
       this.tokens.add(func);
+      this.built = new AtomicReference<>();
       return this;
     }
 
@@ -70,6 +92,7 @@ public interface CommandLineComposer extends Function<String[], BiFunction<Conte
         func = quoteWithApostrophe(func);
       }
       this.tokens.add(func);
+      this.built = new AtomicReference<>();
       return this.declareVariable(variableName);
     }
 
@@ -80,6 +103,16 @@ public interface CommandLineComposer extends Function<String[], BiFunction<Conte
     }
 
     public CommandLineComposer build() {
+      CommandLineComposer ret = built.get();
+      if (ret == null) {
+        built.compareAndSet(null, createComposer(parameterPlaceHolderFactory, new ArrayList<>(tokens)));
+        ret = built.get();
+      }
+      return ret;
+    }
+
+    private static CommandLineComposer createComposer(Function<String[], IntFunction<String>> parameterPlaceHolderFactory, List<ContextFunction<String>> tokens) {
+      AtomicReference<StableTemplatingUtils.Template> lastCompiled = new AtomicReference<>();
       return new CommandLineComposer() {
         @Override
         public Function<String[], IntFunction<String>> parameterPlaceHolderFactory() {
@@ -95,6 +128,16 @@ public interface CommandLineComposer extends Function<String[], BiFunction<Conte
         public String compose(Context context) {
           return tokens.stream().map(each -> each.apply(context)).collect(joining());
         }
+
+        @Override
+        public StableTemplatingUtils.Template compile(String commandLine, Map<String, Integer> placeHolders) {
+          StableTemplatingUtils.Template ret = lastCompiled.get();
+          if (ret == null || !ret.isCompiledFrom(commandLine, placeHolders)) {
+            ret = StableTemplatingUtils.compile(commandLine, placeHolders);
+            lastCompiled.set(ret);
+          }
+          return ret;
+        }
       };
     }
 
@@ -36,6 +36,7 @@ public abstract class Commander<C extends Commander<C>> implements Cloneable {
   private       Supplier<Consumer<String>> downstreamConsumerFactory;
   private       Supplier<Checker>          checkerFactory;
   private       Stream<String>             stdin;
+  private       boolean                    stdinSpecified;
   private       Shell                      shell;
   private       File                       cwd         = null;
   private final Map<String, String>        envvars;
@@ -45,8 +46,8 @@ public abstract class Commander<C extends Commander<C>> implements Cloneable {
   protected Commander(CommanderInitializer initializer) {
     this.parameterPlaceHolderFactory = initializer.variablePlaceHolderFormatter();
     this.envvars = new LinkedHashMap<>();
-    this.stdin(Stream.empty())
-        .retryOption(RetryOption.none())
+    this.stdin = Stream.empty();
+    this.retryOption(RetryOption.none())
         .shell(Shell.local())
         .checker(createCheckerForExitCode(0))
         .downstreamConsumer(LOGGER::trace);
@@ -125,6 +126,7 @@ public abstract class Commander<C extends Commander<C>> implements Cloneable {
   @SuppressWarnings("unchecked")
   public C stdin(Stream<String> stdin) {
     this.stdin = requireNonNull(stdin);
+    this.stdinSpecified = true;
     return (C) this;
   }
 
@@ -344,6 +346,16 @@ public abstract class Commander<C extends Commander<C>> implements Cloneable {
     return this.downstreamConsumerFactory.get();
   }
 
+  /**
+   * Returns {@code true} if a stream to be given to the command's stdin was set
+   * by {@link Commander#stdin(Stream)} method.
+   *
+   * @return Whether stdin was specified or not.
+   */
+  boolean isStdinSpecified() {
+    return this.stdinSpecified;
+  }
+
   String[] variableNames() {
     return commandLineComposerBuilderIfSet().knownVariables();
   }
@@ -1,10 +1,13 @@
 package com.github.dakusui.actionunit.actions.cmd;
 
+import com.github.dakusui.actionunit.actions.cmd.unix.ControlMaster;
+import com.github.dakusui.actionunit.actions.cmd.unix.SshOptions;
+
 import java.util.function.Function;
 
 import static com.github.dakusui.actionunit.utils.InternalUtils.memoize;
 
-public interface CommanderFactoryManager {
+public interface CommanderFactoryManager extends AutoCloseable {
   default UnixCommanderFactory local() {
     return () -> initializerManager().apply("localhost");
   }
@@ -18,4 +21,27 @@ public interface CommanderFactoryManager {
   }
 
   CommanderInitializer initializerFor(String host);
+
+  /**
+   * Returns a control master owned by this object, with which remote commanders
+   * can share one {@code ssh} connection per host.
+   * Pass it to {@link SshOptions.Builder#controlMaster(ControlMaster)} when
+   * building options in {@link CommanderFactoryManager#initializerFor(String)}.
+   * Master connections are closed by {@link CommanderFactoryManager#close()},
+   * once this object is garbage collected, or at shutdown of the JVM.
+   *
+   * @return A control master owned by this object.
+   */
+  default ControlMaster controlMaster() {
+    return ControlMaster.of(this);
+  }
+
+  /**
+   * Releases resources held by this object, such as master connections of
+   * {@code ssh}.
+   */
+  @Override
+  default void close() {
+    ControlMaster.release(this);
+  }
 }
@@ -2,6 +2,8 @@ package com.github.dakusui.actionunit.actions.cmd;
 
 import com.github.dakusui.actionunit.actions.RetryOption;
 import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Cancellation;
+import com.github.dakusui.actionunit.core.Context;
 import com.github.dakusui.actionunit.core.context.*;
 import com.github.dakusui.actionunit.core.context.multiparams.Params;
 import com.github.dakusui.processstreamer.core.process.ProcessStreamer;
@@ -14,7 +16,6 @@ import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
-import static com.github.dakusui.actionunit.core.ActionSupport.leaf;
 import static com.github.dakusui.actionunit.core.context.ContextFunctions.multiParamsConsumerFor;
 import static com.github.dakusui.actionunit.core.context.ContextFunctions.multiParamsPredicateFor;
 import static com.github.dakusui.actionunit.utils.InternalUtils.objectToStringIfOverridden;
@@ -29,6 +30,12 @@ public enum CommanderUtils {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(CommanderUtils.class);
 
+  /**
+   * An exit code of a command last run by a {@link CommandLeaf} on the current
+   * thread.
+   */
+  static final ThreadLocal<Integer> LAST_EXIT_CODE = new ThreadLocal<>();
+
   public static String quoteWithApostropheForShell(String s) {
     return String.format("'%s'", escapeSingleQuotesForShell(s));
   }
@@ -39,7 +46,7 @@ public enum CommanderUtils {
 
   static Action createAction(Commander commander, String[] variableNames) {
     return RetryOption.retryAndTimeOut(
-        leaf(createContextConsumer(commander)),
+        CommandLeaf.of(commander, createContextConsumer(commander)),
         commander.retryOption());
   }
 
@@ -49,11 +56,14 @@ public enum CommanderUtils {
         new Function<Params, Stream<String>>() {
           @Override
           public Stream<String> apply(Params params) {
-            return createProcessStreamerBuilder(commander, params)
+            ProcessStreamer processStreamer = createProcessStreamerBuilder(commander, params)
                 .checker(commander.checker())
-                .build()
+                .build();
+            Cancellation.Registration registration = destroyOnCancel(processStreamer, params.context());
+            return processStreamer
                 .stream()
-                .peek(commander.downstreamConsumer());
+                .peek(commander.downstreamConsumer())
+                .onClose(registration::close);
           }
 
           @Override
@@ -70,14 +80,39 @@ public enum CommanderUtils {
     return multiParamsConsumerFor(commander.variableNames())
         .toContextConsumer(
             printableConsumer(
-                (Params params) -> createProcessStreamerBuilder(commander, params)
-                    .checker(commander.checker())
-                    .build()
-                    .stream()
-                    .forEach(commander.downstreamConsumer()))
+                (Params params) -> {
+                  LAST_EXIT_CODE.remove();
+                  ProcessStreamer processStreamer = createProcessStreamerBuilder(commander, params)
+                      .checker(commander.checker())
+                      .build();
+                  try (Cancellation.Registration ignored = destroyOnCancel(processStreamer, params.context())) {
+                    processStreamer.stream().forEach(commander.downstreamConsumer());
+                  } finally {
+                    recordExitCodeOf(processStreamer);
+                  }
+                })
                 .describe(() -> commander.buildCommandLineComposer().format()));
   }
 
+  /**
+   * Makes {@code processStreamer} destroyed when the action running it is
+   * cancelled, either through the context (see {@link Context#cancellation()})
+   * or by a failure of its sibling in a fail-fast parallel action.
+   */
+  static Cancellation.Registration destroyOnCancel(ProcessStreamer processStreamer, Context context) {
+    Cancellation.Registration byContext = context.cancellation().onCancel(processStreamer::destroy);
+    Cancellation.Registration byThread = Cancellation.current().onCancel(processStreamer::destroy);
+    return () -> {
+      byContext.close();
+      byThread.close();
+    };
+  }
+
+  private static void recordExitCodeOf(ProcessStreamer processStreamer) {
+    if (!processStreamer.isAlive())
+      LAST_EXIT_CODE.set(processStreamer.exitValue());
+  }
+
   static ContextPredicate createContextPredicate(
       Commander<?> commander) {
     return multiParamsPredicateFor(commander.variableNames())
@@ -85,11 +120,14 @@ public enum CommanderUtils {
             (Params params) -> {
               ProcessStreamer.Builder processStreamerBuilder = createProcessStreamerBuilder(commander, params);
               try {
-                processStreamerBuilder
+                ProcessStreamer processStreamer = processStreamerBuilder
                     .checker(commander.checker())
-                    .build()
-                    .stream()
-                    .forEach(commander.downstreamConsumer());
+                    .build();
+                try (Cancellation.Registration ignored = destroyOnCancel(processStreamer, params.context())) {
+                  processStreamer
+                      .stream()
+                      .forEach(commander.downstreamConsumer());
+                }
                 return true;
               } catch (ProcessStreamer.Failure failure) {
                 String msg = format("Condition '%s' was not satisfied: %s", commander.checker(), failure.getMessage());
@@ -106,13 +144,17 @@ public enum CommanderUtils {
 
   static ContextFunction<String> createContextFunction(Commander<?> commander) {
     return ContextFunctions.<String>multiParamsFunctionFor(commander.variableNames())
-        .toContextFunction(params ->
-            createProcessStreamerBuilder(commander, params)
-                .checker(commander.checker())
-                .build()
+        .toContextFunction(params -> {
+          ProcessStreamer processStreamer = createProcessStreamerBuilder(commander, params)
+              .checker(commander.checker())
+              .build();
+          try (Cancellation.Registration ignored = destroyOnCancel(processStreamer, params.context())) {
+            return processStreamer
                 .stream()
                 .peek(commander.downstreamConsumer())
-                .collect(joining(format("%n"))));
+                .collect(joining(format("%n")));
+          }
+        });
   }
 
   static ProcessStreamer.Builder createProcessStreamerBuilder(Commander<?> commander, Params params) {
@@ -130,14 +172,7 @@ public enum CommanderUtils {
       Stream<String> stdin, Shell shell, File cwd, Map<String, String> envvars,
       CommandLineComposer commandLineComposer,
       Params params) {
-    String[] variableNames = params.paramNames().toArray(new String[0]);
-    Object[] variableValues = params.paramNames()
-        .stream()
-        .map(params::valueOf)
-        .toArray();
-    String commandLine = commandLineComposer
-        .apply(variableNames)
-        .apply(params.context(), variableValues);
+    String commandLine = composeCommandLine(commandLineComposer, params);
     LOGGER.info("Command Line:{}", commandLine);
     LOGGER.trace("Shell:{}", shell);
     if (cwd != null)
@@ -154,4 +189,15 @@ public enum CommanderUtils {
       ret.cwd(cwd);
     return ret.command(commandLine);
   }
+
+  static String composeCommandLine(CommandLineComposer commandLineComposer, Params params) {
+    String[] variableNames = params.paramNames().toArray(new String[0]);
+    Object[] variableValues = params.paramNames()
+        .stream()
+        .map(params::valueOf)
+        .toArray();
+    return commandLineComposer
+        .apply(variableNames)
+        .apply(params.context(), variableValues);
+  }
 }
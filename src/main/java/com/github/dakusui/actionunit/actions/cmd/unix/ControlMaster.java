@@ -0,0 +1,215 @@
+package com.github.dakusui.actionunit.actions.cmd.unix;
+
+import com.github.dakusui.actionunit.exceptions.ActionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Manages master connections of {@code ssh}'s connection multiplexing
+ * ({@code ControlMaster}, {@code ControlPath}, and {@code ControlPersist} options).
+ * <p>
+ * Once options returned by {@link ControlMaster#sshOptions()} are given to
+ * {@code ssh} or {@code scp} commands (see {@link SshOptions.Builder#controlMaster(ControlMaster)}),
+ * the first command to a destination opens a master connection and following
+ * ones to the same destination reuse it without handshakes.
+ * Sockets of master connections are created under a directory owned by this
+ * object, and they are closed by {@link ControlMaster#close()} or at shutdown
+ * of the JVM. A control master obtained by {@link ControlMaster#of(Object)}
+ * whose owner has been garbage collected is closed lazily: by the next call of
+ * {@link ControlMaster#of(Object)} or {@link ControlMaster#release(Object)},
+ * otherwise at shutdown. Until then, its master connections stay open for
+ * their {@code ControlPersist} seconds after the last command.
+ */
+public class ControlMaster implements AutoCloseable {
+  private static final Logger                     LOGGER                  = LoggerFactory.getLogger(ControlMaster.class);
+  private static final long                       DEFAULT_PERSIST_SECONDS = 60;
+  private static final Map<Owner, ControlMaster>  OWNED                   = new ConcurrentHashMap<>();
+  private static final ReferenceQueue<Object>     COLLECTED_OWNERS        = new ReferenceQueue<>();
+  private static final Set<ControlMaster>         OPEN                    = createOpenMasters();
+
+  private final String        program;
+  private final File          controlDirectory;
+  private final long          persistInSeconds;
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+
+  /**
+   * Creates a control master whose sockets are created under a new temporary
+   * directory.
+   *
+   * @param persistInSeconds Seconds for which a master connection stays open after
+   *                         the last command using it finishes.
+   */
+  public ControlMaster(long persistInSeconds) {
+    this("ssh", createTemporaryDirectory(), persistInSeconds);
+  }
+
+  public ControlMaster(String program, File controlDirectory, long persistInSeconds) {
+    this.program = requireNonNull(program);
+    this.controlDirectory = requireNonNull(controlDirectory);
+    this.persistInSeconds = requireArgument(v -> v > 0, persistInSeconds);
+    OPEN.add(this);
+  }
+
+  /**
+   * Returns a control master owned by {@code owner}. A new one is created if
+   * {@code owner} does not have one yet. Owners are compared by identity and
+   * are not kept from being garbage collected. Control masters of collected
+   * owners are closed here.
+   *
+   * @param owner An owner of a control master.
+   * @return A control master owned by {@code owner}.
+   * @see ControlMaster#release(Object)
+   */
+  public static ControlMaster of(Object owner) {
+    closeMastersOfCollectedOwners();
+    return OWNED.computeIfAbsent(
+        new Owner(requireNonNull(owner), COLLECTED_OWNERS),
+        o -> new ControlMaster(DEFAULT_PERSIST_SECONDS));
+  }
+
+  /**
+   * Closes a control master owned by {@code owner}, if any.
+   *
+   * @param owner An owner of a control master.
+   */
+  public static void release(Object owner) {
+    closeMastersOfCollectedOwners();
+    Optional.ofNullable(OWNED.remove(new Owner(requireNonNull(owner), null))).ifPresent(ControlMaster::close);
+  }
+
+  /**
+   * Returns values for {@code -o} option of {@code ssh} and {@code scp} commands.
+   * {@code %C} in the {@code ControlPath} is expanded by {@code ssh} into a hash of
+   * local host, remote host, port, and user, so that a master connection is
+   * opened for each destination.
+   *
+   * @return Options to enable connection multiplexing.
+   */
+  public List<String> sshOptions() {
+    return Arrays.asList(
+        "ControlMaster=auto",
+        format("ControlPath=%s/%%C", controlDirectory.getAbsolutePath()),
+        format("ControlPersist=%s", persistInSeconds));
+  }
+
+  public File controlDirectory() {
+    return this.controlDirectory;
+  }
+
+  public boolean isClosed() {
+    return this.closed.get();
+  }
+
+  /**
+   * Asks all the master connections opened under this object to exit and removes
+   * their control directory.
+   */
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true))
+      return;
+    OPEN.remove(this);
+    File[] sockets = controlDirectory.listFiles();
+    if (sockets != null)
+      for (File each : sockets) {
+        exitMaster(each);
+        if (!each.delete() && each.exists())
+          LOGGER.debug("Failed to delete:{}", each);
+      }
+    if (!controlDirectory.delete() && controlDirectory.exists())
+      LOGGER.debug("Failed to delete:{}", controlDirectory);
+  }
+
+  @Override
+  public String toString() {
+    return format("ControlMaster(%s, persist=%ss%s)", controlDirectory, persistInSeconds, isClosed() ? ", closed" : "");
+  }
+
+  private void exitMaster(File socket) {
+    // A destination is required by the syntax, but it is not used since the socket is specified directly.
+    ProcessBuilder processBuilder = new ProcessBuilder(
+        program, "-o", "ControlPath=" + socket.getAbsolutePath(), "-O", "exit", "control-master")
+        .redirectErrorStream(true);
+    try {
+      Process process = processBuilder.start();
+      process.getOutputStream().close();
+      if (!process.waitFor(5, SECONDS)) {
+        LOGGER.warn("Master connection for:{} did not exit in time", socket);
+        process.destroy();
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Failed to exit master connection for:{}", socket, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static File createTemporaryDirectory() {
+    try {
+      // Kept short since a path of a unix domain socket is limited to about 100 characters.
+      return Files.createTempDirectory("actionunit-ssh-").toFile();
+    } catch (IOException e) {
+      throw ActionException.wrap(e);
+    }
+  }
+
+  private static void closeMastersOfCollectedOwners() {
+    for (Reference<?> each = COLLECTED_OWNERS.poll(); each != null; each = COLLECTED_OWNERS.poll())
+      Optional.ofNullable(OWNED.remove(each)).ifPresent(ControlMaster::close);
+  }
+
+  private static Set<ControlMaster> createOpenMasters() {
+    Set<ControlMaster> ret = ConcurrentHashMap.newKeySet();
+    Runtime.getRuntime().addShutdownHook(new Thread(
+        () -> ret.forEach(ControlMaster::close),
+        "actionunit-control-master-cleaner"));
+    return ret;
+  }
+
+  /**
+   * A weak reference to an owner, which is equal to another one referring to
+   * the same owner.
+   */
+  private static class Owner extends WeakReference<Object> {
+    private final int hashCode;
+
+    Owner(Object owner, ReferenceQueue<Object> queue) {
+      super(owner, queue);
+      this.hashCode = System.identityHashCode(owner);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hashCode;
+    }
+
+    @Override
+    public boolean equals(Object anotherObject) {
+      if (this == anotherObject)
+        return true;
+      if (!(anotherObject instanceof Owner))
+        return false;
+      Object owner = this.get();
+      return owner != null && owner == ((Owner) anotherObject).get();
+    }
+  }
+}
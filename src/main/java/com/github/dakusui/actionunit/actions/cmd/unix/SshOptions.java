@@ -1,6 +1,7 @@
 package com.github.dakusui.actionunit.actions.cmd.unix;
 
 import com.github.dakusui.actionunit.actions.cmd.Commander;
+import com.github.dakusui.actionunit.actions.cmd.CommanderFactoryManager;
 
 import java.util.LinkedList;
 import java.util.List;
@@ -88,6 +89,19 @@ public interface SshOptions {
       return this.addSshOption("StrictHostkeyChecking", "no");
     }
 
+    /**
+     * Lets {@code ssh} and {@code scp} commands built with options of this object
+     * share master connections managed by {@code controlMaster}.
+     *
+     * @param controlMaster A control master that manages master connections.
+     * @return This object.
+     * @see CommanderFactoryManager#controlMaster()
+     */
+    public Builder controlMaster(ControlMaster controlMaster) {
+      requireNonNull(controlMaster).sshOptions().forEach(this::addSshOption);
+      return this;
+    }
+
     public SshOptions build() {
       return new SshOptions() {
 
@@ -66,5 +66,9 @@ public interface Action extends Formattable {
     default void visit(TimeOut action) {
       this.visit((Action) action);
     }
+
+    default void visit(CircuitBreaker action) {
+      this.visit((Action) action);
+    }
   }
 }
\ No newline at end of file
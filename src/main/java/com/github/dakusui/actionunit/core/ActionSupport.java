@@ -63,6 +63,10 @@ public enum ActionSupport {
     return new TimeOut.Builder(action);
   }
 
+  public static CircuitBreaker.Builder circuitBreaker(Action action) {
+    return new CircuitBreaker.Builder(action);
+  }
+
   public static Action sequential(List<Action> actions) {
     return new Composite.Builder(actions).build();
   }
@@ -0,0 +1,177 @@
+package com.github.dakusui.actionunit.core;
+
+import com.github.dakusui.actionunit.exceptions.ActionCancelledException;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.github.dakusui.actionunit.utils.Checks.requireState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A token through which running actions are asked to stop.
+ * <p>
+ * Tokens form a tree: a token is cancelled when it or any of its ancestors is
+ * cancelled. A fail-fast parallel action, for instance, runs its children
+ * under a child token of the current one and cancels it when one of them
+ * fails. Cancellation is cooperative: actions check {@link Cancellation#isCancelled()}
+ * at points where they can stop, and a resource that blocks a thread, such as
+ * a process, registers a hook by {@link Cancellation#onCancel(Runnable)} that
+ * releases it.
+ * <p>
+ * Each root {@link Context} has a token, which is shared by its descendants and
+ * returned by {@link Context#cancellation()}. A token is bound to the thread
+ * running an action by {@link Cancellation#run(Runnable)} and is available as
+ * {@link Cancellation#current()} during the run. {@link Context#cancelled()}
+ * checks both.
+ */
+public final class Cancellation {
+  /**
+   * A token that is never cancelled, which is current when no other is bound.
+   */
+  public static final Cancellation NEVER = new Cancellation(null);
+
+  private static final ThreadLocal<Cancellation> CURRENT = new ThreadLocal<>();
+
+  private final    Cancellation    parent;
+  private final    Queue<Runnable> hooks = new ConcurrentLinkedQueue<>();
+  private final    Registration    registrationToParent;
+  private volatile boolean         cancelled;
+
+  private Cancellation(Cancellation parent) {
+    this.parent = parent;
+    this.registrationToParent = parent != null ?
+        parent.onCancel(this::cancel) :
+        () -> {
+        };
+  }
+
+  /**
+   * Creates a new token, which is the root of a tree of tokens. Each root
+   * {@link Context} has one.
+   *
+   * @return A new token.
+   */
+  public static Cancellation create() {
+    return new Cancellation(NEVER);
+  }
+
+  /**
+   * Returns a token bound to the current thread, or {@link Cancellation#NEVER}
+   * if none is.
+   *
+   * @return The current token.
+   */
+  public static Cancellation current() {
+    Cancellation ret = CURRENT.get();
+    return ret != null ? ret : NEVER;
+  }
+
+  /**
+   * Creates a token that is cancelled when this token is. Call {@link Cancellation#close()}
+   * on the returned token when it is no longer used, so that this token stops
+   * referring to it.
+   *
+   * @return A child token.
+   */
+  public Cancellation createChild() {
+    return new Cancellation(this);
+  }
+
+  /**
+   * Returns {@code true} if this token or any of its ancestors is cancelled.
+   *
+   * @return {@code true} if cancelled.
+   */
+  public boolean isCancelled() {
+    for (Cancellation each = this; each != null; each = each.parent)
+      if (each.cancelled)
+        return true;
+    return false;
+  }
+
+  /**
+   * Cancels this token and its descendants, and runs hooks registered to them.
+   * Cancelling a cancelled token does nothing.
+   */
+  public void cancel() {
+    requireState(c -> c != NEVER, this);
+    this.cancelled = true;
+    for (Runnable each = hooks.poll(); each != null; each = hooks.poll())
+      each.run();
+  }
+
+  /**
+   * Throws an {@link ActionCancelledException} if this token is cancelled.
+   */
+  public void throwIfCancelled() {
+    if (isCancelled())
+      throw new ActionCancelledException("Cancelled");
+  }
+
+  /**
+   * Registers {@code hook}, which is run once when this token is cancelled. If
+   * this token is already cancelled, {@code hook} is run immediately.
+   *
+   * @param hook A hook that releases a resource, e.g., destroys a process.
+   * @return A registration, closing which unregisters {@code hook}.
+   */
+  public Registration onCancel(Runnable hook) {
+    requireNonNull(hook);
+    if (this == NEVER)
+      return () -> {
+      };
+    hooks.add(hook);
+    if (isCancelled() && hooks.remove(hook))
+      hook.run();
+    return () -> hooks.remove(hook);
+  }
+
+  /**
+   * Returns the number of hooks registered to this token, which are neither run
+   * nor unregistered yet. A hook left registered after the resource it releases
+   * is gone keeps the resource reachable, so this is useful to check that
+   * actions unregister their hooks.
+   *
+   * @return The number of registered hooks.
+   */
+  public int numberOfHooks() {
+    return hooks.size();
+  }
+
+  /**
+   * Runs {@code task} on the current thread with this token bound to it.
+   *
+   * @param task A task to be run.
+   */
+  public void run(Runnable task) {
+    Cancellation saved = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      task.run();
+    } finally {
+      if (saved == null)
+        CURRENT.remove();
+      else
+        CURRENT.set(saved);
+    }
+  }
+
+  /**
+   * Detaches this token from its parent. Cancelling the parent does not run
+   * hooks registered to this token anymore, although {@link Cancellation#isCancelled()}
+   * still reflects it.
+   */
+  public void close() {
+    registrationToParent.close();
+  }
+
+  /**
+   * A registration of a hook.
+   */
+  @FunctionalInterface
+  public interface Registration extends AutoCloseable {
+    @Override
+    void close();
+  }
+}
@@ -1,8 +1,11 @@
 package com.github.dakusui.actionunit.core;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.github.dakusui.actionunit.core.Context.Impl.ONGOING_EXCEPTION;
 import static java.util.Objects.requireNonNull;
@@ -19,14 +22,166 @@ public interface Context {
 
   <T extends Throwable> T thrownException();
 
+  /**
+   * Removes variables assigned to this context, if this context supports it.
+   * Ones of its ancestors are not affected. This lets a child context be reused
+   * for each element of a loop, instead of creating a new one for each.
+   * <p>
+   * An implementation that does not support it returns {@code false}, and then
+   * a new child context is created for the next element instead.
+   *
+   * @return {@code true} if the variables were removed.
+   */
+  default boolean tryClear() {
+    return false;
+  }
+
+  default boolean defined(Slot slot) {
+    return defined(slot.name());
+  }
+
+  default <V> V valueOf(Slot slot) {
+    return valueOf(slot.name());
+  }
+
+  default Context assignTo(Slot slot, Object value) {
+    return assignTo(slot.name(), value);
+  }
+
   default boolean wasExceptionThrown() {
     return defined(ONGOING_EXCEPTION);
   }
 
+  /**
+   * Returns a cancellation token shared by this context and all the contexts
+   * in its hierarchy. Cancelling it asks actions performed in them to stop.
+   *
+   * @return The cancellation token of this context.
+   * @see Context#cancelled()
+   */
+  default Cancellation cancellation() {
+    return Cancellation.NEVER;
+  }
+
+  /**
+   * Returns {@code true} if actions performed in this context are asked to
+   * stop, either because the token of this context was cancelled (e.g., through
+   * {@code ActionPerformer#cancel()}) or because the token bound to the current
+   * thread was (e.g., by a failed sibling in a fail-fast parallel action).
+   * A long-running leaf or stream generator should check this and stop early.
+   *
+   * @return {@code true} if cancelled.
+   */
+  default boolean cancelled() {
+    return cancellation().isCancelled() || Cancellation.current().isCancelled();
+  }
+
+  /**
+   * A variable name resolved to an index. Actions resolve the names of the
+   * variables they use when they are built (e.g., {@link com.github.dakusui.actionunit.actions.ForEach#loopVariableSlot()}),
+   * so that a context can look them up without hashing the names.
+   * <p>
+   * Resolved names are registered for the life of the JVM. Resolve only names
+   * known when actions are built, and access variables whose names are
+   * computed at run time by {@code String}, which does not register them.
+   */
+  final class Slot {
+    private static final int               UNREGISTERED = -1;
+    private static final Map<String, Slot> SLOTS        = new ConcurrentHashMap<>();
+    private static final AtomicInteger     NEXT_INDEX   = new AtomicInteger();
+
+    private final String name;
+    private final int    index;
+
+    private Slot(String name, int index) {
+      this.name = name;
+      this.index = index;
+    }
+
+    public String name() {
+      return this.name;
+    }
+
+    /**
+     * Returns the index of this slot, or {@code -1} if this slot was looked up
+     * by a name that has never been resolved.
+     *
+     * @return The index of this slot.
+     */
+    public int index() {
+      return this.index;
+    }
+
+    @Override
+    public String toString() {
+      return this.name;
+    }
+
+    public static Slot of(String variableName) {
+      requireNonNull(variableName);
+      Slot ret = SLOTS.get(variableName);
+      if (ret != null)
+        return ret;
+      return SLOTS.computeIfAbsent(variableName, k -> new Slot(k, NEXT_INDEX.getAndIncrement()));
+    }
+
+    public static Slot[] of(String... variableNames) {
+      Slot[] ret = new Slot[variableNames.length];
+      for (int i = 0; i < ret.length; i++)
+        ret[i] = of(variableNames[i]);
+      return ret;
+    }
+
+    /**
+     * Returns a slot for {@code variableName} without registering it. If the
+     * name has never been resolved, the returned slot is matched by its name.
+     */
+    static Slot lookup(String variableName) {
+      Slot ret = SLOTS.get(requireNonNull(variableName));
+      return ret != null ?
+          ret :
+          new Slot(variableName, UNREGISTERED);
+    }
+
+    boolean matches(Slot slot) {
+      if (this.index == UNREGISTERED || slot.index == UNREGISTERED)
+        return this.name.equals(slot.name);
+      return this.index == slot.index;
+    }
+  }
+
+  /**
+   * Types of {@link Context} implementations.
+   */
+  enum Type {
+    /**
+     * A context that stores variables in a {@link HashMap} for each frame.
+     */
+    MAP {
+      @Override
+      public Context create() {
+        return new Impl();
+      }
+    },
+    /**
+     * A context that stores variables of each frame in a small array of
+     * {@link Slot}s, which is scanned by their indices.
+     */
+    FLAT {
+      @Override
+      public Context create() {
+        return new Flat();
+      }
+    };
+
+    public abstract Context create();
+  }
+
   class Impl implements Context {
     public static final String              ONGOING_EXCEPTION = "ONGOING_EXCEPTION";
     private final       Map<String, Object> variables         = new HashMap<>();
     private final       Context             parent;
+    private final       Cancellation        cancellation;
 
     private Impl() {
       this(null);
@@ -34,6 +189,9 @@ public interface Context {
 
     private Impl(Context parent) {
       this.parent = parent;
+      this.cancellation = parent != null ?
+          parent.cancellation() :
+          Cancellation.create();
     }
 
     @Override
@@ -72,13 +230,156 @@ public interface Context {
       return (T) this.variables.get(ONGOING_EXCEPTION);
     }
 
+    @Override
+    public boolean tryClear() {
+      this.variables.clear();
+      return true;
+    }
+
+    @Override
+    public Cancellation cancellation() {
+      return this.cancellation;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Context:(%s; parent=%s)", variables, parent);
+    }
+  }
+
+  /**
+   * A context whose frame holds its variables in arrays of slots and values.
+   * Since a frame usually holds only a few variables (a loop variable of a
+   * {@code ForEach}, for instance), a lookup is a linear scan of a short array
+   * per frame that compares slot indices instead of names, and creating a child
+   * is a single small allocation.
+   */
+  class Flat implements Context {
+    private static final Slot[]   NO_SLOTS               = new Slot[0];
+    private static final Object[] NO_VALUES              = new Object[0];
+    private static final Slot     ONGOING_EXCEPTION_SLOT = Slot.of(ONGOING_EXCEPTION);
+
+    private final Flat         parent;
+    private final Cancellation cancellation;
+    private       Slot[]       slots  = NO_SLOTS;
+    private       Object[]     values = NO_VALUES;
+    private       int          size   = 0;
+
+    private Flat() {
+      this(null);
+    }
+
+    private Flat(Flat parent) {
+      this.parent = parent;
+      this.cancellation = parent != null ?
+          parent.cancellation :
+          Cancellation.create();
+    }
+
+    @Override
+    public Context createChild() {
+      return new Flat(this);
+    }
+
+    @Override
+    public boolean defined(String variableName) {
+      return defined(Slot.lookup(variableName));
+    }
+
+    @Override
+    public <V> V valueOf(String variableName) {
+      return valueOf(Slot.lookup(variableName));
+    }
+
+    @Override
+    public Context assignTo(String variableName, Object value) {
+      return assignTo(Slot.lookup(variableName), value);
+    }
+
+    @Override
+    public boolean defined(Slot slot) {
+      for (Flat each = this; each != null; each = each.parent)
+        if (each.indexOf(slot) >= 0)
+          return true;
+      return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <V> V valueOf(Slot slot) {
+      for (Flat each = this; each != null; each = each.parent) {
+        int i = each.indexOf(slot);
+        if (i >= 0)
+          return (V) each.values[i];
+      }
+      throw new NoSuchElementException(String.format("Variable '%s' is not defined.", slot.name()));
+    }
+
+    @Override
+    public Context assignTo(Slot slot, Object value) {
+      int i = indexOf(slot);
+      if (i < 0) {
+        if (size == slots.length) {
+          int capacity = Math.max(2, size * 2);
+          slots = Arrays.copyOf(slots, capacity);
+          values = Arrays.copyOf(values, capacity);
+        }
+        i = size++;
+        slots[i] = slot;
+      }
+      values[i] = value;
+      return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends Throwable> T thrownException() {
+      int i = indexOf(ONGOING_EXCEPTION_SLOT);
+      return i >= 0 ? (T) this.values[i] : null;
+    }
+
+    @Override
+    public boolean tryClear() {
+      // Arrays are kept, so that a cleared frame can be reused without allocation.
+      Arrays.fill(slots, 0, size, null);
+      Arrays.fill(values, 0, size, null);
+      size = 0;
+      return true;
+    }
+
+    @Override
+    public Cancellation cancellation() {
+      return this.cancellation;
+    }
+
     @Override
     public String toString() {
+      Map<String, Object> variables = new HashMap<>();
+      for (int i = 0; i < size; i++)
+        variables.put(slots[i].name(), values[i]);
       return String.format("Context:(%s; parent=%s)", variables, parent);
     }
+
+    private int indexOf(Slot slot) {
+      for (int i = 0; i < size; i++)
+        if (slots[i].matches(slot))
+          return i;
+      return -1;
+    }
   }
 
+  /**
+   * Creates a new context of the default type, which is {@link Type#MAP}.
+   * Use {@link Context#create(Type)} with {@link Type#FLAT} for a context that
+   * looks variables up by {@link Slot}s.
+   *
+   * @return A new context.
+   */
   static Context create() {
-    return new Impl();
+    return create(Type.MAP);
+  }
+
+  static Context create(Type type) {
+    return type.create();
   }
 }
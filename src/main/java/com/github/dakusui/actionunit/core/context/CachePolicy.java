@@ -0,0 +1,73 @@
+package com.github.dakusui.actionunit.core.context;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
+import static com.github.dakusui.actionunit.utils.InternalUtils.formatDuration;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decides how long and how many results are kept by functions created by
+ * {@link ContextFunctions#cached(ContextFunction, CachePolicy, String...)} and
+ * {@link ContextFunctions#cachedStream(StreamGenerator, CachePolicy, String...)}.
+ */
+public final class CachePolicy {
+  /**
+   * A value for {@code timeToLive} which means results never expire.
+   */
+  public static final long        NO_EXPIRY = Long.MAX_VALUE;
+  /**
+   * A policy that keeps up to 1024 results without expiry.
+   */
+  public static final CachePolicy DEFAULT   = new CachePolicy(NO_EXPIRY, 1024);
+
+  private final long timeToLiveInNanos;
+  private final int  maximumSize;
+
+  private CachePolicy(long timeToLiveInNanos, int maximumSize) {
+    this.timeToLiveInNanos = timeToLiveInNanos;
+    this.maximumSize = maximumSize;
+  }
+
+  /**
+   * Returns a policy that keeps up to {@code maximumSize} results, each of which
+   * expires {@code timeToLive} after it was computed. When the cache is full,
+   * the least recently used result is evicted.
+   *
+   * @param timeToLive  A duration for which a result is kept.
+   * @param timeUnit    A time unit of {@code timeToLive}.
+   * @param maximumSize The maximum number of results kept.
+   * @return A cache policy.
+   */
+  public static CachePolicy of(long timeToLive, TimeUnit timeUnit, int maximumSize) {
+    return new CachePolicy(
+        requireNonNull(timeUnit).toNanos(requireArgument(v -> v > 0, timeToLive)),
+        requireArgument(v -> v > 0, maximumSize));
+  }
+
+  /**
+   * Returns a policy that keeps up to {@code maximumSize} results without expiry.
+   *
+   * @param maximumSize The maximum number of results kept.
+   * @return A cache policy.
+   */
+  public static CachePolicy lru(int maximumSize) {
+    return new CachePolicy(NO_EXPIRY, requireArgument(v -> v > 0, maximumSize));
+  }
+
+  public long timeToLiveInNanos() {
+    return this.timeToLiveInNanos;
+  }
+
+  public int maximumSize() {
+    return this.maximumSize;
+  }
+
+  @Override
+  public String toString() {
+    return timeToLiveInNanos == NO_EXPIRY ?
+        format("lru(%s)", maximumSize) :
+        format("lru(%s), ttl=%s", maximumSize, formatDuration(timeToLiveInNanos));
+  }
+}
@@ -0,0 +1,162 @@
+package com.github.dakusui.actionunit.core.context;
+
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.exceptions.ActionException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A context function that caches results of another, keyed on values of given
+ * variables in a context.
+ * <p>
+ * Concurrent evaluations that miss the cache for the same key are deduplicated:
+ * only one of them runs the function and the others wait for its result. A
+ * failure is not cached, and it is thrown to all of the waiting evaluations.
+ * <p>
+ * Numbers of hits and misses are printed as a part of this function's string
+ * representation, so that they are shown in a report of an action that uses it.
+ *
+ * @param <R> Type of results.
+ * @see ContextFunctions#cached(ContextFunction, CachePolicy, String...)
+ */
+public class CachedContextFunction<R> extends ContextFunction.Impl<R> {
+  private final Cache<R> cache;
+
+  CachedContextFunction(ContextFunction<R> function, CachePolicy policy, String... variableNames) {
+    this(function, new Cache<>(policy), Context.Slot.of(variableNames));
+  }
+
+  private CachedContextFunction(ContextFunction<R> function, Cache<R> cache, Context.Slot[] variableSlots) {
+    super(
+        () -> format("cached[hits=%s, misses=%s](%s)", cache.hits.sum(), cache.misses.sum(), function),
+        c -> cache.get(keyOf(c, variableSlots), () -> function.apply(c)));
+    this.cache = cache;
+  }
+
+  /**
+   * Returns the number of evaluations that were served without running the
+   * function, including ones that waited for a concurrent evaluation.
+   *
+   * @return The number of hits.
+   */
+  public long hits() {
+    return this.cache.hits.sum();
+  }
+
+  public long misses() {
+    return this.cache.misses.sum();
+  }
+
+  private static List<Object> keyOf(Context context, Context.Slot[] variableSlots) {
+    Object[] ret = new Object[variableSlots.length];
+    for (int i = 0; i < ret.length; i++)
+      ret[i] = context.valueOf(variableSlots[i]);
+    return Arrays.asList(ret);
+  }
+
+  private static class Cache<V> {
+    private final CachePolicy                 policy;
+    /**
+     * Entries in access order, which is used for LRU eviction. Guarded by {@code this}.
+     */
+    private final Map<List<Object>, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder                   hits    = new LongAdder();
+    private final LongAdder                   misses  = new LongAdder();
+
+    Cache(CachePolicy policy) {
+      this.policy = requireNonNull(policy);
+    }
+
+    V get(List<Object> key, Supplier<V> loader) {
+      Entry<V> entry;
+      boolean loading = false;
+      synchronized (this) {
+        entry = entries.get(key);
+        if (entry != null && entry.isExpired(System.nanoTime())) {
+          entries.remove(key);
+          entry = null;
+        }
+        if (entry == null) {
+          entry = new Entry<>();
+          entries.put(key, entry);
+          evictIfFull();
+          loading = true;
+        }
+      }
+      if (!loading) {
+        hits.increment();
+        return entry.await();
+      }
+      misses.increment();
+      try {
+        V ret = loader.get();
+        entry.complete(ret, expiryOf(System.nanoTime()));
+        return ret;
+      } catch (Throwable t) {
+        synchronized (this) {
+          entries.remove(key, entry);
+        }
+        entry.fail(t);
+        throw ActionException.wrap(t);
+      }
+    }
+
+    private long expiryOf(long now) {
+      long ttl = policy.timeToLiveInNanos();
+      return ttl == CachePolicy.NO_EXPIRY || now + ttl < now ?
+          Long.MAX_VALUE :
+          now + ttl;
+    }
+
+    private void evictIfFull() {
+      Iterator<Entry<V>> i = entries.values().iterator();
+      while (entries.size() > policy.maximumSize() && i.hasNext()) {
+        i.next();
+        i.remove();
+      }
+    }
+  }
+
+  private static class Entry<V> {
+    private final    CompletableFuture<V> value     = new CompletableFuture<>();
+    /**
+     * A time at which this entry expires. An entry being loaded never expires.
+     */
+    private volatile long                 expiresAt = Long.MAX_VALUE;
+
+    boolean isExpired(long now) {
+      return expiresAt != Long.MAX_VALUE && now - expiresAt >= 0;
+    }
+
+    void complete(V value, long expiresAt) {
+      this.expiresAt = expiresAt;
+      this.value.complete(value);
+    }
+
+    void fail(Throwable t) {
+      this.value.completeExceptionally(t);
+    }
+
+    V await() {
+      try {
+        return value.get();
+      } catch (ExecutionException e) {
+        throw ActionException.wrap(e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw ActionException.wrap(e);
+      }
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package com.github.dakusui.actionunit.core.context;
 
+import com.github.dakusui.actionunit.core.Context;
 import com.github.dakusui.actionunit.core.context.multiparams.MultiParamsContextConsumerBuilder;
 import com.github.dakusui.actionunit.core.context.multiparams.MultiParamsContextFunctionBuilder;
 import com.github.dakusui.actionunit.core.context.multiparams.MultiParamsContextPredicateBuilder;
@@ -8,16 +9,19 @@ import com.github.dakusui.actionunit.utils.StableTemplatingUtils;
 
 import java.io.PrintStream;
 import java.util.Arrays;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.IntFunction;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static com.github.dakusui.actionunit.utils.InternalUtils.objectToStringIfOverridden;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 
 public enum ContextFunctions {
   ;
@@ -76,6 +80,59 @@ public enum ContextFunctions {
     );
   }
 
+  /**
+   * Returns a function that caches results of {@code function}, keyed on values
+   * of variables specified by {@code variableNames}. Use this for expensive and
+   * idempotent lookups evaluated repeatedly in loops, e.g., ones created by
+   * {@link com.github.dakusui.actionunit.actions.cmd.Commander#toContextFunction()}.
+   *
+   * @param function      A function whose results are cached.
+   * @param policy        A policy that decides how long and how many results are kept.
+   * @param variableNames Names of variables on which results depend.
+   * @param <R>           Type of results.
+   * @return A caching function.
+   */
+  public static <R> CachedContextFunction<R> cached(ContextFunction<R> function, CachePolicy policy, String... variableNames) {
+    return new CachedContextFunction<>(requireNonNull(function), policy, variableNames);
+  }
+
+  /**
+   * Returns a stream generator that caches elements streamed by {@code generator}
+   * as a list, keyed on values of variables specified by {@code variableNames}.
+   * Each evaluation returns a new stream over the cached elements. A stream
+   * returned by {@code generator} is closed once its elements are cached.
+   *
+   * @param generator     A stream generator whose elements are cached.
+   * @param policy        A policy that decides how long and how many results are kept.
+   * @param variableNames Names of variables on which results depend.
+   * @param <T>           Type of elements.
+   * @return A caching stream generator.
+   * @see ContextFunctions#cached(ContextFunction, CachePolicy, String...)
+   */
+  public static <T> StreamGenerator<T> cachedStream(StreamGenerator<T> generator, CachePolicy policy, String... variableNames) {
+    requireNonNull(generator);
+    CachedContextFunction<List<T>> cached = cached(
+        ContextFunction.of(generator::toString, c -> {
+          // Closes the stream so that resources behind it, e.g., a process, are released.
+          try (Stream<T> stream = generator.apply(c)) {
+            return stream.collect(toList());
+          }
+        }),
+        policy,
+        variableNames);
+    return new StreamGenerator<T>() {
+      @Override
+      public Stream<T> apply(Context context) {
+        return cached.apply(context).stream();
+      }
+
+      @Override
+      public String toString() {
+        return cached.toString();
+      }
+    };
+  }
+
   public static ContextConsumer throwIllegalArgument() {
     return ContextConsumer.of(
         () -> "throw IllegalArgumentException",
@@ -36,10 +36,11 @@ public interface StreamGenerator<T> extends ContextFunction<Stream<T>> {
 
   static <T> StreamGenerator<T> fromContextWith(Function<Params, Stream<T>> func, String... variableNames) {
     requireNonNull(func);
+    Context.Slot[] variableSlots = Context.Slot.of(variableNames);
     return new StreamGenerator<T>() {
       @Override
       public Stream<T> apply(Context context) {
-        return func.apply(Params.create(context, variableNames));
+        return func.apply(Params.createForSlots(context, variableSlots));
       }
 
       @Override
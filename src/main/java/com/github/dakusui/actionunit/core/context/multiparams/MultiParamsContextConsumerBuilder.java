@@ -12,6 +12,7 @@ import static java.util.Objects.requireNonNull;
 
 public class MultiParamsContextConsumerBuilder {
   private final String[]                               variableNames;
+  private final Context.Slot[]                         variableSlots;
   private final BiFunction<Consumer, String[], String> descriptionFormatter;
 
   public MultiParamsContextConsumerBuilder(String... variableNames) {
@@ -25,6 +26,7 @@ public class MultiParamsContextConsumerBuilder {
       BiFunction<Consumer, String[], String> descriptionFormatter,
       String... variableNames) {
     this.variableNames = requireNonNull(variableNames);
+    this.variableSlots = Context.Slot.of(variableNames);
     this.descriptionFormatter = requireNonNull(descriptionFormatter);
   }
 
@@ -32,7 +34,7 @@ public class MultiParamsContextConsumerBuilder {
     requireNonNull(consumer);
     return new ContextConsumer.Impl(
         () -> descriptionFormatter.apply(consumer, variableNames),
-        (Context c) -> consumer.accept(Params.create(c, variableNames))
+        (Context c) -> consumer.accept(Params.createForSlots(c, variableSlots))
     );
   }
 }
@@ -12,6 +12,7 @@ import static java.util.Objects.requireNonNull;
 
 public class MultiParamsContextFunctionBuilder<R> {
   private final String[]                               variableNames;
+  private final Context.Slot[]                         variableSlots;
   private final BiFunction<Function, String[], String> descriptionFormatter;
 
   public MultiParamsContextFunctionBuilder(String... variableNames) {
@@ -26,12 +27,13 @@ public class MultiParamsContextFunctionBuilder<R> {
       String... variableNames) {
     this.descriptionFormatter = requireNonNull(descriptionFormatter);
     this.variableNames = requireNonNull(variableNames);
+    this.variableSlots = Context.Slot.of(variableNames);
   }
 
   public ContextFunction<R> toContextFunction(Function<Params, R> function) {
     requireNonNull(function);
     return new ContextFunction.Impl<>(
         () -> descriptionFormatter.apply(function, variableNames),
-        (Context c) -> function.apply(Params.create(c, variableNames)));
+        (Context c) -> function.apply(Params.createForSlots(c, variableSlots)));
   }
 }
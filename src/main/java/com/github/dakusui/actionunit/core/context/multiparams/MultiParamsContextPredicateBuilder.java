@@ -12,6 +12,7 @@ import static java.util.Objects.requireNonNull;
 
 public class MultiParamsContextPredicateBuilder {
   private final String[]                                variableNames;
+  private final Context.Slot[]                          variableSlots;
   private final BiFunction<Predicate, String[], String> descriptionFormatter;
 
   public MultiParamsContextPredicateBuilder(String... variableNames) {
@@ -25,6 +26,7 @@ public class MultiParamsContextPredicateBuilder {
       BiFunction<Predicate, String[], String> descriptionFormatter,
       String... variableNames) {
     this.variableNames = requireNonNull(variableNames);
+    this.variableSlots = Context.Slot.of(variableNames);
     this.descriptionFormatter = requireNonNull(descriptionFormatter);
   }
 
@@ -32,6 +34,6 @@ public class MultiParamsContextPredicateBuilder {
     requireNonNull(predicate);
     return new ContextPredicate.Impl(
         () -> descriptionFormatter.apply(predicate, variableNames),
-        (Context c) -> predicate.test(Params.create(c, variableNames)));
+        (Context c) -> predicate.test(Params.createForSlots(c, variableSlots)));
   }
 }
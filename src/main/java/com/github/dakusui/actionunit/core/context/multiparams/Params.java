@@ -2,6 +2,7 @@ package com.github.dakusui.actionunit.core.context.multiparams;
 
 import com.github.dakusui.actionunit.core.Context;
 
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -9,9 +10,9 @@ import java.util.Map;
 import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
 import static com.github.dakusui.printables.Printables.isKeyOf;
 import static java.lang.String.format;
-import static java.util.Arrays.asList;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 
 public interface Params {
 
@@ -27,10 +28,24 @@ public interface Params {
   <T> T valueOf(String parameterName);
 
   static Params create(Context context, String... paramNames) {
+    return createForSlots(context, Context.Slot.of(paramNames));
+  }
+
+  /**
+   * Creates a {@link Params} object from variables in {@code context} specified
+   * by slots, which are resolved beforehand.
+   * Named differently from {@link Params#create(Context, String...)} so that
+   * a call without parameter names is not ambiguous.
+   *
+   * @param context    A context from which values are taken.
+   * @param paramSlots Slots of the parameters.
+   * @return A new params object.
+   */
+  static Params createForSlots(Context context, Context.Slot... paramSlots) {
     return new Params() {
       Map<String, Object> values = new LinkedHashMap<String, Object>() {{
-        for (String each : paramNames) {
-          put(each, context.valueOf(each));
+        for (Context.Slot each : paramSlots) {
+          put(each.name(), context.valueOf(each));
         }
       }};
 
@@ -41,7 +56,7 @@ public interface Params {
 
       @Override
       public List<String> paramNames() {
-        return asList(paramNames);
+        return Arrays.stream(paramSlots).map(Context.Slot::name).collect(toList());
       }
 
       @SuppressWarnings("unchecked")
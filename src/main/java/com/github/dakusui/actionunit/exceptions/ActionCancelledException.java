@@ -0,0 +1,19 @@
+package com.github.dakusui.actionunit.exceptions;
+
+/**
+ * Indicates that an action stopped since it was cancelled, e.g., because a
+ * sibling of it in a fail-fast parallel action failed, or the performer was
+ * cancelled from outside. Runs of actions that fail after they are cancelled
+ * are recorded as cancelled instead of errors.
+ *
+ * @see com.github.dakusui.actionunit.core.Cancellation
+ */
+public class ActionCancelledException extends ActionException {
+  public ActionCancelledException(String message) {
+    super(message);
+  }
+
+  public ActionCancelledException(String message, Throwable t) {
+    super(message, t);
+  }
+}
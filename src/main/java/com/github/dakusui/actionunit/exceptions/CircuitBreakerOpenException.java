@@ -0,0 +1,13 @@
+package com.github.dakusui.actionunit.exceptions;
+
+/**
+ * Thrown when an action wrapped by a circuit breaker is not performed since
+ * the circuit is open.
+ *
+ * @see com.github.dakusui.actionunit.actions.CircuitBreaker
+ */
+public class CircuitBreakerOpenException extends ActionException {
+  public CircuitBreakerOpenException(String message) {
+    super(message);
+  }
+}
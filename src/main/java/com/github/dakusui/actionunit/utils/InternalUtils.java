@@ -6,6 +6,7 @@ import java.lang.reflect.Method;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -27,33 +28,155 @@ public enum InternalUtils {
     }
   }
 
+  /**
+   * Runs a given {@code callable} on the calling thread. If it does not finish
+   * within the given duration, the calling thread will be interrupted by a timer
+   * shared by all the invocations of this method and an {@link ActionTimeOutException}
+   * will be thrown once the {@code callable} returns or throws.
+   *
+   * @param callable           A callable to be run.
+   * @param description        A supplier of the description of the callable.
+   * @param timeoutDescription A supplier of the detail of the time-out.
+   * @param timeout            A duration in which the callable should finish.
+   * @param timeUnit           A time unit of {@code timeout}.
+   * @param <T>                A type of the value returned by {@code callable}.
+   * @return The value returned by the {@code callable}.
+   */
   public static <T> T runWithTimeout(Callable<T> callable, Supplier<String> description, Supplier<String> timeoutDescription, long timeout, TimeUnit timeUnit) {
-    final ExecutorService executor = Executors.newSingleThreadExecutor();
-    final Future<T> future = executor.submit(callable);
-    executor.shutdown(); // This does not cancel the already-scheduled task.
+    return runWithTimeout(callable, description, timeoutDescription, () -> {
+    }, timeout, timeUnit);
+  }
+
+  /**
+   * Runs a given {@code callable} like {@link InternalUtils#runWithTimeout(Callable, Supplier, Supplier, long, TimeUnit)}.
+   * When the deadline passes, {@code onTimeout} is run by the timer right after
+   * the calling thread is interrupted, so that work the {@code callable} has
+   * handed over to other threads can be stopped as well.
+   * <p>
+   * Note that the {@code callable} is not abandoned: if it does not respond to
+   * the interruption, it keeps running past the deadline and this method returns
+   * only after it finishes.
+   *
+   * @param callable           A callable to be run.
+   * @param description        A supplier of the description of the callable.
+   * @param timeoutDescription A supplier of the detail of the time-out.
+   * @param onTimeout          A task run when the deadline passes.
+   * @param timeout            A duration in which the callable should finish.
+   * @param timeUnit           A time unit of {@code timeout}.
+   * @param <T>                A type of the value returned by {@code callable}.
+   * @return The value returned by the {@code callable}.
+   */
+  public static <T> T runWithTimeout(Callable<T> callable, Supplier<String> description, Supplier<String> timeoutDescription, Runnable onTimeout, long timeout, TimeUnit timeUnit) {
+    Deadline deadline = Deadline.start(onTimeout, timeout, timeUnit);
+    T ret;
     try {
-      Thread.interrupted();
-      return future.get(timeout, timeUnit);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw wrap(e);
-    } catch (TimeoutException e) {
-      future.cancel(true);
-      throw new ActionTimeOutException(
-          String.format("Action: <%s>; %s with message: <%s>", description.get(), timeoutDescription.get(), e.getMessage()),
-          e);
-    } catch (ExecutionException e) {
-      //unwrap the root cause
-      Throwable cause = e.getCause();
-      if (cause instanceof Error) {
-        throw (Error) cause;
+      ret = callable.call();
+    } catch (Throwable t) {
+      if (deadline.finish())
+        throw wrap(t);
+      throw timeoutException(description, timeoutDescription);
+    }
+    if (deadline.finish())
+      return ret;
+    throw timeoutException(description, timeoutDescription);
+  }
+
+  /**
+   * Creates an exception that tells an action timed out, in the format used by
+   * {@link InternalUtils#runWithTimeout} method.
+   *
+   * @param description        A supplier of the description of the action.
+   * @param timeoutDescription A supplier of the detail of the time-out.
+   * @return An exception that tells the action timed out.
+   */
+  public static ActionTimeOutException timeoutException(Supplier<String> description, Supplier<String> timeoutDescription) {
+    TimeoutException e = new TimeoutException();
+    return new ActionTimeOutException(
+        String.format("Action: <%s>; %s with message: <%s>", description.get(), timeoutDescription.get(), e.getMessage()),
+        e);
+  }
+
+  /**
+   * A deadline of an action run by {@link InternalUtils#runWithTimeout} method.
+   * When it passes, the thread that started it is interrupted and a given task
+   * is run. Deadlines started
+   * by one thread form a chain so that an interruption by an outer one is not
+   * lost when an inner one finishes.
+   */
+  private static class Deadline implements Runnable {
+    private static final int                      RUNNING      = 0;
+    private static final int                      DONE         = 1;
+    private static final int                      INTERRUPTING = 2;
+    private static final int                      TIMED_OUT    = 3;
+    private static final ThreadLocal<Deadline>    CURRENT      = new ThreadLocal<>();
+    private static final ScheduledExecutorService TIMER        = createTimer();
+
+    private final Thread             thread;
+    private final Runnable           onTimeout;
+    private final Deadline           outer;
+    private final AtomicInteger      state = new AtomicInteger(RUNNING);
+    private       ScheduledFuture<?> alarm;
+
+    private Deadline(Thread thread, Runnable onTimeout, Deadline outer) {
+      this.thread = thread;
+      this.onTimeout = requireNonNull(onTimeout);
+      this.outer = outer;
+    }
+
+    static Deadline start(Runnable onTimeout, long timeout, TimeUnit timeUnit) {
+      Deadline ret = new Deadline(Thread.currentThread(), onTimeout, CURRENT.get());
+      CURRENT.set(ret);
+      ret.alarm = TIMER.schedule(ret, timeout, timeUnit);
+      return ret;
+    }
+
+    @Override
+    public void run() {
+      if (state.compareAndSet(RUNNING, INTERRUPTING)) {
+        try {
+          thread.interrupt();
+          onTimeout.run();
+        } finally {
+          state.set(TIMED_OUT);
+        }
+      }
+    }
+
+    /**
+     * Finishes this deadline.
+     *
+     * @return {@code true} - the deadline was met / {@code false} - it passed.
+     */
+    boolean finish() {
+      CURRENT.set(this.outer);
+      if (state.compareAndSet(RUNNING, DONE)) {
+        alarm.cancel(false);
+        return true;
       }
-      ////
-      // It's safe to directly cast to RuntimeException, because a Callable can only
-      // throw an Error or a RuntimeException.
-      throw (RuntimeException) cause;
-    } finally {
-      executor.shutdownNow();
+      while (state.get() != TIMED_OUT)
+        Thread.yield();
+      // Clear the interruption made by this deadline unless an outer one has
+      // also passed.
+      if (!outerTimedOut())
+        Thread.interrupted();
+      return false;
+    }
+
+    private boolean outerTimedOut() {
+      for (Deadline each = this.outer; each != null; each = each.outer)
+        if (each.state.get() >= INTERRUPTING)
+          return true;
+      return false;
+    }
+
+    private static ScheduledExecutorService createTimer() {
+      ScheduledThreadPoolExecutor ret = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "actionunit-timeout-timer");
+        thread.setDaemon(true);
+        return thread;
+      });
+      ret.setRemoveOnCancelPolicy(true);
+      return ret;
     }
   }
 
@@ -1,15 +1,13 @@
 package com.github.dakusui.actionunit.utils;
 
-import java.util.Collection;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.BiConsumer;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.IntFunction;
@@ -24,22 +22,59 @@ import static java.util.stream.Collectors.toList;
 public enum StableTemplatingUtils {
   ;
   public static String template(String template, Map<String, Object> mapping) {
-    AtomicInteger lastPosition = new AtomicInteger(0);
-    StringBuilder b = new StringBuilder();
-    positionToPlaceHolder(template, mapping.keySet())
-        .forEach(chainBiConsumers(
-            (Integer position, String placeHolder) -> b.append(
-                template,
-                lastPosition.get(),
-                position),
-            (Integer position, String placeHolder) -> b.append(mapping.get(placeHolder)),
-            (Integer position, String placeHolder) -> lastPosition.accumulateAndGet(
-                placeHolder.length(),
-                (i, j) -> position + j)
-        ));
-    if (lastPosition.get() < template.length())
-      b.append(template, lastPosition.get(), template.length());
-    return b.toString();
+    Map<String, Integer> placeHolders = new LinkedHashMap<>();
+    Object[] values = new Object[mapping.size()];
+    int i = 0;
+    for (Map.Entry<String, Object> each : mapping.entrySet()) {
+      placeHolders.put(each.getKey(), i);
+      values[i++] = each.getValue();
+    }
+    return compile(template, placeHolders).render(values);
+  }
+
+  /**
+   * Compiles a {@code template} into literal segments and slots, which can be
+   * rendered repeatedly without searching place holders again.
+   * <p>
+   * Place holders are searched from the beginning of the template. If more than
+   * one place holder is found at the same position, the one that comes first in
+   * {@code placeHolders} wins.
+   *
+   * @param template     A template string.
+   * @param placeHolders A map from a place holder to an index of a value to be
+   *                     rendered in its place.
+   * @return A compiled template.
+   */
+  public static Template compile(String template, Map<String, Integer> placeHolders) {
+    requireNonNull(template);
+    String[] keys = placeHolders.keySet().toArray(new String[0]);
+    for (String each : keys)
+      requireArgument(s -> s.length() > 0, requireNonNull(each));
+    // Positions of place holders found last time: -1 means "not found anymore"
+    // and Integer.MIN_VALUE means "not searched yet".
+    int[] positions = new int[keys.length];
+    Arrays.fill(positions, Integer.MIN_VALUE);
+    List<String> literals = new ArrayList<>();
+    List<Integer> slots = new ArrayList<>();
+    int from = 0;
+    while (true) {
+      int found = -1;
+      for (int i = 0; i < keys.length; i++) {
+        if (positions[i] == -1)
+          continue;
+        if (positions[i] < from)
+          positions[i] = template.indexOf(keys[i], from);
+        if (positions[i] >= 0 && (found < 0 || positions[i] < positions[found]))
+          found = i;
+      }
+      if (found < 0)
+        break;
+      literals.add(template.substring(from, positions[found]));
+      slots.add(placeHolders.get(keys[found]));
+      from = positions[found] + keys[found].length();
+    }
+    literals.add(template.substring(from));
+    return new Template(template, placeHolders, literals.toArray(new String[0]), slots.stream().mapToInt(v -> v).toArray());
   }
 
   public static SortedMap<String, Object> toMapping(IntFunction<String> placeHolderComposer, Object[] argValues) {
@@ -49,53 +84,29 @@ public enum StableTemplatingUtils {
         .collect(toLinkedHashMap(placeHolder -> placeHolder, placeHolder -> argValues[i.getAndIncrement()]));
   }
 
+  /**
+   * Returns a map from place holders to indices of parameters, which can be
+   * passed to {@link StableTemplatingUtils#compile(String, Map)}.
+   * Entries are sorted in the same order as {@link StableTemplatingUtils#toMapping(IntFunction, Object[])}
+   * so that a template is rendered in the same way.
+   *
+   * @param placeHolderComposer A function that composes a place holder for an index.
+   * @param numParameters       The number of parameters.
+   * @return A map from place holders to indices.
+   */
+  public static SortedMap<String, Integer> toSlots(IntFunction<String> placeHolderComposer, int numParameters) {
+    AtomicInteger i = new AtomicInteger();
+    return parameterPlaceHolders(placeHolderComposer, numParameters)
+        .stream()
+        .collect(toLinkedHashMap(placeHolder -> placeHolder, placeHolder -> i.getAndIncrement()));
+  }
+
   static List<String> parameterPlaceHolders(IntFunction<String> placeHolderComposer, int numParameters) {
     return IntStream.range(0, numParameters)
         .mapToObj(placeHolderComposer)
         .collect(toList());
   }
 
-  static SortedMap<Integer, String> positionToPlaceHolder(String formatString, Collection<String> placeHolders) {
-    return new TreeMap<Integer, String>() {{
-      for (Optional<PositionedPlaceHolder> positionedPlaceHolderOptional = findFirstPlaceHolderFrom(
-          formatString,
-          0,
-          new LinkedList<>(placeHolders));
-           positionedPlaceHolderOptional.isPresent();
-           positionedPlaceHolderOptional = findFirstPlaceHolderFrom(
-               formatString,
-               positionedPlaceHolderOptional.get().position + positionedPlaceHolderOptional.get().placeHolder.length(),
-               new LinkedList<>(placeHolders)
-           )) {
-        PositionedPlaceHolder positionedPlaceHolder = positionedPlaceHolderOptional.get();
-        this.put(positionedPlaceHolder.position, positionedPlaceHolder.placeHolder);
-      }
-    }};
-  }
-
-  private static Optional<PositionedPlaceHolder> findFirstPlaceHolderFrom(
-      String template,
-      int from,
-      Collection<String> remainingPlaceHolders) {
-    String templateSubString = template.substring(from);
-    List<String> notFound = new LinkedList<>();
-    AtomicReference<Optional<PositionedPlaceHolder>> ret = new AtomicReference<>(Optional.empty());
-    remainingPlaceHolders.forEach(
-        (String s) -> {
-          int position = templateSubString.indexOf(s);
-          if (position < 0)
-            notFound.add(s);
-          else {
-            PositionedPlaceHolder found = PositionedPlaceHolder.of(s, from + position);
-            if (!ret.get().isPresent() || found.position < ret.get().get().position)
-              ret.set(Optional.of(found));
-          }
-        });
-    remainingPlaceHolders.removeAll(notFound);
-    return ret.get();
-  }
-
-
   private static <T, K, U> Collector<T, ?, SortedMap<K, U>> toLinkedHashMap(Function<? super T, ? extends K> keyMapper,
       Function<? super T, ? extends U> valueMapper) {
     return Collectors.toMap(keyMapper, valueMapper, throwingMerger(), TreeMap::new);
@@ -107,27 +118,36 @@ public enum StableTemplatingUtils {
     };
   }
 
-  @SafeVarargs
-  private static <T, U> BiConsumer<T, U> chainBiConsumers(BiConsumer<T, U> c1, BiConsumer<T, U>... c2) {
-    BiConsumer<T, U> ret = c1;
-    for (BiConsumer<T, U> each : c2)
-      ret = ret.andThen(each);
-    return ret;
-  }
+  /**
+   * A template compiled by {@link StableTemplatingUtils#compile(String, Map)}.
+   */
+  public static class Template {
+    private final String               source;
+    private final Map<String, Integer> placeHolders;
+    private final String[]             literals;
+    private final int[]                slots;
+    private final int                  literalsLength;
 
-  private static class PositionedPlaceHolder {
-    final String placeHolder;
-    final int    position;
+    private Template(String source, Map<String, Integer> placeHolders, String[] literals, int[] slots) {
+      this.source = source;
+      this.placeHolders = placeHolders;
+      this.literals = literals;
+      this.slots = slots;
+      this.literalsLength = Arrays.stream(literals).mapToInt(String::length).sum();
+    }
 
-    private PositionedPlaceHolder(String placeHolder, int position) {
-      requireArgument(s -> s.length() > 0, requireNonNull(placeHolder));
-      requireArgument(i -> i >= 0, position);
-      this.placeHolder = placeHolder;
-      this.position = position;
+    public String render(Object[] values) {
+      StringBuilder b = new StringBuilder(literalsLength + slots.length * 16);
+      for (int i = 0; i < slots.length; i++) {
+        b.append(literals[i]);
+        b.append(values[slots[i]]);
+      }
+      b.append(literals[slots.length]);
+      return b.toString();
     }
 
-    static PositionedPlaceHolder of(String placeHolder, int position) {
-      return new PositionedPlaceHolder(placeHolder, position);
+    public boolean isCompiledFrom(String source, Map<String, Integer> placeHolders) {
+      return this.source.equals(source) && this.placeHolders.equals(placeHolders);
     }
   }
 }
@@ -0,0 +1,366 @@
+package com.github.dakusui.actionunit.visitors;
+
+import com.github.dakusui.actionunit.actions.*;
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.core.context.StreamGenerator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static com.github.dakusui.actionunit.visitors.ActionSemantics.checkCancellation;
+import static com.github.dakusui.actionunit.visitors.ActionSemantics.currentPath;
+import static com.github.dakusui.actionunit.visitors.ActionSemantics.inheritingPath;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compiles an action tree into a {@link CompiledAction}, a tree of small
+ * objects each of which runs one node of the action tree.
+ * <p>
+ * Performing an action with an {@link ActionPerformer} dispatches every node
+ * through {@link Action#accept(Action.Visitor)} and creates performers for
+ * each run of a {@link ForEach} action. A compiled action resolves node
+ * types once, when it is compiled, and threads a {@link Context} through its
+ * nodes instead, so that repeated runs of the same tree do neither.
+ * Recording runs for a report is compiled in only when it is requested.
+ * <p>
+ * A compiled action behaves as {@link SimpleActionPerformer} or, when compiled
+ * by {@link ActionCompiler#reporting(ExecutionEngine, Supplier)}, as
+ * {@link ReportingActionPerformer} does. Both share {@link ActionSemantics},
+ * and listeners registered to {@link CompiledAction#eventBus()} are notified
+ * the same way as ones registered to {@link ActionPerformer#eventBus()}.
+ */
+public final class ActionCompiler {
+  private final ExecutionEngine  executionEngine;
+  private final Supplier<Record> recordFactory;
+
+  private ActionCompiler(ExecutionEngine executionEngine, Supplier<Record> recordFactory) {
+    this.executionEngine = requireNonNull(executionEngine);
+    this.recordFactory = recordFactory;
+  }
+
+  public static ActionCompiler create() {
+    return create(ExecutionEngine.DEFAULT);
+  }
+
+  public static ActionCompiler create(ExecutionEngine executionEngine) {
+    return new ActionCompiler(executionEngine, null);
+  }
+
+  /**
+   * Returns a compiler whose compiled actions record their runs in a report
+   * like {@link ReportingActionPerformer}.
+   *
+   * @param executionEngine An engine that runs parallel actions.
+   * @param recordFactory   A supplier of records for actions.
+   * @return An action compiler.
+   * @see CompiledAction#report()
+   */
+  public static ActionCompiler reporting(ExecutionEngine executionEngine, Supplier<Record> recordFactory) {
+    return new ActionCompiler(executionEngine, requireNonNull(recordFactory));
+  }
+
+  /**
+   * Compiles {@code action}. An action of a type that is not known to
+   * {@link Action.Visitor} is rejected here, instead of when it is performed.
+   *
+   * @param action An action to be compiled.
+   * @return A compiled action.
+   */
+  public CompiledAction compile(Action action) {
+    requireNonNull(action);
+    Map<Action, Record> report = recordFactory != null ?
+        new ReportingActionPerformer.Report() :
+        null;
+    ActionEventBus eventBus = new ActionEventBus();
+    return new CompiledAction(action, new Compiler(report, eventBus).compile(action), report, eventBus);
+  }
+
+  /**
+   * A compiled node of an action tree.
+   */
+  interface Node {
+    void run(Context context);
+  }
+
+  private class Compiler implements Action.Visitor {
+    private final Map<Action, Record> report;
+    private final ActionEventBus      eventBus;
+    private       Node                result;
+
+    Compiler(Map<Action, Record> report, ActionEventBus eventBus) {
+      this.report = report;
+      this.eventBus = eventBus;
+    }
+
+    Node compile(Action action) {
+      action.accept(this);
+      Node ret = requireNonNull(this.result);
+      this.result = null;
+      return new Notified(
+          action,
+          report != null ?
+              new Recorded(action, ret, report, recordFactory) :
+              ret,
+          eventBus);
+    }
+
+    Node[] compile(List<Action> actions) {
+      return actions.stream().map(this::compile).toArray(Node[]::new);
+    }
+
+    @Override
+    public void visit(Leaf action) {
+      this.result = action::perform;
+    }
+
+    @Override
+    public void visit(Named action) {
+      this.result = compile(action.action());
+    }
+
+    @Override
+    public void visit(Composite action) {
+      Node[] children = compile(action.children());
+      this.result = action.isParallel() ?
+          new ParallelComposite(children, action.parallelism(), action.failFast(), executionEngine, eventBus) :
+          new SequentialComposite(children);
+    }
+
+    @Override
+    public <E> void visit(ForEach<E> action) {
+      this.result = new Loop<>(action.data(), action.loopVariableSlot(), compile(action.perform()), action.isParallel() ? action.parallelism() : 0, action.failFast(), executionEngine, eventBus);
+    }
+
+    @Override
+    public void visit(While action) {
+      Predicate<Context> condition = action.condition();
+      Node body = compile(action.perform());
+      this.result = context -> {
+        while (condition.test(context)) {
+          checkCancellation(action, context);
+          body.run(context);
+        }
+      };
+    }
+
+    @Override
+    public void visit(When action) {
+      Predicate<Context> condition = action.cond();
+      Node perform = compile(action.perform());
+      Node otherwise = compile(action.otherwise());
+      this.result = context -> {
+        if (condition.test(context))
+          perform.run(context);
+        else
+          otherwise.run(context);
+      };
+    }
+
+    @Override
+    public void visit(Attempt action) {
+      Node perform = compile(action.perform());
+      Node recover = compile(action.recover());
+      Node ensure = compile(action.ensure());
+      this.result = context -> ActionSemantics.attempt(action, context, perform::run, recover::run, ensure::run);
+    }
+
+    @Override
+    public void visit(Retry action) {
+      Node body = compile(action.perform());
+      this.result = context -> ActionSemantics.retry(
+          action,
+          context,
+          () -> body.run(context),
+          interval -> ActionPerformer.backOffInNanos(interval, context),
+          eventBus);
+    }
+
+    @Override
+    public void visit(TimeOut action) {
+      Node body = compile(action.perform());
+      this.result = context -> ActionSemantics.runWithTimeout(action, context, () -> body.run(context), eventBus);
+    }
+
+    @Override
+    public void visit(CircuitBreaker action) {
+      CircuitBreaker.Circuit circuit = action.circuit();
+      Node body = compile(action.perform());
+      this.result = context -> ActionSemantics.runInCircuit(circuit, context, () -> body.run(context));
+    }
+  }
+
+  private static class SequentialComposite implements Node {
+    private final Node[] children;
+
+    SequentialComposite(Node[] children) {
+      this.children = children;
+    }
+
+    @Override
+    public void run(Context context) {
+      for (Node each : children)
+        each.run(context);
+    }
+  }
+
+  private static class ParallelComposite implements Node {
+    private final Node[]          children;
+    private final int             parallelism;
+    private final boolean         failFast;
+    private final ExecutionEngine executionEngine;
+    private final ActionEventBus  eventBus;
+
+    ParallelComposite(Node[] children, int parallelism, boolean failFast, ExecutionEngine executionEngine, ActionEventBus eventBus) {
+      this.children = children;
+      this.parallelism = parallelism;
+      this.failFast = failFast;
+      this.executionEngine = executionEngine;
+      this.eventBus = eventBus;
+    }
+
+    @Override
+    public void run(Context context) {
+      ActionPath path = currentPath(eventBus);
+      executionEngine.execute(Arrays.stream(children).map(each -> inheritingPath(path, () -> each.run(context))), parallelism, failFast);
+    }
+  }
+
+  /**
+   * A compiled {@link ForEach} action. Its elements are run sequentially if
+   * {@code parallelism} is {@code 0}.
+   */
+  private static class Loop<E> implements Node {
+    private final StreamGenerator<E> data;
+    private final Context.Slot       slot;
+    private final Node               body;
+    private final int                parallelism;
+    private final boolean            failFast;
+    private final ExecutionEngine    executionEngine;
+    private final ActionEventBus     eventBus;
+
+    Loop(StreamGenerator<E> data, Context.Slot slot, Node body, int parallelism, boolean failFast, ExecutionEngine executionEngine, ActionEventBus eventBus) {
+      this.data = data;
+      this.slot = slot;
+      this.body = body;
+      this.parallelism = parallelism;
+      this.failFast = failFast;
+      this.executionEngine = executionEngine;
+      this.eventBus = eventBus;
+    }
+
+    /**
+     * Runs the body for each element in a child context, which is reused, and
+     * closes the data stream afterwards like {@link ActionPerformer#visit(ForEach)}
+     * does.
+     */
+    @Override
+    public void run(Context context) {
+      try (Stream<E> stream = requireNonNull(data.apply(context))) {
+        if (parallelism == 0) {
+          Context frame = context.createChild();
+          for (Iterator<E> i = stream.iterator(); i.hasNext(); ) {
+            E e = i.next();
+            try {
+              runBody(frame, e);
+            } finally {
+              frame = reset(context, frame);
+            }
+          }
+        } else {
+          ActionPath path = currentPath(eventBus);
+          ObjectPool<Context> frames = new ObjectPool<>(parallelism, context::createChild);
+          executionEngine.execute(
+              stream.map(e -> inheritingPath(path, () -> {
+                Context frame = frames.take();
+                try {
+                  runBody(frame, e);
+                } finally {
+                  frames.release(reset(context, frame));
+                }
+              })),
+              parallelism,
+              failFast);
+        }
+      }
+    }
+
+    private void runBody(Context frame, E element) {
+      checkCancellation(body, frame);
+      body.run(frame.assignTo(slot, element));
+    }
+
+    /**
+     * Returns {@code frame} without variables assigned by an element, or a new
+     * child of {@code context} if it does not support {@link Context#tryClear()}.
+     */
+    private static Context reset(Context context, Context frame) {
+      return frame.tryClear() ?
+          frame :
+          context.createChild();
+    }
+  }
+
+  /**
+   * Records runs of a node in a report. A record is created when the node is
+   * run first, so that actions not exercised are reported as such.
+   */
+  private static class Recorded implements Node {
+    private final    Action              action;
+    private final    Node                node;
+    private final    Map<Action, Record> report;
+    private final    Supplier<Record>    recordFactory;
+    private volatile Record              record;
+
+    Recorded(Action action, Node node, Map<Action, Record> report, Supplier<Record> recordFactory) {
+      this.action = action;
+      this.node = node;
+      this.report = report;
+      this.recordFactory = recordFactory;
+    }
+
+    @Override
+    public void run(Context context) {
+      Record record = this.record;
+      if (record == null)
+        this.record = record = report.computeIfAbsent(action, a -> recordFactory.get());
+      long timeStartedInNanos = System.nanoTime();
+      try {
+        node.run(context);
+      } catch (Throwable t) {
+        record.failedInNanos(System.nanoTime() - timeStartedInNanos, ActionSemantics.cancellationIfCancelled(t, context));
+        throw t;
+      }
+      record.succeededInNanos(System.nanoTime() - timeStartedInNanos);
+    }
+  }
+
+  /**
+   * Notifies listeners of runs of a node, like {@link ActionPerformer} does for
+   * an action.
+   */
+  private static class Notified implements Node {
+    private final Action         action;
+    private final Node           node;
+    private final ActionEventBus eventBus;
+
+    Notified(Action action, Node node, ActionEventBus eventBus) {
+      this.action = action;
+      this.node = node;
+      this.eventBus = eventBus;
+    }
+
+    @Override
+    public void run(Context context) {
+      if (eventBus.isEmpty())
+        node.run(context);
+      else
+        ActionSemantics.notifying(eventBus, action, context, () -> node.run(context));
+    }
+  }
+}
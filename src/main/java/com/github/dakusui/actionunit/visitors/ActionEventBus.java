@@ -0,0 +1,85 @@
+package com.github.dakusui.actionunit.visitors;
+
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.exceptions.ActionTimeOutException;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Dispatches events of actions to registered {@link ActionListener}s.
+ * <p>
+ * Listeners are held in an array that is replaced when one is registered or
+ * unregistered, so that dispatching an event takes neither a lock nor an
+ * allocation. While no listener is registered, an {@link ActionPerformer}
+ * doesn't compute paths nor measure time for events at all.
+ */
+public final class ActionEventBus implements ActionListener {
+  private static final ActionListener[] NO_LISTENER = new ActionListener[0];
+
+  private final AtomicReference<ActionListener[]> listeners = new AtomicReference<>(NO_LISTENER);
+
+  public void register(ActionListener listener) {
+    requireNonNull(listener);
+    listeners.getAndUpdate(current -> {
+      ActionListener[] ret = Arrays.copyOf(current, current.length + 1);
+      ret[current.length] = listener;
+      return ret;
+    });
+  }
+
+  /**
+   * Unregisters {@code listener}. Nothing happens if it is not registered.
+   *
+   * @param listener A listener to be unregistered.
+   */
+  public void unregister(ActionListener listener) {
+    listeners.getAndUpdate(current -> {
+      for (int i = 0; i < current.length; i++) {
+        if (current[i] == listener) {
+          ActionListener[] ret = new ActionListener[current.length - 1];
+          System.arraycopy(current, 0, ret, 0, i);
+          System.arraycopy(current, i + 1, ret, i, current.length - i - 1);
+          return ret;
+        }
+      }
+      return current;
+    });
+  }
+
+  public boolean isEmpty() {
+    return listeners.get().length == 0;
+  }
+
+  @Override
+  public void onStart(ActionPath path, Context context) {
+    for (ActionListener each : listeners.get())
+      each.onStart(path, context);
+  }
+
+  @Override
+  public void onSuccess(ActionPath path, Context context, long timeSpentInNanos) {
+    for (ActionListener each : listeners.get())
+      each.onSuccess(path, context, timeSpentInNanos);
+  }
+
+  @Override
+  public void onFailure(ActionPath path, Context context, long timeSpentInNanos, Throwable t) {
+    for (ActionListener each : listeners.get())
+      each.onFailure(path, context, timeSpentInNanos, t);
+  }
+
+  @Override
+  public void onRetry(ActionPath path, Context context, int retry, Throwable t) {
+    for (ActionListener each : listeners.get())
+      each.onRetry(path, context, retry, t);
+  }
+
+  @Override
+  public void onTimeout(ActionPath path, Context context, ActionTimeOutException e) {
+    for (ActionListener each : listeners.get())
+      each.onTimeout(path, context, e);
+  }
+}
@@ -0,0 +1,56 @@
+package com.github.dakusui.actionunit.visitors;
+
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.exceptions.ActionTimeOutException;
+
+/**
+ * An interface to observe actions performed by an {@link ActionPerformer}.
+ * <p>
+ * Listeners are registered to {@link ActionPerformer#eventBus()} and called
+ * synchronously on threads that perform actions, which may be more than one
+ * at the same time for parallel actions. Implementations should therefore be
+ * thread-safe and return quickly. An exception thrown by a listener is
+ * propagated to the performed action.
+ *
+ * @see ActionEventBus
+ */
+public interface ActionListener {
+  /**
+   * Called when an action identified by {@code path} is started.
+   *
+   * @param path    A path to the action from the root.
+   * @param context A context in which the action is performed.
+   */
+  default void onStart(ActionPath path, Context context) {
+  }
+
+  default void onSuccess(ActionPath path, Context context, long timeSpentInNanos) {
+  }
+
+  default void onFailure(ActionPath path, Context context, long timeSpentInNanos, Throwable t) {
+  }
+
+  /**
+   * Called when a {@link com.github.dakusui.actionunit.actions.Retry} action
+   * identified by {@code path} is going to retry after a failure {@code t}.
+   *
+   * @param path    A path to the retry action.
+   * @param context A context in which the action is performed.
+   * @param retry   A number of the retry, starting from 1.
+   * @param t       A failure that caused the retry.
+   */
+  default void onRetry(ActionPath path, Context context, int retry, Throwable t) {
+  }
+
+  /**
+   * Called when a {@link com.github.dakusui.actionunit.actions.TimeOut} action
+   * identified by {@code path} timed out. {@link ActionListener#onFailure} is
+   * also called for the action after this.
+   *
+   * @param path    A path to the time-out action.
+   * @param context A context in which the action is performed.
+   * @param e       An exception that reports the time-out.
+   */
+  default void onTimeout(ActionPath path, Context context, ActionTimeOutException e) {
+  }
+}
@@ -0,0 +1,106 @@
+package com.github.dakusui.actionunit.visitors;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Metrics of runs of actions that share a name, kept by a {@link MetricsRegistry}.
+ * <p>
+ * Counts and durations of runs are kept in a {@link Record} that keeps no
+ * history, so that recording a run allocates nothing.
+ */
+public final class ActionMetrics {
+  /**
+   * A type of actions whose metrics are kept.
+   */
+  public enum Type {
+    /**
+     * {@link com.github.dakusui.actionunit.actions.Named} actions, including
+     * commanders given descriptions.
+     */
+    NAMED,
+    /**
+     * Leaves that run commands built by commanders.
+     */
+    COMMAND;
+
+    String label() {
+      return name().toLowerCase();
+    }
+  }
+
+  private final String    name;
+  private final Type      type;
+  private final Record    record   = new Record(0);
+  private final LongAdder retries  = new LongAdder();
+  private final LongAdder timeouts = new LongAdder();
+  private final LongAdder inFlight = new LongAdder();
+
+  ActionMetrics(String name, Type type) {
+    this.name = requireNonNull(name);
+    this.type = requireNonNull(type);
+  }
+
+  public String name() {
+    return this.name;
+  }
+
+  public Type type() {
+    return this.type;
+  }
+
+  /**
+   * Returns a record that has numbers of successes, failures, and errors, and
+   * time spent by runs.
+   *
+   * @return A record of runs.
+   */
+  public Record record() {
+    return this.record;
+  }
+
+  public long retryCount() {
+    return this.retries.sum();
+  }
+
+  public long timeoutCount() {
+    return this.timeouts.sum();
+  }
+
+  /**
+   * Returns the number of runs that are started but not finished yet.
+   *
+   * @return The number of runs in flight.
+   */
+  public long inFlight() {
+    return this.inFlight.sum();
+  }
+
+  void started() {
+    inFlight.increment();
+  }
+
+  void succeeded(long timeSpentInNanos) {
+    inFlight.decrement();
+    record.succeededInNanos(timeSpentInNanos);
+  }
+
+  void failed(long timeSpentInNanos, Throwable t) {
+    inFlight.decrement();
+    record.failedInNanos(timeSpentInNanos, t);
+  }
+
+  void retried() {
+    retries.increment();
+  }
+
+  void timedOut() {
+    timeouts.increment();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[%s]:%s", name, type.label(), record.toVerboseString());
+  }
+}
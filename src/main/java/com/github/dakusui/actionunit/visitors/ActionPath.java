@@ -0,0 +1,72 @@
+package com.github.dakusui.actionunit.visitors;
+
+import com.github.dakusui.actionunit.core.Action;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A path from the root action to an action being performed.
+ * <p>
+ * A new path is created each time an action is performed, so that a path can
+ * be used as a key to identify one run of an action, even if the same action
+ * object is performed more than once, e.g., in a loop.
+ */
+public final class ActionPath {
+  private final ActionPath parent;
+  private final Action     action;
+  private final int        depth;
+
+  private ActionPath(ActionPath parent, Action action) {
+    this.parent = parent;
+    this.action = requireNonNull(action);
+    this.depth = parent == null ? 0 : parent.depth + 1;
+  }
+
+  static ActionPath of(ActionPath parent, Action action) {
+    return new ActionPath(parent, action);
+  }
+
+  public Action action() {
+    return this.action;
+  }
+
+  /**
+   * Returns a path to the parent of the action, or {@code null} if the action
+   * is the root.
+   *
+   * @return A path to the parent.
+   */
+  public ActionPath parent() {
+    return this.parent;
+  }
+
+  /**
+   * Returns the depth of the action. The root action's depth is {@code 0}.
+   *
+   * @return The depth.
+   */
+  public int depth() {
+    return this.depth;
+  }
+
+  public List<Action> toList() {
+    Action[] ret = new Action[depth + 1];
+    for (ActionPath each = this; each != null; each = each.parent)
+      ret[each.depth] = each.action;
+    return Arrays.asList(ret);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder b = new StringBuilder();
+    for (Action each : toList()) {
+      if (b.length() > 0)
+        b.append(" > ");
+      b.append(String.format("%s", each));
+    }
+    return b.toString();
+  }
+}
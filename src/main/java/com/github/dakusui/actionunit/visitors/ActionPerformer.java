@@ -2,29 +2,99 @@ package com.github.dakusui.actionunit.visitors;
 
 import com.github.dakusui.actionunit.actions.*;
 import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Cancellation;
 import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.exceptions.ActionCancelledException;
 import com.github.dakusui.actionunit.exceptions.ActionException;
-import com.github.dakusui.actionunit.utils.InternalUtils;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
+import static com.github.dakusui.actionunit.visitors.ActionSemantics.currentPath;
+import static com.github.dakusui.actionunit.visitors.ActionSemantics.inheritingPath;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public abstract class ActionPerformer implements Action.Visitor {
-  public static final String  ONGOING_EXCEPTIONS_TABLE_NAME = "ONGOING_EXCEPTIONS";
-  protected           Context context;
+  public static final  String                  ONGOING_EXCEPTIONS_TABLE_NAME = "ONGOING_EXCEPTIONS";
+  static final         Context.Slot            ONGOING_EXCEPTIONS_TABLE_SLOT = Context.Slot.of(ONGOING_EXCEPTIONS_TABLE_NAME);
+  protected final      Context                 context;
+  protected final      ExecutionEngine         executionEngine;
+  protected final      ActionEventBus          eventBus;
 
   protected ActionPerformer(Context context) {
+    this(context, ExecutionEngine.DEFAULT);
+  }
+
+  protected ActionPerformer(Context context, ExecutionEngine executionEngine) {
+    this(context, executionEngine, new ActionEventBus());
+  }
+
+  /**
+   * Creates an action performer that dispatches events to {@code eventBus}.
+   * Performers created by {@link ActionPerformer#newInstance(Context)} should
+   * share the same bus.
+   *
+   * @param context         A context in which actions are performed.
+   * @param executionEngine An engine that runs parallel actions.
+   * @param eventBus        A bus to which events of actions are dispatched.
+   */
+  protected ActionPerformer(Context context, ExecutionEngine executionEngine, ActionEventBus eventBus) {
     this.context = requireNonNull(context);
-    Map<Action, Throwable> ongoingExceptions = new ConcurrentHashMap<>();
-    this.context.assignTo(ONGOING_EXCEPTIONS_TABLE_NAME, ongoingExceptions);
+    this.executionEngine = requireNonNull(executionEngine);
+    this.eventBus = requireNonNull(eventBus);
+    // A performer created for a child context shares the table of the root.
+    if (!this.context.defined(ONGOING_EXCEPTIONS_TABLE_SLOT)) {
+      Map<Action, Throwable> ongoingExceptions = new ConcurrentHashMap<>();
+      this.context.assignTo(ONGOING_EXCEPTIONS_TABLE_SLOT, ongoingExceptions);
+    }
+  }
+
+  /**
+   * Returns a bus to which listeners of actions performed by this object are
+   * registered.
+   *
+   * @return An event bus.
+   */
+  public ActionEventBus eventBus() {
+    return this.eventBus;
+  }
+
+  /**
+   * Performs {@code action}. Unlike {@code action.accept(performer)}, listeners
+   * are notified of the start and end of {@code action} itself as well, and
+   * the cancellation token of this performer's context is bound to the calling
+   * thread, so that {@link ActionPerformer#cancel()} reaches tasks run by other
+   * threads as well.
+   *
+   * @param action An action to be performed.
+   */
+  public void perform(Action action) {
+    requireNonNull(action);
+    if (Cancellation.current() == Cancellation.NEVER)
+      this.context.cancellation().run(() -> callAccept(action, this));
+    else
+      // Already in a run of another action, whose token should be kept bound.
+      callAccept(action, this);
+  }
+
+  /**
+   * Asks actions being performed by this object, and ones it will perform, to
+   * stop. Cancellation is cooperative: {@link While}, {@link ForEach}, and
+   * {@link Retry} actions stop before their next iteration or attempt, the
+   * back-off of a retry and processes of commands are interrupted, and leaves
+   * can check {@link Context#cancelled()}. Actions stopped by this method fail
+   * with an {@link ActionCancelledException}.
+   * <p>
+   * This method can be called from any thread.
+   */
+  public void cancel() {
+    this.context.cancellation().cancel();
   }
 
   public void visit(Leaf action) {
-    action.runnable(context).run();
+    action.perform(context);
   }
 
   public void visit(Named action) {
@@ -32,31 +102,64 @@ public abstract class ActionPerformer implements Action.Visitor {
   }
 
   public void visit(Composite action) {
-    Stream<Action> actionStream = action.isParallel()
-        ? action.children().parallelStream()
-        : action.children().stream();
-    actionStream.forEach(
-        a -> callAccept(a, this)
-    );
+    if (action.isParallel()) {
+      ActionPath path = currentPath(eventBus);
+      this.executionEngine.execute(
+          action.children().stream().map(a -> inheritingPath(path, () -> callAccept(a, this))),
+          action.parallelism(),
+          action.failFast());
+    } else
+      action.children().forEach(
+          a -> callAccept(a, this)
+      );
   }
 
+  /**
+   * Performs the body of {@code action} for each element. Instead of a child
+   * context and a performer for each element, an {@link Iteration} is reused:
+   * one for a sequential loop, and one for each concurrently running element of
+   * a parallel loop.
+   * <p>
+   * The data stream is closed afterwards, so that resources held by it, e.g.,
+   * a process of {@link com.github.dakusui.actionunit.actions.cmd.Commander#toStreamGenerator()},
+   * are released.
+   */
   public <E> void visit(ForEach<E> action) {
-    Stream<E> data = requireNonNull(action.data().apply(this.context));
-    data = action.isParallel()
-        ? data.parallel()
-        : data;
-    data.forEach(
-        e -> callAccept(action.perform(),
-            newInstance(
-                this.context.createChild().assignTo(
-                    action.loopVariableName(),
-                    e
-                )
-            )));
+    Action body = action.perform();
+    Context.Slot slot = action.loopVariableSlot();
+    try (Stream<E> data = requireNonNull(action.data().apply(this.context))) {
+      if (action.isParallel()) {
+        ActionPath path = currentPath(eventBus);
+        ObjectPool<Iteration> iterations = new ObjectPool<>(action.parallelism(), Iteration::new);
+        this.executionEngine.execute(
+            data.map(e -> inheritingPath(path, () -> {
+              Iteration iteration = iterations.take();
+              try {
+                iteration.perform(body, slot, e);
+              } finally {
+                iterations.release(iteration);
+              }
+            })),
+            action.parallelism(),
+            action.failFast());
+      } else {
+        Iteration iteration = new Iteration();
+        data.forEach(e -> iteration.perform(body, slot, e));
+      }
+    }
+  }
+
+  /**
+   * Throws an {@link ActionCancelledException} if actions performed by this
+   * object are asked to stop.
+   */
+  private void checkCancellation(Action action) {
+    ActionSemantics.checkCancellation(action, this.context);
   }
 
   public void visit(While action) {
     while (action.condition().test(this.context)) {
+      checkCancellation(action);
       callAccept(action.perform(), this);
     }
   }
@@ -69,84 +172,127 @@ public abstract class ActionPerformer implements Action.Visitor {
     }
   }
 
+  /**
+   * Performs {@code action} without modifying this performer or its context,
+   * both of which are shared by children of a parallel {@link Composite}.
+   *
+   * @see ActionSemantics#attempt
+   */
   public void visit(Attempt action) {
-    Context originalContext = this.context;
-    try {
-      callAccept(action.perform(), this);
-    } catch (Throwable t) {
-      if (action.targetExceptionClass().isAssignableFrom(t.getClass())) {
-        this.context = this.context.createChild();
-        callAccept(action.recover(), newInstance(
-            originalContext.assignTo(Context.Impl.ONGOING_EXCEPTION, t)
-        ));
-      } else
-        throw ActionException.wrap(t);
-    } finally {
-      callAccept(action.ensure(), this);
-      this.context = originalContext;
-    }
+    ActionSemantics.attempt(
+        action,
+        this.context,
+        c -> callAccept(action.perform(), this),
+        c -> callAccept(action.recover(), newInstance(c)),
+        c -> callAccept(action.ensure(), c == this.context ? this : newInstance(c)));
   }
 
   public void visit(Retry action) {
-    boolean succeeded = false;
-    Action targetAction = action.perform();
-    Throwable lastException = null;
-    for (int i = 0; i <= action.times(); i++) {
-      try {
-        callAccept(targetAction, this);
-        succeeded = true;
-        break;
-      } catch (Throwable t) {
-        if (action.targetExceptionClass().isAssignableFrom(t.getClass())) {
-          lastException = t;
-          registerLastExceptionFor(targetAction, lastException);
-          InternalUtils.sleep(action.intervalInNanoseconds(), NANOSECONDS);
-        } else {
-          throw ActionException.wrap(t);
-        }
-      }
-    }
-    if (succeeded) {
-      unregisterLastExceptionFor(targetAction);
-    } else {
-      throw ActionException.wrap(lastException);
-    }
+    ActionSemantics.retry(action, this.context, () -> callAccept(action.perform(), this), this::backOff, eventBus);
   }
 
   public void visit(TimeOut action) {
-    InternalUtils.runWithTimeout(
-        () -> {
-          callAccept(action.perform(), ActionPerformer.this);
-          return true;
-        },
-        () -> String.format("%s", action),
-        () -> formatOngoingExceptions(action.perform()),
-        action.durationInNanos(),
-        NANOSECONDS
-    );
+    ActionSemantics.runWithTimeout(action, this.context, () -> callAccept(action.perform(), this), eventBus);
   }
 
-  protected abstract Action.Visitor newInstance(Context context);
+  public void visit(CircuitBreaker action) {
+    ActionSemantics.runInCircuit(action.circuit(), this.context, () -> callAccept(action.perform(), this));
+  }
 
-  protected abstract void callAccept(Action action, Action.Visitor visitor);
+  /**
+   * Waits for {@code intervalInNanos} before a next attempt of a {@link Retry}
+   * action. The wait is done as a {@link java.util.concurrent.ForkJoinPool.ManagedBlocker}
+   * so that a pool running the calling thread can compensate it, instead of
+   * losing a worker while the action backs off.
+   * The wait is interrupted when the action is cancelled.
+   *
+   * @param intervalInNanos An interval in nanoseconds.
+   */
+  protected void backOff(long intervalInNanos) {
+    backOffInNanos(intervalInNanos, this.context);
+  }
 
-  private void registerLastExceptionFor(Action action, Throwable e) {
-    ongoingExceptionsTable().put(action, e);
+  static void backOffInNanos(long intervalInNanos, Context context) {
+    Thread thread = Thread.currentThread();
+    Cancellation.Registration byContext = context.cancellation().onCancel(thread::interrupt);
+    Cancellation.Registration byThread = Cancellation.current().onCancel(thread::interrupt);
+    try {
+      ExecutionEngine.Dispatching.managedBlock(() -> {
+        NANOSECONDS.sleep(intervalInNanos);
+        return null;
+      });
+    } catch (InterruptedException e) {
+      if (context.cancelled())
+        throw new ActionCancelledException("Cancelled while backing off", e);
+      Thread.currentThread().interrupt();
+      throw ActionException.wrap(e);
+    } finally {
+      byContext.close();
+      byThread.close();
+      // Clear an interruption by the hooks, which may have been made after the wait.
+      if (context.cancelled())
+        Thread.interrupted();
+    }
+    if (context.cancelled())
+      throw new ActionCancelledException("Cancelled while backing off");
   }
 
-  private void unregisterLastExceptionFor(Action action) {
-    ongoingExceptionsTable().remove(action);
+  protected abstract Action.Visitor newInstance(Context context);
+
+  /**
+   * Makes {@code visitor} visit {@code action}, notifying listeners registered
+   * to {@link ActionPerformer#eventBus()} of its start and end.
+   *
+   * @param action  An action to be performed.
+   * @param visitor A visitor that performs {@code action}.
+   */
+  protected void callAccept(Action action, Action.Visitor visitor) {
+    if (eventBus.isEmpty()) {
+      action.accept(visitor);
+      return;
+    }
+    Context context = visitor instanceof ActionPerformer ?
+        ((ActionPerformer) visitor).context :
+        this.context;
+    ActionSemantics.notifying(eventBus, action, context, () -> action.accept(visitor));
   }
 
-  private Map<Action, Throwable> ongoingExceptionsTable() {
-    return this.context.valueOf(ONGOING_EXCEPTIONS_TABLE_NAME);
+  /**
+   * A child context of this performer's and a performer for it, which are
+   * reused for elements of a loop, one after another. If the context does not
+   * support {@link Context#tryClear()}, new ones are created for each element.
+   */
+  private class Iteration {
+    private Context        frame;
+    private Action.Visitor performer;
+
+    Iteration() {
+      renew();
+    }
+
+    void perform(Action body, Context.Slot slot, Object element) {
+      checkCancellation(body);
+      frame.assignTo(slot, element);
+      try {
+        callAccept(body, performer);
+      } finally {
+        // Variables assigned by the body, including the element, are not seen by the next one.
+        if (!frame.tryClear())
+          renew();
+      }
+    }
+
+    private void renew() {
+      this.frame = ActionPerformer.this.context.createChild();
+      this.performer = newInstance(this.frame);
+    }
   }
 
-  private String formatOngoingExceptions(Action action) {
+  static String formatOngoingExceptions(Map<Action, Throwable> ongoingExceptions) {
     StringBuilder b = new StringBuilder();
-    for (Action ongoingAction : ongoingExceptionsTable().keySet()) {
+    for (Action ongoingAction : ongoingExceptions.keySet()) {
       b.append(String.format("%n%s%n----%n", ongoingAction));
-      Throwable e = ongoingExceptionsTable().get(ongoingAction);
+      Throwable e = ongoingExceptions.get(ongoingAction);
       b.append(e.getMessage());
       b.append(String.format("%n"));
       for (StackTraceElement element : e.getStackTrace()) {
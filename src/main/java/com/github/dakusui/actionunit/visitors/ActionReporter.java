@@ -24,8 +24,18 @@ public class ActionReporter extends ActionPrinter {
   private final Writer              debugWriter;
   private final Writer              infoWriter;
   private final int                 forcePrintLevelForUnexercisedActions;
+  private final boolean             verbose;
 
   public ActionReporter(Predicate<Action> conditionToSquashAction, Writer warnWriter, Writer infoWriter, Writer debugWriter, Writer traceWriter, Map<Action, Record> report, int forcePrintLevelForUnexercisedActions) {
+    this(conditionToSquashAction, warnWriter, infoWriter, debugWriter, traceWriter, report, forcePrintLevelForUnexercisedActions, false);
+  }
+
+  /**
+   * Creates an action reporter.
+   * If {@code verbose} is {@code true}, each exercised action is printed with
+   * latency percentiles of its runs (see {@link Record#toVerboseString()}).
+   */
+  public ActionReporter(Predicate<Action> conditionToSquashAction, Writer warnWriter, Writer infoWriter, Writer debugWriter, Writer traceWriter, Map<Action, Record> report, int forcePrintLevelForUnexercisedActions, boolean verbose) {
     super(infoWriter);
     this.conditionToSquashAction = conditionToSquashAction;
     this.report = requireNonNull(report);
@@ -34,10 +44,15 @@ public class ActionReporter extends ActionPrinter {
     this.infoWriter = infoWriter;
     this.traceWriter = traceWriter;
     this.forcePrintLevelForUnexercisedActions = forcePrintLevelForUnexercisedActions;
+    this.verbose = verbose;
   }
 
   public ActionReporter(Writer writer, Map<Action, Record> report) {
-    this(DEFAULT_CONDITION_TO_SQUASH_ACTION, writer, writer, writer, writer, report, 2);
+    this(writer, report, false);
+  }
+
+  public ActionReporter(Writer writer, Map<Action, Record> report, boolean verbose) {
+    this(DEFAULT_CONDITION_TO_SQUASH_ACTION, writer, writer, writer, writer, report, 2, verbose);
   }
 
   public void report(Action action) {
@@ -51,7 +66,7 @@ public class ActionReporter extends ActionPrinter {
       return;
     }
     Record runs = report.get(action);
-    String message = format("%s[%s]%s", indent(), runs != null ? runs : "", action);
+    String message = format("%s[%s]%s", indent(), formatRecord(runs), action);
     this.previousIndent = "";
     if (isInFailingContext()) {
       this.warnWriter.writeLine(message);
@@ -196,6 +211,14 @@ public class ActionReporter extends ActionPrinter {
     return true;
   }
 
+  private String formatRecord(Record runs) {
+    if (runs == null)
+      return "";
+    return verbose ?
+        runs.toVerboseString() :
+        runs.toString();
+  }
+
   private void writeLineForUnexercisedAction(String message) {
     // unexercised
     if (depth < this.forcePrintLevelForUnexercisedActions)
@@ -109,6 +109,17 @@ public abstract class ActionScanner implements Action.Visitor {
     }
   }
 
+  @Override
+  public void visit(CircuitBreaker action) {
+    this.handleAction(action);
+    this.enter(action);
+    try {
+      action.perform().accept(this);
+    } finally {
+      this.leave(action);
+    }
+  }
+
   protected abstract void handleAction(Action action);
 
   protected String indent() {
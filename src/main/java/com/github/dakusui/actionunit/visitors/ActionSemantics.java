@@ -0,0 +1,278 @@
+package com.github.dakusui.actionunit.visitors;
+
+import com.github.dakusui.actionunit.actions.Attempt;
+import com.github.dakusui.actionunit.actions.CircuitBreaker;
+import com.github.dakusui.actionunit.actions.Retry;
+import com.github.dakusui.actionunit.actions.TimeOut;
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Cancellation;
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.exceptions.ActionCancelledException;
+import com.github.dakusui.actionunit.exceptions.ActionException;
+import com.github.dakusui.actionunit.exceptions.ActionTimeOutException;
+import com.github.dakusui.actionunit.exceptions.CircuitBreakerOpenException;
+import com.github.dakusui.actionunit.utils.InternalUtils;
+
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import static com.github.dakusui.actionunit.visitors.ActionPerformer.ONGOING_EXCEPTIONS_TABLE_SLOT;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Semantics of actions shared by {@link ActionPerformer}, {@link ActionCompiler}
+ * and {@link AsyncActionPerformer}: how {@link Attempt}, {@link Retry},
+ * {@link TimeOut} and {@link CircuitBreaker} actions behave, and how listeners
+ * are notified of actions. The engines only differ in how they run bodies.
+ */
+final class ActionSemantics {
+  /**
+   * A path to the action being performed by the current thread. Maintained only
+   * while a listener is registered.
+   */
+  private static final ThreadLocal<ActionPath> CURRENT_PATH = new ThreadLocal<>();
+
+  private ActionSemantics() {
+  }
+
+  /**
+   * Runs {@code body}, which performs {@code action}, notifying listeners
+   * registered to {@code eventBus} of its start and end.
+   */
+  static void notifying(ActionEventBus eventBus, Action action, Context context, Runnable body) {
+    if (eventBus.isEmpty()) {
+      body.run();
+      return;
+    }
+    ActionPath parent = CURRENT_PATH.get();
+    ActionPath path = ActionPath.of(parent, action);
+    CURRENT_PATH.set(path);
+    try {
+      eventBus.onStart(path, context);
+      long timeStartedInNanos = System.nanoTime();
+      try {
+        body.run();
+      } catch (Throwable t) {
+        eventBus.onFailure(path, context, System.nanoTime() - timeStartedInNanos, cancellationIfCancelled(t, context));
+        throw t;
+      }
+      eventBus.onSuccess(path, context, System.nanoTime() - timeStartedInNanos);
+    } finally {
+      CURRENT_PATH.set(parent);
+    }
+  }
+
+  static ActionPath currentPath(ActionEventBus eventBus) {
+    return eventBus.isEmpty() ? null : CURRENT_PATH.get();
+  }
+
+  /**
+   * Returns a task that runs {@code task} under {@code path}, so that actions
+   * run by other threads for a parallel action have paths that start from it.
+   * Tasks are pulled from a stream by those threads, so the path needs to be
+   * taken by the calling thread beforehand.
+   */
+  static Runnable inheritingPath(ActionPath path, Runnable task) {
+    if (path == null)
+      return task;
+    return () -> {
+      ActionPath saved = CURRENT_PATH.get();
+      CURRENT_PATH.set(path);
+      try {
+        task.run();
+      } finally {
+        CURRENT_PATH.set(saved);
+      }
+    };
+  }
+
+  /**
+   * Returns an exception with which a failure of an action is reported. Since
+   * a cancelled action fails with whatever its interrupted body throws, e.g., an
+   * {@link InterruptedException}, it is converted into an {@link ActionCancelledException}
+   * so that the run is recorded as cancelled, not as an error.
+   *
+   * @param t       An exception thrown by an action.
+   * @param context A context in which the action was performed.
+   * @return An exception to be reported.
+   */
+  static Throwable cancellationIfCancelled(Throwable t, Context context) {
+    if (t instanceof ActionCancelledException || !context.cancelled())
+      return t;
+    return new ActionCancelledException(String.format("Cancelled: %s", t.getMessage()), t);
+  }
+
+  /**
+   * Throws an {@link ActionCancelledException} if actions performed in
+   * {@code context} are asked to stop.
+   */
+  static void checkCancellation(Object action, Context context) {
+    if (context.cancelled())
+      throw new ActionCancelledException(String.format("Cancelled: %s", action));
+  }
+
+  /**
+   * Performs an {@link Attempt} action without modifying {@code context}, which
+   * may be shared by children of a parallel action. {@code recover} is run in
+   * a {@link ActionSemantics#recoveryContext(Context, Throwable) recovery context}
+   * and {@code ensure} in a child of it, so that it sees variables assigned by
+   * {@code recover}.
+   */
+  static void attempt(Attempt action, Context context, Consumer<Context> perform, Consumer<Context> recover, Consumer<Context> ensure) {
+    Context ensureContext = context;
+    try {
+      perform.accept(context);
+    } catch (Throwable t) {
+      if (!isRecoverable(action, t, context))
+        throw ActionException.wrap(t);
+      Context recoveryContext = recoveryContext(context, t);
+      ensureContext = recoveryContext.createChild();
+      recover.accept(recoveryContext);
+    } finally {
+      ensure.accept(ensureContext);
+    }
+  }
+
+  /**
+   * Returns {@code true} if {@code t} thrown by the target of {@code action}
+   * should be recovered. A cancelled action is not recovered, but stops as soon
+   * as possible.
+   */
+  static boolean isRecoverable(Attempt action, Throwable t, Context context) {
+    return action.targetExceptionClass().isAssignableFrom(t.getClass()) && !context.cancelled();
+  }
+
+  static Context recoveryContext(Context context, Throwable t) {
+    return context.createChild().assignTo(Context.Impl.ONGOING_EXCEPTION, t);
+  }
+
+  /**
+   * Performs a {@link Retry} action by running {@code body} until it succeeds.
+   * Before each retry, listeners are notified and {@code backOff} waits for an
+   * interval given by the back-off of the action.
+   */
+  static void retry(Retry action, Context context, Runnable body, LongConsumer backOff, ActionEventBus eventBus) {
+    long interval = 0;
+    for (int i = 0; ; i++) {
+      try {
+        body.run();
+        succeeded(action, context);
+        return;
+      } catch (Throwable t) {
+        if (!shouldRetry(action, i, t, context))
+          throw ActionException.wrap(t);
+        if (context.cancelled())
+          throw new ActionCancelledException(String.format("Cancelled: %s", action), t);
+        if (!eventBus.isEmpty())
+          eventBus.onRetry(CURRENT_PATH.get(), context, i + 1, t);
+        interval = action.backoff().nextIntervalInNanos(i, interval);
+        backOff.accept(interval);
+      }
+    }
+  }
+
+  /**
+   * Returns {@code true} if the target of {@code action} should be retried
+   * after its {@code i}-th retry failed with {@code t}, which is remembered to
+   * be reported when an enclosing {@link TimeOut} passes.
+   */
+  static boolean shouldRetry(Retry action, int i, Throwable t, Context context) {
+    if (!action.targetExceptionClass().isAssignableFrom(t.getClass()))
+      return false;
+    ongoingExceptionsTable(context).put(action.perform(), t);
+    return i < action.times() && action.budget().tryAcquire();
+  }
+
+  static void succeeded(Retry action, Context context) {
+    ongoingExceptionsTable(context).remove(action.perform());
+  }
+
+  /**
+   * Performs a {@link TimeOut} action by running {@code body} on the calling
+   * thread, notifying listeners when it times out.
+   * <p>
+   * {@code body} is run under a child of {@link Cancellation#current()}, which
+   * is cancelled when the deadline passes, so that tasks of a parallel action
+   * in it running on other threads are interrupted as well as the calling
+   * thread. A body that does not respond to interruption nor cancellation runs
+   * past the deadline and the time-out is reported after it finishes.
+   */
+  static void runWithTimeout(TimeOut action, Context context, Runnable body, ActionEventBus eventBus) {
+    Cancellation cancellation = Cancellation.current().createChild();
+    try {
+      InternalUtils.runWithTimeout(
+          () -> {
+            cancellation.run(body);
+            return true;
+          },
+          () -> describe(action),
+          () -> describeTimeout(context),
+          cancellation::cancel,
+          action.durationInNanos(),
+          NANOSECONDS);
+    } catch (ActionTimeOutException e) {
+      if (!eventBus.isEmpty())
+        eventBus.onTimeout(CURRENT_PATH.get(), context, e);
+      throw e;
+    } finally {
+      cancellation.close();
+    }
+  }
+
+  /**
+   * Returns an exception that tells {@code action} timed out, in the same
+   * format as {@link ActionSemantics#runWithTimeout} throws.
+   */
+  static ActionTimeOutException timeoutException(TimeOut action, Context context) {
+    return InternalUtils.timeoutException(() -> describe(action), () -> describeTimeout(context));
+  }
+
+  private static String describe(TimeOut action) {
+    return String.format("%s", action);
+  }
+
+  private static String describeTimeout(Context context) {
+    return ActionPerformer.formatOngoingExceptions(ongoingExceptionsTable(context));
+  }
+
+  /**
+   * Performs a {@link CircuitBreaker} action by running {@code body} if the
+   * circuit permits.
+   */
+  static void runInCircuit(CircuitBreaker.Circuit circuit, Context context, Runnable body) {
+    acquirePermission(circuit);
+    try {
+      body.run();
+    } catch (Throwable t) {
+      onCircuitCompleted(circuit, t, context);
+      throw ActionException.wrap(t);
+    }
+    onCircuitCompleted(circuit, null, context);
+  }
+
+  static void acquirePermission(CircuitBreaker.Circuit circuit) {
+    if (!circuit.tryAcquirePermission())
+      throw new CircuitBreakerOpenException(String.format("Circuit is open: %s", circuit));
+  }
+
+  /**
+   * Records a result of an action wrapped by a {@link CircuitBreaker}. A failure
+   * caused by a cancellation, e.g., by a failed sibling in a fail-fast parallel
+   * action, does not count toward opening the circuit.
+   *
+   * @param t An exception thrown by the action, or {@code null} if it succeeded.
+   */
+  static void onCircuitCompleted(CircuitBreaker.Circuit circuit, Throwable t, Context context) {
+    if (t == null)
+      circuit.onSuccess();
+    else if (t instanceof ActionCancelledException || context.cancelled())
+      circuit.onCancelled();
+    else
+      circuit.onFailure();
+  }
+
+  private static Map<Action, Throwable> ongoingExceptionsTable(Context context) {
+    return context.valueOf(ONGOING_EXCEPTIONS_TABLE_SLOT);
+  }
+}
@@ -0,0 +1,611 @@
+package com.github.dakusui.actionunit.visitors;
+
+import com.github.dakusui.actionunit.actions.*;
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Cancellation;
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.exceptions.ActionCancelledException;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
+import static com.github.dakusui.actionunit.visitors.ActionPerformer.ONGOING_EXCEPTIONS_TABLE_NAME;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * An action performer that does not block threads while actions wait.
+ * <p>
+ * {@link AsyncActionPerformer#perform(Action)} returns a future immediately.
+ * Structural actions are composed as pipelines of futures: the next child,
+ * iteration or attempt is started by the completion of the previous one.
+ * Intervals of {@link Retry} and deadlines of {@link TimeOut} are handled by a
+ * timer. Only bodies of {@link Leaf} actions occupy threads of the executor,
+ * and only while they run.
+ * <p>
+ * When a time-out passes, the future of the {@link TimeOut} action fails
+ * immediately. Leaves running under it are interrupted, and no more leaves
+ * under it are started. {@link AsyncActionPerformer#cancel()} stops all the
+ * actions being performed in the same way. Leaves run with a
+ * {@link Cancellation} token bound, which is cancelled in both cases, so that
+ * processes of commands are destroyed as well.
+ * <p>
+ * Since leaves may block, for instance waiting for a command to finish, they
+ * are run on a dedicated executor by default rather than on
+ * {@link java.util.concurrent.ForkJoinPool#commonPool()}, which parallel
+ * streams and other libraries rely on. Parallel actions with no explicit
+ * parallelism keep at most {@link AsyncActionPerformer#DEFAULT_MAX_IN_FLIGHT}
+ * tasks in flight, so that their data are not drained eagerly.
+ */
+public class AsyncActionPerformer {
+  /**
+   * The maximum number of tasks a parallel action keeps in flight by default.
+   */
+  public static final  int                      DEFAULT_MAX_IN_FLIGHT = 256;
+  private static final ScheduledExecutorService TIMER                 = createTimer();
+  private static final CompletableFuture<Void>  COMPLETED             = CompletableFuture.completedFuture(null);
+
+  private final Context  context;
+  private final Executor executor;
+  private final int      maxInFlight;
+
+  protected AsyncActionPerformer(Context context, Executor executor) {
+    this(context, executor, DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  protected AsyncActionPerformer(Context context, Executor executor, int maxInFlight) {
+    this.context = requireNonNull(context);
+    this.executor = requireNonNull(executor);
+    this.maxInFlight = requireArgument(v -> v > 0, maxInFlight);
+    Map<Action, Throwable> ongoingExceptions = new ConcurrentHashMap<>();
+    this.context.assignTo(ONGOING_EXCEPTIONS_TABLE_NAME, ongoingExceptions);
+  }
+
+  /**
+   * Starts performing {@code action} and returns a future that completes when
+   * it finishes. If the action fails, the future completes exceptionally with
+   * the exception thrown by it.
+   *
+   * @param action An action to be performed.
+   * @return A future of the action.
+   */
+  public CompletableFuture<Void> perform(Action action) {
+    requireNonNull(action);
+    Scope scope = new Scope(this.context.cancellation().createChild());
+    return perform(action, this.context, scope).whenComplete((v, t) -> scope.close());
+  }
+
+  /**
+   * Asks actions being performed by this object, and ones it will perform, to
+   * stop, like {@link ActionPerformer#cancel()} does. No more leaves, iterations
+   * or retries are started, running leaves are interrupted, and processes of
+   * commands are destroyed. Futures of the stopped actions fail with an
+   * {@link ActionCancelledException} or the exception thrown by an interrupted
+   * leaf.
+   * <p>
+   * This method can be called from any thread.
+   */
+  public void cancel() {
+    this.context.cancellation().cancel();
+  }
+
+  /**
+   * Returns a future that completes after {@code intervalInNanos}, which is
+   * used to wait before a next attempt of a {@link Retry} action. No thread is
+   * blocked during the wait.
+   *
+   * @param intervalInNanos An interval in nanoseconds.
+   * @return A future that completes after the interval.
+   */
+  protected CompletableFuture<Void> backOff(long intervalInNanos) {
+    if (intervalInNanos <= 0)
+      return COMPLETED;
+    CompletableFuture<Void> ret = new CompletableFuture<>();
+    TIMER.schedule(() -> ret.complete(null), intervalInNanos, NANOSECONDS);
+    return ret;
+  }
+
+  /**
+   * Creates an action performer that runs bodies of leaves on a cached pool of
+   * daemon threads shared by performers created by this method.
+   *
+   * @return An action performer.
+   */
+  public static AsyncActionPerformer create() {
+    return create(DefaultExecutor.INSTANCE);
+  }
+
+  /**
+   * Creates an action performer that runs bodies of leaves on {@code executor}.
+   *
+   * @param executor An executor on which leaves are run.
+   * @return An action performer.
+   */
+  public static AsyncActionPerformer create(Executor executor) {
+    return new AsyncActionPerformer(Context.create(), executor);
+  }
+
+  /**
+   * Creates an action performer that runs bodies of leaves on {@code executor}
+   * and keeps at most {@code maxInFlight} tasks of a parallel action in flight,
+   * even if the action itself allows more.
+   *
+   * @param executor    An executor on which leaves are run.
+   * @param maxInFlight The maximum number of tasks of a parallel action in flight.
+   * @return An action performer.
+   */
+  public static AsyncActionPerformer create(Executor executor, int maxInFlight) {
+    return new AsyncActionPerformer(Context.create(), executor, maxInFlight);
+  }
+
+  private CompletableFuture<Void> perform(Action action, Context context, Scope scope) {
+    Step step = new Step(context, scope);
+    try {
+      action.accept(step);
+    } catch (Throwable t) {
+      return failed(t);
+    }
+    return requireNonNull(step.result);
+  }
+
+  private CompletableFuture<Void> run(Leaf action, Context context, Scope scope) {
+    return CompletableFuture.runAsync(() -> {
+      Task task = new Task(Thread.currentThread());
+      scope.enter(task);
+      try {
+        if (scope.isExpired())
+          throw new ActionCancelledException(format("Cancelled before starting: %s", action));
+        scope.run(action.runnable(context));
+      } finally {
+        scope.leave(task);
+        task.finish();
+      }
+    }, this.executor);
+  }
+
+  /**
+   * Performs {@code action} as {@link ActionSemantics#retry} does, except that
+   * the back-off does not block a thread and listeners are not notified.
+   */
+  private CompletableFuture<Void> retry(Retry action, Context context, Scope scope, int i, long interval) {
+    return perform(action.perform(), context, scope).handle((v, t) -> {
+      if (t == null) {
+        ActionSemantics.succeeded(action, context);
+        return COMPLETED;
+      }
+      Throwable cause = unwrap(t);
+      if (!ActionSemantics.shouldRetry(action, i, cause, context))
+        return failed(cause);
+      if (scope.isExpired())
+        return failed(new ActionCancelledException(format("Cancelled: %s", action), cause));
+      long nextInterval = action.backoff().nextIntervalInNanos(i, interval);
+      // The back-off is cut short when the scope expires.
+      CompletableFuture<Void> wait = new CompletableFuture<>();
+      Cancellation.Registration registration = scope.onExpire(() -> wait.complete(null));
+      backOff(nextInterval).whenComplete((w, u) -> wait.complete(null));
+      return wait.thenCompose(w -> {
+        registration.close();
+        if (scope.isExpired())
+          return failed(new ActionCancelledException(format("Cancelled: %s", action), cause));
+        return retry(action, context, scope, i + 1, nextInterval);
+      });
+    }).thenCompose(Function.identity());
+  }
+
+  private CompletableFuture<Void> timeOut(TimeOut action, Context context, Scope outer) {
+    Scope scope = outer.createChild();
+    CompletableFuture<Void> ret = new CompletableFuture<>();
+    ScheduledFuture<?> alarm = TIMER.schedule(() -> {
+      if (ret.completeExceptionally(ActionSemantics.timeoutException(action, context)))
+        scope.expire();
+    }, action.durationInNanos(), NANOSECONDS);
+    perform(action.perform(), context, scope).whenComplete((v, t) -> {
+      alarm.cancel(false);
+      scope.close();
+      if (t == null)
+        ret.complete(null);
+      else
+        ret.completeExceptionally(unwrap(t));
+    });
+    return ret;
+  }
+
+  private static CompletableFuture<Void> failed(Throwable t) {
+    CompletableFuture<Void> ret = new CompletableFuture<>();
+    ret.completeExceptionally(t);
+    return ret;
+  }
+
+  private static Throwable unwrap(Throwable t) {
+    return t instanceof CompletionException && t.getCause() != null ?
+        t.getCause() :
+        t;
+  }
+
+  private static ScheduledExecutorService createTimer() {
+    ScheduledThreadPoolExecutor ret = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread thread = new Thread(r, "actionunit-async-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    ret.setRemoveOnCancelPolicy(true);
+    return ret;
+  }
+
+  /**
+   * Returns the number of tasks a parallel action with {@code parallelism}
+   * keeps in flight.
+   */
+  private int inFlight(int parallelism) {
+    return Math.min(parallelism, this.maxInFlight);
+  }
+
+  /**
+   * Holds the executor used by {@link AsyncActionPerformer#create()}, which is
+   * created on first use.
+   */
+  private static class DefaultExecutor {
+    static final ExecutorService INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "actionunit-async-leaf-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * A visitor that starts an action and stores its future in {@code result}.
+   */
+  private class Step implements Action.Visitor {
+    private final Context                 context;
+    private final Scope                   scope;
+    private       CompletableFuture<Void> result;
+
+    Step(Context context, Scope scope) {
+      this.context = context;
+      this.scope = scope;
+    }
+
+    @Override
+    public void visit(Leaf action) {
+      this.result = run(action, context, scope);
+    }
+
+    @Override
+    public void visit(Named action) {
+      this.result = perform(action.action(), context, scope);
+    }
+
+    @Override
+    public void visit(Composite action) {
+      Scope inner = innerScope(action.isParallel() && action.failFast());
+      this.result = closing(inner, new Pipeline(
+          action,
+          action.children().stream()
+              .map(a -> (Supplier<CompletableFuture<Void>>) () -> perform(a, context, inner))
+              .iterator(),
+          action.isParallel() ? inFlight(action.parallelism()) : 1,
+          inner,
+          inner != scope ? inner::expire : () -> {
+          }).start());
+    }
+
+    @Override
+    public <E> void visit(ForEach<E> action) {
+      Scope inner = innerScope(action.isParallel() && action.failFast());
+      // Generated under the token of the scope, so that a process streaming the
+      // data is destroyed when the scope expires.
+      AtomicReference<Stream<E>> generated = new AtomicReference<>();
+      scope.run(() -> generated.set(requireNonNull(action.data().apply(context))));
+      Stream<E> data = generated.get();
+      // The data stream is closed once all the iterations finish, like ActionPerformer does.
+      this.result = closing(inner, new Pipeline(
+          action,
+          data
+              .map(e -> (Supplier<CompletableFuture<Void>>) () -> perform(
+                  action.perform(),
+                  context.createChild().assignTo(action.loopVariableSlot(), e),
+                  inner))
+              .iterator(),
+          action.isParallel() ? inFlight(action.parallelism()) : 1,
+          inner,
+          inner != scope ? inner::expire : () -> {
+          }).start().whenComplete((v, t) -> data.close()));
+    }
+
+    /**
+     * Returns a scope for tasks of a parallel action, which is expired when one
+     * of them fails if the action is fail-fast.
+     */
+    private Scope innerScope(boolean failFast) {
+      return failFast ? scope.createChild() : scope;
+    }
+
+    /**
+     * Closes {@code inner} once {@code result} completes, unless it is the
+     * scope of this step.
+     */
+    private CompletableFuture<Void> closing(Scope inner, CompletableFuture<Void> result) {
+      return inner != scope ?
+          result.whenComplete((v, t) -> inner.close()) :
+          result;
+    }
+
+    @Override
+    public void visit(While action) {
+      this.result = new Pipeline(action, new Iterator<Supplier<CompletableFuture<Void>>>() {
+        @Override
+        public boolean hasNext() {
+          return action.condition().test(context);
+        }
+
+        @Override
+        public Supplier<CompletableFuture<Void>> next() {
+          return () -> perform(action.perform(), context, scope);
+        }
+      }, 1, scope).start();
+    }
+
+    @Override
+    public void visit(When action) {
+      this.result = perform(
+          action.cond().test(context) ? action.perform() : action.otherwise(),
+          context,
+          scope);
+    }
+
+    @Override
+    public void visit(Attempt action) {
+      // Same as ActionSemantics#attempt: the context, which may be shared by parallel actions, is not modified.
+      AtomicReference<Context> ensureContext = new AtomicReference<>(context);
+      this.result = perform(action.perform(), context, scope)
+          .handle((v, t) -> {
+            if (t == null)
+              return COMPLETED;
+            Throwable cause = unwrap(t);
+            if (ActionSemantics.isRecoverable(action, cause, context)) {
+              Context recoveryContext = ActionSemantics.recoveryContext(context, cause);
+              ensureContext.set(recoveryContext.createChild());
+              return perform(action.recover(), recoveryContext, scope);
+            }
+            return failed(cause);
+          })
+          .thenCompose(Function.identity())
+          .handle((v, t) -> perform(action.ensure(), ensureContext.get(), scope)
+              .thenCompose(w -> t == null ? COMPLETED : failed(unwrap(t))))
+          .thenCompose(Function.identity());
+    }
+
+    @Override
+    public void visit(Retry action) {
+      this.result = retry(action, context, scope, 0, 0);
+    }
+
+    @Override
+    public void visit(TimeOut action) {
+      this.result = timeOut(action, context, scope);
+    }
+
+    @Override
+    public void visit(CircuitBreaker action) {
+      CircuitBreaker.Circuit circuit = action.circuit();
+      ActionSemantics.acquirePermission(circuit);
+      this.result = perform(action.perform(), context, scope).whenComplete(
+          (v, t) -> ActionSemantics.onCircuitCompleted(circuit, t != null ? unwrap(t) : null, context));
+    }
+  }
+
+  /**
+   * Starts tasks one by one, keeping at most {@code parallelism} of them running.
+   * Once a task fails, no more task is started, {@code onFailure} is run, and the
+   * pipeline fails with the exception after the running ones are finished, like
+   * {@link ExecutionEngine} does. Once {@code scope} expires, the pipeline fails
+   * in the same way with an {@link ActionCancelledException}.
+   * <p>
+   * Tasks are started by a drain loop instead of recursion, so that a long
+   * sequence of tasks completing synchronously does not overflow the stack.
+   */
+  private static class Pipeline {
+    private final Action                                      action;
+    private final Iterator<Supplier<CompletableFuture<Void>>> tasks;
+    private final int                                         parallelism;
+    private final Scope                                       scope;
+    private final CompletableFuture<Void>                     result  = new CompletableFuture<>();
+    private final AtomicInteger                               wip     = new AtomicInteger();
+    private final AtomicInteger                               running = new AtomicInteger();
+    private final AtomicReference<Throwable>                  failure = new AtomicReference<>();
+    private final Runnable                                    onFailure;
+    /**
+     * Accessed only inside the drain loop.
+     */
+    private       boolean                                     exhausted;
+
+    Pipeline(Action action, Iterator<Supplier<CompletableFuture<Void>>> tasks, int parallelism, Scope scope) {
+      this(action, tasks, parallelism, scope, () -> {
+      });
+    }
+
+    Pipeline(Action action, Iterator<Supplier<CompletableFuture<Void>>> tasks, int parallelism, Scope scope, Runnable onFailure) {
+      this.action = action;
+      this.tasks = tasks;
+      this.parallelism = parallelism;
+      this.scope = scope;
+      this.onFailure = onFailure;
+    }
+
+    CompletableFuture<Void> start() {
+      drain();
+      return result;
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0)
+        return;
+      do {
+        while (failure.get() == null && !exhausted && running.get() < parallelism) {
+          CompletableFuture<Void> task;
+          try {
+            if (scope.isExpired())
+              throw new ActionCancelledException(format("Cancelled: %s", action));
+            if (!tasks.hasNext()) {
+              exhausted = true;
+              break;
+            }
+            running.incrementAndGet();
+            task = tasks.next().get();
+          } catch (Throwable t) {
+            fail(t);
+            running.decrementAndGet();
+            break;
+          }
+          task.whenComplete((v, t) -> {
+            if (t != null)
+              fail(unwrap(t));
+            running.decrementAndGet();
+            drain();
+          });
+        }
+        if (running.get() == 0 && (exhausted || failure.get() != null)) {
+          if (failure.get() == null)
+            result.complete(null);
+          else
+            result.completeExceptionally(failure.get());
+        }
+      } while (wip.decrementAndGet() != 0);
+    }
+
+    private void fail(Throwable t) {
+      if (failure.compareAndSet(null, t))
+        onFailure.run();
+    }
+  }
+
+  /**
+   * A region of actions under the same set of time-outs, which is backed by a
+   * {@link Cancellation} token. A scope expires when its token is cancelled,
+   * i.e., when it or one of its outer scopes expires, or when the performer is
+   * cancelled.
+   */
+  private static class Scope {
+    private final Cancellation              cancellation;
+    private final Cancellation.Registration registration;
+    /**
+     * Leaves running directly under this scope. Ones under inner scopes are
+     * interrupted by the tokens of those scopes.
+     */
+    private final Set<Task>                 tasks = ConcurrentHashMap.newKeySet();
+
+    Scope(Cancellation cancellation) {
+      this.cancellation = cancellation;
+      this.registration = cancellation.onCancel(() -> this.tasks.forEach(Task::interrupt));
+    }
+
+    Scope createChild() {
+      return new Scope(this.cancellation.createChild());
+    }
+
+    boolean isExpired() {
+      return this.cancellation.isCancelled();
+    }
+
+    void enter(Task task) {
+      this.tasks.add(task);
+    }
+
+    void leave(Task task) {
+      this.tasks.remove(task);
+    }
+
+    /**
+     * Runs {@code task} with the token of this scope bound to the current thread.
+     */
+    void run(Runnable task) {
+      this.cancellation.run(task);
+    }
+
+    /**
+     * Registers {@code hook}, which is run when this scope expires.
+     */
+    Cancellation.Registration onExpire(Runnable hook) {
+      return this.cancellation.onCancel(hook);
+    }
+
+    /**
+     * Expires this scope. A leaf that enters this scope afterwards sees it
+     * expired, and one that entered before is interrupted.
+     */
+    void expire() {
+      this.cancellation.cancel();
+    }
+
+    /**
+     * Detaches this scope from its outer one once no action runs under it.
+     */
+    void close() {
+      this.registration.close();
+      this.cancellation.close();
+    }
+  }
+
+  /**
+   * A leaf running on a thread, which scopes interrupt when they expire. Like
+   * deadlines of {@link com.github.dakusui.actionunit.utils.InternalUtils#runWithTimeout},
+   * it uses a state instead of a monitor so that an interruption does not
+   * reach the thread after the leaf finishes.
+   */
+  private static class Task {
+    private static final int RUNNING      = 0;
+    private static final int DONE         = 1;
+    private static final int INTERRUPTING = 2;
+    private static final int INTERRUPTED  = 3;
+
+    private final Thread        thread;
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+
+    Task(Thread thread) {
+      this.thread = thread;
+    }
+
+    void interrupt() {
+      if (state.compareAndSet(RUNNING, INTERRUPTING)) {
+        thread.interrupt();
+        state.set(INTERRUPTED);
+      }
+    }
+
+    /**
+     * Finishes this task on its thread. Once this method returns, the thread is
+     * not interrupted by any of the scopes anymore, and an interruption made by
+     * one of them is cleared so that it does not leak to a next task.
+     */
+    void finish() {
+      if (state.compareAndSet(RUNNING, DONE))
+        return;
+      while (state.get() != INTERRUPTED)
+        Thread.yield();
+      Thread.interrupted();
+    }
+  }
+}
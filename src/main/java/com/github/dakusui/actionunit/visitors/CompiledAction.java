@@ -0,0 +1,117 @@
+package com.github.dakusui.actionunit.visitors;
+
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Cancellation;
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.io.Writer;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.github.dakusui.actionunit.utils.Checks.requireState;
+import static com.github.dakusui.actionunit.visitors.ActionPerformer.ONGOING_EXCEPTIONS_TABLE_NAME;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An action compiled by an {@link ActionCompiler}, which can be performed any
+ * number of times, also concurrently.
+ */
+public final class CompiledAction {
+  private final Action              action;
+  private final ActionCompiler.Node root;
+  private final Map<Action, Record> report;
+  private final ActionEventBus      eventBus;
+  /**
+   * Tokens of the runs in progress, which are cancelled by {@link CompiledAction#cancel()}.
+   */
+  private final Set<Cancellation>   running = ConcurrentHashMap.newKeySet();
+
+  CompiledAction(Action action, ActionCompiler.Node root, Map<Action, Record> report, ActionEventBus eventBus) {
+    this.action = requireNonNull(action);
+    this.root = requireNonNull(root);
+    this.report = report;
+    this.eventBus = requireNonNull(eventBus);
+  }
+
+  /**
+   * Returns a bus to which listeners of runs of this object are registered.
+   *
+   * @return An event bus.
+   */
+  public ActionEventBus eventBus() {
+    return this.eventBus;
+  }
+
+  /**
+   * Returns the action from which this object was compiled.
+   *
+   * @return The compiled action.
+   */
+  public Action action() {
+    return this.action;
+  }
+
+  /**
+   * Performs the compiled action in a new context. Like {@link ActionPerformer#perform(Action)},
+   * the cancellation token of the context is bound to the calling thread unless
+   * another one is, so that {@link CompiledAction#cancel()} reaches tasks run by
+   * other threads as well.
+   */
+  public void perform() {
+    Context context = Context.create();
+    context.assignTo(ONGOING_EXCEPTIONS_TABLE_NAME, new ConcurrentHashMap<Action, Throwable>());
+    Cancellation cancellation = context.cancellation();
+    running.add(cancellation);
+    try {
+      if (Cancellation.current() == Cancellation.NEVER)
+        cancellation.run(() -> root.run(context));
+      else
+        root.run(context);
+    } finally {
+      running.remove(cancellation);
+    }
+  }
+
+  /**
+   * Asks the runs of this object in progress to stop, like {@link ActionPerformer#cancel()}
+   * does. Runs started afterwards are not affected, since each run has its own
+   * context.
+   * <p>
+   * This method can be called from any thread.
+   */
+  public void cancel() {
+    running.forEach(Cancellation::cancel);
+  }
+
+  /**
+   * Performs the compiled action and then reports runs of actions recorded so
+   * far in the same format as {@link ReportingActionPerformer}.
+   * This method can be used only if this object is compiled by a compiler
+   * returned by {@link ActionCompiler#reporting}.
+   *
+   * @param writer A writer to which the report is written.
+   */
+  public void performAndReport(Writer writer) {
+    requireState(r -> r != null, this.report);
+    try {
+      perform();
+    } finally {
+      new ActionReporter(writer, this.report).report(this.action);
+    }
+  }
+
+  /**
+   * Returns records of runs of actions in the compiled tree, accumulated over
+   * all the runs of this object. If this object does not record runs, an empty
+   * map is returned.
+   *
+   * @return Records of actions.
+   */
+  public Map<Action, Record> report() {
+    return this.report != null ?
+        this.report :
+        Collections.emptyMap();
+  }
+}
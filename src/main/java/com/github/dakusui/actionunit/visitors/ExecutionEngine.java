@@ -0,0 +1,412 @@
+package com.github.dakusui.actionunit.visitors;
+
+import com.github.dakusui.actionunit.core.Cancellation;
+import com.github.dakusui.actionunit.exceptions.ActionException;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An interface that abstracts how an {@link ActionPerformer} runs tasks which
+ * are allowed to be executed in parallel, such as children of a parallel
+ * {@link com.github.dakusui.actionunit.actions.Composite} or iterations of a
+ * parallel {@link com.github.dakusui.actionunit.actions.ForEach}.
+ */
+@FunctionalInterface
+public interface ExecutionEngine {
+  /**
+   * A value that represents "no limit" for parallelism.
+   */
+  int UNLIMITED = Integer.MAX_VALUE;
+
+  /**
+   * An engine that dispatches tasks to the common {@link ForkJoinPool}, using
+   * no more threads of it than its parallelism.
+   * When {@link Cancellation#current()} is cancelled (e.g., by an enclosing
+   * time-out), the running tasks are interrupted and no more task is started.
+   * An interruption to the calling thread alone reaches the other tasks only
+   * while the caller is waiting for them.
+   */
+  ExecutionEngine DEFAULT = forkJoin(ForkJoinPool.commonPool());
+
+  /**
+   * Runs given {@code tasks} and returns when all the started ones are finished.
+   * No more than {@code parallelism} tasks are run at the same time.
+   * If any of the tasks throws an exception, no more task will be started and
+   * the exception will be re-thrown after the running ones are finished.
+   *
+   * @param tasks       Tasks to be run.
+   * @param parallelism The maximum number of tasks run at the same time.
+   */
+  void execute(Stream<Runnable> tasks, int parallelism);
+
+  /**
+   * Runs given {@code tasks} like {@link ExecutionEngine#execute(Stream, int)}.
+   * If {@code failFast} is {@code true}, tasks are run under a child of
+   * {@link Cancellation#current()}, which is cancelled as soon as one of them
+   * throws an exception, so that the running ones can stop without waiting for
+   * their completion.
+   * <p>
+   * This method of an engine that does not support cancellation falls back to
+   * {@link ExecutionEngine#execute(Stream, int)}, where no more task is started
+   * after a failure but the running ones are run to completion.
+   *
+   * @param tasks       Tasks to be run.
+   * @param parallelism The maximum number of tasks run at the same time.
+   * @param failFast    Cancels running tasks when one of them fails.
+   */
+  default void execute(Stream<Runnable> tasks, int parallelism, boolean failFast) {
+    execute(tasks, parallelism);
+  }
+
+  /**
+   * Returns an engine that runs tasks using Java's parallel streams.
+   * In case a parallelism other than {@link ExecutionEngine#UNLIMITED} is requested,
+   * tasks are dispatched to the common {@link ForkJoinPool} up to the given
+   * parallelism.
+   *
+   * @return An engine backed by the common pool.
+   */
+  static ExecutionEngine parallelStreams() {
+    ExecutionEngine limited = forkJoin(ForkJoinPool.commonPool());
+    return (tasks, parallelism) -> {
+      if (parallelism == UNLIMITED)
+        tasks.parallel().forEach(Runnable::run);
+      else
+        limited.execute(tasks, parallelism);
+    };
+  }
+
+  /**
+   * Returns an engine that dispatches tasks to a given {@code executorService}.
+   * Note that the life cycle of the {@code executorService} needs to be managed
+   * by the caller.
+   *
+   * @param executorService An executor service to which tasks are dispatched.
+   * @return An engine backed by {@code executorService}.
+   */
+  static ExecutionEngine dedicated(ExecutorService executorService) {
+    return new Dispatching(executorService);
+  }
+
+  /**
+   * Returns an engine that dispatches tasks to a given {@link ForkJoinPool}.
+   * A parallel action uses the calling thread and at most as many threads of
+   * the pool as its parallelism, however large the requested parallelism is.
+   *
+   * @param pool A pool to which tasks are dispatched.
+   * @return An engine backed by {@code pool}.
+   * @see ExecutionEngine#forkJoin(ForkJoinPool, boolean)
+   */
+  static ExecutionEngine forkJoin(ForkJoinPool pool) {
+    return forkJoin(pool, false);
+  }
+
+  /**
+   * Returns an engine that dispatches tasks to a given {@link ForkJoinPool}
+   * like {@link ExecutionEngine#forkJoin(ForkJoinPool)}.
+   * If {@code managedBlocking} is {@code true}, each task is run as a
+   * {@link ForkJoinPool.ManagedBlocker} so that the pool can compensate threads
+   * blocked by processes or remote sessions. Note that the pool may then create
+   * a spare thread for every blocked task, up to its own limit.
+   *
+   * @param pool            A pool to which tasks are dispatched.
+   * @param managedBlocking Runs tasks as {@link ForkJoinPool.ManagedBlocker}s.
+   * @return An engine backed by {@code pool}.
+   */
+  static ExecutionEngine forkJoin(ForkJoinPool pool, boolean managedBlocking) {
+    if (!managedBlocking)
+      return new Dispatching(pool, pool.getParallelism());
+    return new Dispatching(pool, pool.getParallelism()) {
+      @Override
+      protected void runTask(Runnable task) {
+        try {
+          managedBlock(() -> {
+            task.run();
+            return null;
+          });
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw ActionException.wrap(e);
+        }
+      }
+
+      @Override
+      protected void waitFor(Future<?> future) throws InterruptedException {
+        managedBlock(() -> {
+          super.waitFor(future);
+          return null;
+        });
+      }
+    };
+  }
+
+  /**
+   * Returns an engine that runs each task on a new virtual thread, so that a
+   * parallel action over thousands of hosts is not throttled by a pool size
+   * while its leaves wait for processes.
+   * <p>
+   * Actions performed with this engine should not block while holding a monitor
+   * ({@code synchronized}), which pins a virtual thread to its carrier. Classes
+   * of performers and reports use {@link java.util.concurrent.locks.Lock}s or
+   * lock-free structures for this reason.
+   * <p>
+   * Engines returned by this method share one executor, which is never shut
+   * down. Since a thread is started per task and ends with it, nothing needs to
+   * be released after use.
+   *
+   * @return An engine backed by virtual threads.
+   * @throws UnsupportedOperationException The runtime does not support virtual threads.
+   */
+  static ExecutionEngine virtualThreads() {
+    return dedicated(VirtualThreads.executor());
+  }
+
+  /**
+   * An engine that dispatches tasks to an {@link ExecutorService}.
+   * Tasks are pulled one by one from the given stream by "workers". The calling
+   * thread always works as one of them and other workers are submitted to the
+   * executor on demand, up to the requested parallelism. Since the caller itself
+   * processes tasks, nested parallel actions never deadlock even if the executor
+   * is saturated.
+   * <p>
+   * A task is taken from the stream only when a worker becomes free, so at most
+   * {@code parallelism} tasks are taken ahead of finished ones and the first
+   * tasks start before the stream is exhausted.
+   */
+  class Dispatching implements ExecutionEngine {
+    private final ExecutorService executorService;
+    private final int             maxHelpers;
+
+    protected Dispatching(ExecutorService executorService) {
+      this(executorService, UNLIMITED);
+    }
+
+    /**
+     * Creates an engine that submits no more than {@code maxHelpers} workers to
+     * {@code executorService} for a parallel action, besides the calling thread.
+     *
+     * @param executorService An executor service to which workers are submitted.
+     * @param maxHelpers      The maximum number of workers submitted per action.
+     */
+    protected Dispatching(ExecutorService executorService, int maxHelpers) {
+      this.executorService = requireNonNull(executorService);
+      this.maxHelpers = requireArgument(v -> v > 0, maxHelpers);
+    }
+
+    @Override
+    public void execute(Stream<Runnable> tasks, int parallelism) {
+      execute(tasks, parallelism, false);
+    }
+
+    @Override
+    public void execute(Stream<Runnable> tasks, int parallelism, boolean failFast) {
+      Iterator<Runnable> iterator = requireNonNull(tasks).iterator();
+      requireArgument(v -> v > 0, parallelism);
+      if (!failFast) {
+        new Dispatch(iterator, parallelism, Cancellation.current(), false).run();
+        return;
+      }
+      Cancellation cancellation = Cancellation.current().createChild();
+      try {
+        new Dispatch(iterator, parallelism, cancellation, true).run();
+      } finally {
+        cancellation.close();
+      }
+    }
+
+    protected void runTask(Runnable task) {
+      task.run();
+    }
+
+    protected void waitFor(Future<?> future) throws InterruptedException {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        // A worker never throws since it records failures of its tasks by itself.
+        throw ActionException.wrap(e.getCause());
+      }
+    }
+
+    static void managedBlock(InterruptibleBlock block) throws InterruptedException {
+      ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+        boolean done = false;
+
+        @Override
+        public boolean block() throws InterruptedException {
+          block.run();
+          return done = true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+          return done;
+        }
+      });
+    }
+
+    @FunctionalInterface
+    interface InterruptibleBlock {
+      Object run() throws InterruptedException;
+    }
+
+    private class Dispatch {
+      private final Iterator<Runnable>         tasks;
+      private final int                        parallelism;
+      private final Cancellation               cancellation;
+      private final boolean                    failFast;
+      private final ReentrantLock              lock        = new ReentrantLock();
+      private final Queue<Helper>              helpers     = new ConcurrentLinkedQueue<>();
+      private final AtomicReference<Throwable> failure     = new AtomicReference<>();
+      /**
+       * Threads running tasks, and ones among them interrupted by cancellation.
+       * Guarded by {@code lock}.
+       */
+      private final Set<Thread>                running     = new HashSet<>();
+      private final Set<Thread>                interrupted = new HashSet<>();
+      private       int                        workers     = 1;
+      private volatile boolean                 aborted;
+
+      Dispatch(Iterator<Runnable> tasks, int parallelism, Cancellation cancellation, boolean failFast) {
+        this.tasks = tasks;
+        this.parallelism = parallelism;
+        this.cancellation = cancellation;
+        this.failFast = failFast;
+      }
+
+      void run() {
+        // Registered regardless of failFast, since the token may be cancelled
+        // from outside, e.g., by a deadline of an enclosing time-out.
+        Cancellation.Registration registration = cancellation.onCancel(this::interruptRunningTasks);
+        try {
+          work();
+          for (Helper each : helpers)
+            each.join();
+        } catch (InterruptedException e) {
+          abort();
+          Thread.currentThread().interrupt();
+          throw ActionException.wrap(e);
+        } finally {
+          registration.close();
+        }
+        Throwable t = failure.get();
+        if (t != null)
+          throw ActionException.wrap(t);
+        // Tasks not taken yet are skipped.
+        cancellation.throwIfCancelled();
+      }
+
+      private void work() {
+        for (Runnable task = next(); task != null; task = next())
+          perform(task);
+      }
+
+      private void perform(Runnable task) {
+        try {
+          cancellation.run(() -> runTask(task));
+        } catch (Throwable t) {
+          if (failure.compareAndSet(null, t) && failFast)
+            cancellation.cancel();
+        } finally {
+          finished();
+        }
+      }
+
+      private Runnable next() {
+        lock.lock();
+        try {
+          if (aborted || failure.get() != null || cancellation.isCancelled() || !tasks.hasNext())
+            return null;
+          Runnable ret = tasks.next();
+          // Not asking the stream whether it has more tasks here, which may block
+          // until a producer (e.g., a remote command) emits the next one, while
+          // the task just taken could already be running.
+          if (workers < parallelism && workers <= maxHelpers) {
+            workers++;
+            helpers.add(new Helper());
+          }
+          running.add(Thread.currentThread());
+          return ret;
+        } finally {
+          lock.unlock();
+        }
+      }
+
+      private void finished() {
+        lock.lock();
+        try {
+          Thread thread = Thread.currentThread();
+          running.remove(thread);
+          // Clear an interruption by cancellation so that it does not leak to a next task.
+          if (interrupted.remove(thread))
+            Thread.interrupted();
+        } finally {
+          lock.unlock();
+        }
+      }
+
+      private void interruptRunningTasks() {
+        lock.lock();
+        try {
+          for (Thread each : running) {
+            interrupted.add(each);
+            each.interrupt();
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+
+      /**
+       * Stops taking tasks, keeps helpers not started yet from working, and
+       * interrupts the running tasks. Threads of a {@link ForkJoinPool} are
+       * interrupted directly since cancelling a future of it does not interrupt
+       * them.
+       */
+      private void abort() {
+        aborted = true;
+        helpers.forEach(Helper::cancel);
+        interruptRunningTasks();
+      }
+
+      private class Helper {
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+        private final Future<?>     future;
+
+        Helper() {
+          this.future = executorService.submit(() -> {
+            if (claimed.compareAndSet(false, true))
+              work();
+          });
+        }
+
+        void join() throws InterruptedException {
+          // If the caller can claim this helper, it has not started yet and it
+          // will never work. No need to wait for it.
+          if (claimed.compareAndSet(false, true))
+            return;
+          waitFor(future);
+        }
+
+        void cancel() {
+          if (claimed.compareAndSet(false, true))
+            future.cancel(false);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.github.dakusui.actionunit.visitors;
+
+import com.github.dakusui.actionunit.io.Writer;
+
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A span exporter that writes each span as a line of JSON, whose field names
+ * follow ones of OTLP/JSON. For instance,
+ * <pre>
+ * {"traceId":"5b8e...","spanId":"eee1...","parentSpanId":"0c3a...","name":"clone",
+ *  "startTimeUnixNano":1700000000000000000,"endTimeUnixNano":1700000000120000000,
+ *  "status":{"code":"ERROR","message":"..."},"attributes":{"actionunit.retry.attempt":2}}
+ * </pre>
+ * (line-broken here for readability). Numbers and booleans in attributes are
+ * written as they are and other values as strings.
+ */
+public class JsonSpanExporter implements SpanExporter {
+  private final Writer writer;
+
+  public JsonSpanExporter(Writer writer) {
+    this.writer = requireNonNull(writer);
+  }
+
+  @Override
+  public void export(Span span) {
+    this.writer.writeLine(toJson(span));
+  }
+
+  public static String toJson(Span span) {
+    StringBuilder b = new StringBuilder();
+    b.append("{\"traceId\":");
+    appendString(b, span.traceId());
+    b.append(",\"spanId\":");
+    appendString(b, span.spanId());
+    if (span.parentSpanId() != null) {
+      b.append(",\"parentSpanId\":");
+      appendString(b, span.parentSpanId());
+    }
+    b.append(",\"name\":");
+    appendString(b, span.name());
+    b.append(",\"startTimeUnixNano\":").append(span.startEpochNanos());
+    b.append(",\"endTimeUnixNano\":").append(span.endEpochNanos());
+    b.append(",\"status\":{\"code\":");
+    appendString(b, String.valueOf(span.status()));
+    if (span.statusMessage() != null) {
+      b.append(",\"message\":");
+      appendString(b, span.statusMessage());
+    }
+    b.append("},\"attributes\":{");
+    boolean first = true;
+    for (Map.Entry<String, Object> each : span.attributes().entrySet()) {
+      if (!first)
+        b.append(',');
+      first = false;
+      appendString(b, each.getKey());
+      b.append(':');
+      appendValue(b, each.getValue());
+    }
+    return b.append("}}").toString();
+  }
+
+  private static void appendValue(StringBuilder b, Object value) {
+    if (value instanceof Number || value instanceof Boolean)
+      b.append(value);
+    else
+      appendString(b, String.valueOf(value));
+  }
+
+  private static void appendString(StringBuilder b, String s) {
+    b.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+      case '"':
+        b.append("\\\"");
+        break;
+      case '\\':
+        b.append("\\\\");
+        break;
+      case '\n':
+        b.append("\\n");
+        break;
+      case '\r':
+        b.append("\\r");
+        break;
+      case '\t':
+        b.append("\\t");
+        break;
+      default:
+        if (c < 0x20)
+          b.append(String.format("\\u%04x", (int) c));
+        else
+          b.append(c);
+      }
+    }
+    b.append('"');
+  }
+}
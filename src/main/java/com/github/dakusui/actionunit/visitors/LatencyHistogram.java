@@ -0,0 +1,87 @@
+package com.github.dakusui.actionunit.visitors;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
+
+/**
+ * A lock-free, log-linear histogram of durations in nanoseconds.
+ * <p>
+ * Like HDR histograms, values are grouped by their highest bit ("magnitude")
+ * and each magnitude is split into {@code 2^(SUB_BUCKET_BITS - 1)} linear
+ * sub-buckets. This keeps the relative error of a reported value below
+ * {@code 1 / 2^(SUB_BUCKET_BITS - 1)} (about 6%) in a fixed amount of memory,
+ * whatever the range of recorded values is.
+ * <p>
+ * Counters are allocated in chunks of {@code SUB_BUCKET_COUNT} when a value
+ * that falls in a chunk is recorded first, since runs of an action usually
+ * fall in a few magnitudes.
+ */
+final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS       = 5;
+  private static final int SUB_BUCKET_COUNT      = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+  private static final int NUM_BUCKETS           = indexOf(Long.MAX_VALUE) + 1;
+
+  private final AtomicReferenceArray<AtomicLongArray> segments = new AtomicReferenceArray<>(segmentOf(NUM_BUCKETS - 1) + 1);
+
+  void record(long valueInNanos) {
+    int index = indexOf(Math.max(0, valueInNanos));
+    int segment = segmentOf(index);
+    AtomicLongArray counts = segments.get(segment);
+    if (counts == null) {
+      segments.compareAndSet(segment, null, new AtomicLongArray(SUB_BUCKET_COUNT));
+      counts = segments.get(segment);
+    }
+    counts.incrementAndGet(index % SUB_BUCKET_COUNT);
+  }
+
+  /**
+   * Returns a value at or below which {@code percentile} percent of recorded
+   * values fall, or {@code 0} if nothing is recorded.
+   * The returned value is the highest one that is equivalent to the recorded
+   * values in the same bucket.
+   *
+   * @param percentile A percentile between 0 (exclusive) and 100 (inclusive).
+   * @return The value at the percentile.
+   */
+  long valueAtPercentile(double percentile) {
+    requireArgument(v -> v > 0 && v <= 100, percentile);
+    long[] snapshot = new long[NUM_BUCKETS];
+    long total = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      AtomicLongArray counts = segments.get(segmentOf(i));
+      if (counts != null)
+        total += snapshot[i] = counts.get(i % SUB_BUCKET_COUNT);
+    }
+    if (total == 0)
+      return 0;
+    long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long cumulative = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      cumulative += snapshot[i];
+      if (cumulative >= target)
+        return highestEquivalentValueOf(i);
+    }
+    return highestEquivalentValueOf(snapshot.length - 1);
+  }
+
+  private static int indexOf(long value) {
+    int magnitude = Math.max(0, (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1));
+    return magnitude * SUB_BUCKET_HALF_COUNT + (int) (value >>> magnitude);
+  }
+
+  private static int segmentOf(int index) {
+    return index / SUB_BUCKET_COUNT;
+  }
+
+  private static long highestEquivalentValueOf(int index) {
+    int magnitude = index < SUB_BUCKET_COUNT ?
+        0 :
+        (index - SUB_BUCKET_HALF_COUNT) / SUB_BUCKET_HALF_COUNT;
+    long subBucket = index - (long) magnitude * SUB_BUCKET_HALF_COUNT;
+    // For the last bucket, this overflows to Long.MIN_VALUE and then wraps back to Long.MAX_VALUE.
+    return ((subBucket + 1) << magnitude) - 1;
+  }
+}
@@ -0,0 +1,242 @@
+package com.github.dakusui.actionunit.visitors;
+
+import com.github.dakusui.actionunit.actions.Named;
+import com.github.dakusui.actionunit.actions.cmd.CommandLeaf;
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.exceptions.ActionException;
+import com.github.dakusui.actionunit.exceptions.ActionTimeOutException;
+import com.github.dakusui.actionunit.io.Writer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An in-memory registry of {@link ActionMetrics}, which are recorded by a
+ * listener returned by {@link MetricsRegistry#listener()}.
+ * <p>
+ * Metrics are kept for each name of {@link Named} actions, and for leaves that
+ * run commands, in which case the name of the nearest enclosing named action
+ * (e.g., a description given to the commander) is used. Retries and time-outs
+ * are counted for the nearest named action that encloses them. Runs of other
+ * actions are not recorded.
+ * <p>
+ * Metrics are looked up by names that actions already have, so recording a
+ * run takes neither a lock nor an allocation once the name is registered.
+ * <pre>
+ *   MetricsRegistry registry = MetricsRegistry.create();
+ *   performer.eventBus().register(registry.listener());
+ *   ...
+ *   registry.writeTo(Paths.get("/var/lib/node_exporter/actionunit.prom"));
+ * </pre>
+ */
+public final class MetricsRegistry {
+  private static final double[] QUANTILES = { 0.5, 0.95, 0.99 };
+
+  private final ConcurrentMap<String, ActionMetrics> named    = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, ActionMetrics> commands = new ConcurrentHashMap<>();
+  private final ActionListener                       listener = new MetricsRecordingListener();
+
+  private MetricsRegistry() {
+  }
+
+  public static MetricsRegistry create() {
+    return new MetricsRegistry();
+  }
+
+  /**
+   * Returns a listener that records metrics of actions to this registry.
+   *
+   * @return A listener to be registered to {@link ActionPerformer#eventBus()}.
+   */
+  public ActionListener listener() {
+    return this.listener;
+  }
+
+  /**
+   * Returns metrics for actions named {@code name} of {@code type}, creating
+   * them if they are not registered yet.
+   *
+   * @param name A name of actions.
+   * @param type A type of actions.
+   * @return Metrics of the actions.
+   */
+  public ActionMetrics metricsFor(String name, ActionMetrics.Type type) {
+    requireNonNull(name);
+    ConcurrentMap<String, ActionMetrics> map = type == ActionMetrics.Type.NAMED ? named : commands;
+    ActionMetrics ret = map.get(name);
+    return ret != null ?
+        ret :
+        map.computeIfAbsent(name, n -> new ActionMetrics(n, type));
+  }
+
+  /**
+   * Returns all the registered metrics ordered by their types and names.
+   *
+   * @return A list of metrics.
+   */
+  public List<ActionMetrics> metrics() {
+    List<ActionMetrics> ret = new ArrayList<>(named.values());
+    ret.addAll(commands.values());
+    ret.sort(Comparator.comparing(ActionMetrics::type).thenComparing(ActionMetrics::name));
+    return ret;
+  }
+
+  /**
+   * Writes metrics in this registry in the Prometheus text exposition format.
+   *
+   * @param writer A writer to which lines are written.
+   */
+  public void writeTo(Writer writer) {
+    List<ActionMetrics> metrics = metrics();
+    writeHeader(writer, "actionunit_action_duration_seconds", "summary", "Time spent by runs of actions.");
+    for (ActionMetrics each : metrics) {
+      Record record = each.record();
+      for (double quantile : QUANTILES)
+        writer.writeLine(format("actionunit_action_duration_seconds{%s,quantile=\"%s\"} %s",
+            labelsOf(each), quantile, seconds(record.percentileTimeSpentInNanos(quantile * 100))));
+      writer.writeLine(format("actionunit_action_duration_seconds_sum{%s} %s", labelsOf(each), seconds(record.totalTimeSpentInNanos())));
+      writer.writeLine(format("actionunit_action_duration_seconds_count{%s} %d", labelsOf(each), record.count()));
+    }
+    writeHeader(writer, "actionunit_action_runs_total", "counter", "Number of finished runs of actions by outcome.");
+    for (ActionMetrics each : metrics) {
+      Record record = each.record();
+      writer.writeLine(format("actionunit_action_runs_total{%s,outcome=\"success\"} %d", labelsOf(each), record.successCount()));
+      writer.writeLine(format("actionunit_action_runs_total{%s,outcome=\"failure\"} %d", labelsOf(each), record.failureCount()));
+      writer.writeLine(format("actionunit_action_runs_total{%s,outcome=\"error\"} %d", labelsOf(each), record.errorCount()));
+      writer.writeLine(format("actionunit_action_runs_total{%s,outcome=\"cancelled\"} %d", labelsOf(each), record.cancellationCount()));
+    }
+    writeHeader(writer, "actionunit_action_retries_total", "counter", "Number of retries in actions.");
+    for (ActionMetrics each : metrics)
+      writer.writeLine(format("actionunit_action_retries_total{%s} %d", labelsOf(each), each.retryCount()));
+    writeHeader(writer, "actionunit_action_timeouts_total", "counter", "Number of time-outs in actions.");
+    for (ActionMetrics each : metrics)
+      writer.writeLine(format("actionunit_action_timeouts_total{%s} %d", labelsOf(each), each.timeoutCount()));
+    writeHeader(writer, "actionunit_action_in_flight", "gauge", "Number of runs of actions not finished yet.");
+    for (ActionMetrics each : metrics)
+      writer.writeLine(format("actionunit_action_in_flight{%s} %d", labelsOf(each), each.inFlight()));
+  }
+
+  /**
+   * Writes metrics in this registry to {@code file} in the Prometheus text
+   * exposition format. The file is written under a temporary name and then
+   * renamed, so that a collector such as node exporter's textfile collector
+   * never reads a partially written file.
+   *
+   * @param file A file to which metrics are written.
+   */
+  public void writeTo(Path file) {
+    Path absolute = file.toAbsolutePath();
+    try {
+      Path tmp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+      try {
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, UTF_8)) {
+          writeTo(line -> {
+            try {
+              out.write(line);
+              out.write('\n');
+            } catch (IOException e) {
+              throw ActionException.wrap(e);
+            }
+          });
+        }
+        try {
+          Files.move(tmp, absolute, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tmp, absolute, REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      throw ActionException.wrap(e);
+    }
+  }
+
+  private static void writeHeader(Writer writer, String metricName, String type, String help) {
+    writer.writeLine(format("# HELP %s %s", metricName, help));
+    writer.writeLine(format("# TYPE %s %s", metricName, type));
+  }
+
+  private static String labelsOf(ActionMetrics metrics) {
+    return format("name=\"%s\",type=\"%s\"", escape(metrics.name()), metrics.type().label());
+  }
+
+  private static String escape(String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static String seconds(long nanos) {
+    return Double.toString(nanos / 1_000_000_000.0);
+  }
+
+  private class MetricsRecordingListener implements ActionListener {
+    @Override
+    public void onStart(ActionPath path, Context context) {
+      ActionMetrics metrics = metricsOf(path);
+      if (metrics != null)
+        metrics.started();
+    }
+
+    @Override
+    public void onSuccess(ActionPath path, Context context, long timeSpentInNanos) {
+      ActionMetrics metrics = metricsOf(path);
+      if (metrics != null)
+        metrics.succeeded(timeSpentInNanos);
+    }
+
+    @Override
+    public void onFailure(ActionPath path, Context context, long timeSpentInNanos, Throwable t) {
+      ActionMetrics metrics = metricsOf(path);
+      if (metrics != null)
+        metrics.failed(timeSpentInNanos, t);
+    }
+
+    @Override
+    public void onRetry(ActionPath path, Context context, int retry, Throwable t) {
+      Named named = enclosingNamed(path);
+      if (named != null)
+        metricsFor(named.name(), ActionMetrics.Type.NAMED).retried();
+    }
+
+    @Override
+    public void onTimeout(ActionPath path, Context context, ActionTimeOutException e) {
+      Named named = enclosingNamed(path);
+      if (named != null)
+        metricsFor(named.name(), ActionMetrics.Type.NAMED).timedOut();
+    }
+
+    private ActionMetrics metricsOf(ActionPath path) {
+      Action action = path.action();
+      if (action instanceof Named)
+        return metricsFor(((Named) action).name(), ActionMetrics.Type.NAMED);
+      if (action instanceof CommandLeaf) {
+        Named named = enclosingNamed(path);
+        // Formatting a command is costly, but only for commanders without descriptions.
+        return metricsFor(named != null ? named.name() : format("%s", action), ActionMetrics.Type.COMMAND);
+      }
+      return null;
+    }
+
+    private Named enclosingNamed(ActionPath path) {
+      for (ActionPath each = path; each != null; each = each.parent())
+        if (each.action() instanceof Named)
+          return (Named) each.action();
+      return null;
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package com.github.dakusui.actionunit.visitors;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A bounded, lock-free pool of objects that are expensive to create for each
+ * task, such as frames used by iterations of a parallel loop.
+ * <p>
+ * Objects are kept in slots of an array and taken or returned by a
+ * compare-and-set on a slot, so neither taking nor returning allocates. An
+ * object is created when no slot holds one, e.g., when a task taking one is
+ * nested in another, and one returned when all the slots are occupied is
+ * dropped.
+ */
+final class ObjectPool<T> {
+  /**
+   * The maximum number of objects kept by a pool.
+   */
+  static final int MAX_CAPACITY = 256;
+
+  private final AtomicReferenceArray<T> slots;
+  private final Supplier<T>             factory;
+
+  ObjectPool(int capacity, Supplier<T> factory) {
+    this.slots = new AtomicReferenceArray<>(Math.min(requireArgument(v -> v > 0, capacity), MAX_CAPACITY));
+    this.factory = requireNonNull(factory);
+  }
+
+  T take() {
+    for (int i = 0; i < slots.length(); i++) {
+      T ret = slots.get(i);
+      if (ret != null && slots.compareAndSet(i, ret, null))
+        return ret;
+    }
+    return factory.get();
+  }
+
+  void release(T object) {
+    for (int i = 0; i < slots.length(); i++)
+      if (slots.get(i) == null && slots.compareAndSet(i, null, object))
+        return;
+  }
+}
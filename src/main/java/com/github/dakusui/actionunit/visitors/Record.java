@@ -1,41 +1,195 @@
 package com.github.dakusui.actionunit.visitors;
 
+import com.github.dakusui.actionunit.exceptions.ActionCancelledException;
+
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
+import static java.lang.String.format;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
+/**
+ * A record of runs of an action.
+ * <p>
+ * Statistics (numbers of successes, failures, errors, and cancellations, and
+ * total, minimum, and maximum time spent) are always kept in striped counters.
+ * Individual runs, which are used to render strings such as {@code oFE}, are
+ * kept either without limit (the default), or in a ring buffer that holds only
+ * the last {@code N} runs. The latter allocates nothing per run.
+ * <p>
+ * Durations are measured with {@link System#nanoTime()} and are also recorded
+ * in a histogram, from which latency percentiles are computed.
+ */
 public class Record implements Iterable<Record.Run> {
+  /**
+   * A value for {@code historySize}, which means all the runs are kept.
+   */
+  public static final int UNLIMITED_HISTORY = -1;
 
-  private final List<Run> runs = Collections.synchronizedList(new LinkedList<>());
+  private final LongAdder        successes        = new LongAdder();
+  private final LongAdder        failures         = new LongAdder();
+  private final LongAdder        errors           = new LongAdder();
+  private final LongAdder        cancellations    = new LongAdder();
+  private final LongAdder        totalTimeInNanos = new LongAdder();
+  private final LongAccumulator  minTimeInNanos   = new LongAccumulator(Math::min, Long.MAX_VALUE);
+  private final LongAccumulator  maxTimeInNanos   = new LongAccumulator(Math::max, Long.MIN_VALUE);
+  private final LatencyHistogram histogram        = new LatencyHistogram();
+  private final History          history;
+
+  /**
+   * Creates a record that keeps all the runs.
+   */
+  public Record() {
+    this(UNLIMITED_HISTORY);
+  }
+
+  /**
+   * Creates a record that keeps the last {@code historySize} runs only.
+   * If {@link Record#UNLIMITED_HISTORY} is given, all the runs are kept.
+   *
+   * @param historySize The number of runs to be kept.
+   */
+  public Record(int historySize) {
+    requireArgument(v -> v >= 0 || v == UNLIMITED_HISTORY, historySize);
+    this.history = historySize == UNLIMITED_HISTORY ?
+        new History.Unlimited() :
+        new History.Ring(historySize);
+  }
 
+  /**
+   * Returns a wall-clock time stamp in milliseconds.
+   * Use {@link Record#startedInNanos()} to measure durations, which is not
+   * affected by changes of the system clock.
+   *
+   * @return The current time in milliseconds.
+   */
   public long started() {
     return System.currentTimeMillis();
   }
 
+  /**
+   * Returns a time stamp from which a duration is computed and passed to
+   * {@link Record#succeededInNanos(long)} or {@link Record#failedInNanos(long, Throwable)}.
+   *
+   * @return The current value of {@link System#nanoTime()}.
+   */
+  public long startedInNanos() {
+    return System.nanoTime();
+  }
+
   public void succeeded(long timeSpentInMillis) {
-    runs.add(Run.succeeded(timeSpentInMillis));
+    succeededInNanos(MILLISECONDS.toNanos(timeSpentInMillis));
+  }
+
+  public void succeededInNanos(long timeSpentInNanos) {
+    successes.increment();
+    account(timeSpentInNanos);
+    history.add(Run.SUCCEEDED, timeSpentInNanos);
   }
 
   public void failed(long timeSpentInMillis, Throwable t) {
-    runs.add(Run.failed(timeSpentInMillis, t));
+    failedInNanos(MILLISECONDS.toNanos(timeSpentInMillis), t);
+  }
+
+  public void failedInNanos(long timeSpentInNanos, Throwable t) {
+    Objects.requireNonNull(t);
+    byte kind;
+    if (t instanceof AssertionError) {
+      failures.increment();
+      kind = Run.FAILED;
+    } else if (t instanceof ActionCancelledException) {
+      cancellations.increment();
+      kind = Run.CANCELLED;
+    } else {
+      errors.increment();
+      kind = Run.ERROR;
+    }
+    account(timeSpentInNanos);
+    history.add(kind, timeSpentInNanos);
   }
 
   public long timeSpentInMillis() {
-    return this.runs.stream()
-        .map(Run::timeSpentInMillis)
-        .reduce(Long::sum)
-        .orElse((long) 0);
+    return NANOSECONDS.toMillis(totalTimeInNanos.sum());
+  }
+
+  public long totalTimeSpentInNanos() {
+    return totalTimeInNanos.sum();
+  }
+
+  /**
+   * Returns the shortest time spent by a run in nanoseconds, or {@code 0} if
+   * there is no run.
+   *
+   * @return The minimum time spent by a run.
+   */
+  public long minTimeSpentInNanos() {
+    return count() == 0 ? 0 : minTimeInNanos.get();
+  }
+
+  /**
+   * Returns the longest time spent by a run in nanoseconds, or {@code 0} if
+   * there is no run.
+   *
+   * @return The maximum time spent by a run.
+   */
+  public long maxTimeSpentInNanos() {
+    return count() == 0 ? 0 : maxTimeInNanos.get();
+  }
+
+  /**
+   * Returns a time in nanoseconds at or below which {@code percentile} percent
+   * of runs finished, or {@code 0} if there is no run.
+   * The value is computed from a histogram and its relative error is about 6%
+   * at most, except that it never exceeds {@link Record#maxTimeSpentInNanos()}.
+   *
+   * @param percentile A percentile between 0 (exclusive) and 100 (inclusive).
+   * @return The time spent at the percentile.
+   */
+  public long percentileTimeSpentInNanos(double percentile) {
+    return Math.min(histogram.valueAtPercentile(percentile), maxTimeSpentInNanos());
+  }
+
+  public long successCount() {
+    return successes.sum();
+  }
+
+  public long failureCount() {
+    return failures.sum();
+  }
+
+  public long errorCount() {
+    return errors.sum();
+  }
+
+  /**
+   * Returns the number of runs that stopped since they were cancelled.
+   *
+   * @return The number of cancelled runs.
+   * @see ActionCancelledException
+   */
+  public long cancellationCount() {
+    return cancellations.sum();
+  }
+
+  public long count() {
+    return successCount() + failureCount() + errorCount() + cancellationCount();
   }
 
   public boolean allFailing() {
-    return this.runs.stream().noneMatch(Run::succeeded);
+    return successCount() == 0;
   }
 
   @Override
   public Iterator<Run> iterator() {
-    return runs.iterator();
+    return history.iterator();
   }
 
   @Override
@@ -43,6 +197,40 @@ public class Record implements Iterable<Record.Run> {
     return formatRecord(this);
   }
 
+  /**
+   * Returns a string that has latency percentiles in addition to the one
+   * returned by {@link Record#toString()}. For instance,
+   * {@code o...:0(n=100, p50=1.2ms, p95=3.1ms, p99=5.0ms, max=5.2ms)}.
+   *
+   * @return A verbose string representation of this record.
+   */
+  public String toVerboseString() {
+    return format("%s(n=%d, p50=%s, p95=%s, p99=%s, max=%s)",
+        this,
+        count(),
+        formatNanos(percentileTimeSpentInNanos(50)),
+        formatNanos(percentileTimeSpentInNanos(95)),
+        formatNanos(percentileTimeSpentInNanos(99)),
+        formatNanos(maxTimeSpentInNanos()));
+  }
+
+  private void account(long timeSpentInNanos) {
+    totalTimeInNanos.add(timeSpentInNanos);
+    minTimeInNanos.accumulate(timeSpentInNanos);
+    maxTimeInNanos.accumulate(timeSpentInNanos);
+    histogram.record(timeSpentInNanos);
+  }
+
+  static String formatNanos(long nanos) {
+    if (nanos < 1_000)
+      return format("%dns", nanos);
+    if (nanos < 1_000_000)
+      return format("%.1fus", nanos / 1_000.0);
+    if (nanos < 1_000_000_000)
+      return format("%.1fms", nanos / 1_000_000.0);
+    return format("%.2fs", nanos / 1_000_000_000.0);
+  }
+
   private static String formatRecord(Record runs) {
     StringBuilder b = new StringBuilder();
     if (runs != null)
@@ -68,52 +256,135 @@ public class Record implements Iterable<Record.Run> {
   }
 
   /**
-   * {@code o} for Okay, {@code F} for fail, and {@code E} for error.
+   * {@code o} for Okay, {@code F} for fail, {@code E} for error, and {@code C}
+   * for cancelled.
    * A fail means an assertion error, which is raised when a test fails.
    */
   public interface Run {
+    byte SUCCEEDED = 0;
+    byte FAILED    = 1;
+    byte ERROR     = 2;
+    byte CANCELLED = 3;
+
     long timeSpentInMillis();
+
+    /**
+     * Returns the time spent by this run in nanoseconds. Implementations that
+     * know the time only in milliseconds do not need to override this.
+     *
+     * @return The time spent by this run.
+     */
+    default long timeSpentInNanos() {
+      return MILLISECONDS.toNanos(timeSpentInMillis());
+    }
+
     boolean succeeded();
 
     static Run failed(long timeSpentInMillis, Throwable t) {
       Objects.requireNonNull(t);
+      return of(
+          t instanceof AssertionError ?
+              FAILED :
+              t instanceof ActionCancelledException ?
+                  CANCELLED :
+                  ERROR,
+          MILLISECONDS.toNanos(timeSpentInMillis));
+    }
+
+    static Run succeeded(long timeSpentInMillis) {
+      return of(SUCCEEDED, MILLISECONDS.toNanos(timeSpentInMillis));
+    }
+
+    static Run of(byte kind, long timeSpentInNanos) {
       return new Run() {
         @Override
         public long timeSpentInMillis() {
-          return timeSpentInMillis;
+          return NANOSECONDS.toMillis(timeSpentInNanos);
+        }
+
+        @Override
+        public long timeSpentInNanos() {
+          return timeSpentInNanos;
         }
 
         @Override
         public boolean succeeded() {
-          return false;
+          return kind == SUCCEEDED;
         }
 
         @Override
         public String toString() {
-          return t instanceof AssertionError
-              ? "F"
-              : "E";
+          return kind == SUCCEEDED ?
+              "o" :
+              kind == FAILED ?
+                  "F" :
+                  kind == CANCELLED ?
+                      "C" :
+                      "E";
         }
       };
     }
+  }
 
-    static Run succeeded(long timeSpentInMillis) {
-      return new Run() {
-        @Override
-        public String toString() {
-          return "o";
-        }
+  private interface History extends Iterable<Run> {
+    void add(byte kind, long timeSpentInNanos);
 
-        @Override
-        public long timeSpentInMillis() {
-          return timeSpentInMillis;
-        }
+    class Unlimited implements History {
+      private final Queue<Run> runs = new ConcurrentLinkedQueue<>();
 
-        @Override
-        public boolean succeeded() {
-          return true;
+      @Override
+      public void add(byte kind, long timeSpentInNanos) {
+        runs.add(Run.of(kind, timeSpentInNanos));
+      }
+
+      @Override
+      public Iterator<Run> iterator() {
+        return runs.iterator();
+      }
+    }
+
+    /**
+     * Keeps the last runs in an array of {@code long}s, each of which packs the
+     * kind and the time of a run, so that an entry is written at once and a
+     * reader never sees the kind of one run with the time of another. Runs are
+     * materialized only when they are iterated over.
+     */
+    class Ring implements History {
+      private static final int  KIND_SHIFT = 60;
+      private static final long TIME_MASK  = (1L << KIND_SHIFT) - 1;
+      /**
+       * A value of an entry not written yet. Kinds are stored incremented by
+       * one, so that no written entry has this value.
+       */
+      private static final long EMPTY      = 0;
+
+      private final AtomicLongArray entries;
+      private final AtomicLong      cursor = new AtomicLong();
+
+      Ring(int size) {
+        this.entries = new AtomicLongArray(size);
+      }
+
+      @Override
+      public void add(byte kind, long timeSpentInNanos) {
+        if (entries.length() == 0)
+          return;
+        int i = (int) (cursor.getAndIncrement() % entries.length());
+        entries.set(i, ((long) (kind + 1) << KIND_SHIFT) | (Math.max(0, timeSpentInNanos) & TIME_MASK));
+      }
+
+      @Override
+      public Iterator<Run> iterator() {
+        long end = cursor.get();
+        List<Run> runs = new ArrayList<>();
+        for (long i = Math.max(0, end - entries.length()); i < end; i++) {
+          long entry = entries.get((int) (i % entries.length()));
+          // An entry whose writer has taken its index but not written it yet.
+          if (entry != EMPTY)
+            runs.add(Run.of((byte) ((entry >>> KIND_SHIFT) - 1), entry & TIME_MASK));
         }
-      };
+        return runs.iterator();
+      }
     }
   }
 }
@@ -3,62 +3,117 @@ package com.github.dakusui.actionunit.visitors;
 import com.github.dakusui.actionunit.core.Action;
 import com.github.dakusui.actionunit.core.Context;
 import com.github.dakusui.actionunit.io.Writer;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.util.LinkedHashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
+import static com.github.dakusui.actionunit.utils.Checks.requireArgument;
+import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
+/**
+ * An action performer that records runs of actions and reports them as a tree.
+ * Runs are recorded by a listener registered to {@link ActionPerformer#eventBus()},
+ * so other listeners, such as ones for metrics or tracing, can be combined with it.
+ */
 public class ReportingActionPerformer extends ActionPerformer {
-  private static final Logger              LOGGER = LoggerFactory.getLogger(ReportingActionPerformer.class);
-  private final        Map<Action, Record> report;
+  private final Map<Action, Record> report;
+  private final Supplier<Record>    recordFactory;
 
-  private ReportingActionPerformer() {
-    this(Context.create(), new LinkedHashMap<>());
+  private ReportingActionPerformer(ExecutionEngine executionEngine, Supplier<Record> recordFactory) {
+    this(Context.create(), executionEngine, new Report(), recordFactory, new ActionEventBus());
+    this.eventBus.register(new RecordingListener(this.report, this::createRecord));
   }
 
-  private ReportingActionPerformer(Context context, Map<Action, Record> report) {
-    super(context);
+  private ReportingActionPerformer(Context context, ExecutionEngine executionEngine, Map<Action, Record> report, Supplier<Record> recordFactory, ActionEventBus eventBus) {
+    super(context, executionEngine, eventBus);
     this.report = report;
+    this.recordFactory = requireNonNull(recordFactory);
   }
 
   @Override
   protected Action.Visitor newInstance(Context context) {
-    return new ReportingActionPerformer(context, this.report);
+    return new ReportingActionPerformer(context, this.executionEngine, this.report, this.recordFactory, this.eventBus);
   }
 
-  @Override
-  protected void callAccept(Action action, Action.Visitor visitor) {
-    Record record;
-    synchronized (report) {
-      record = report.computeIfAbsent(action, a -> createRecord());
-    }
-    if (record == null) {
-      LOGGER.error("record became null for action:{}({})", action, action.getClass());
-      assert false;
-    }
-    long timeStartedInMillis = record.started();
-    try {
-      action.accept(visitor);
-      record.succeeded(System.currentTimeMillis() - timeStartedInMillis);
-    } catch (Throwable t) {
-      record.failed(System.currentTimeMillis() - timeStartedInMillis, t);
-      throw t;
-    }
+  public void performAndReport(Action action, Writer writer) {
+    performAndReport(action, writer, false);
   }
 
-  public void perform(Action action) {
-    callAccept(requireNonNull(action), this);
+  public void performAndReport(Action action, Writer writer, boolean verbose) {
+    try {
+      perform(action);
+    } finally {
+      new ActionReporter(writer, this.getReport(), verbose).report(action);
+    }
   }
 
-  public void performAndReport(Action action, Writer writer) {
+  /**
+   * Performs {@code action} while reporting its progress as it happens.
+   * <p>
+   * Each time an action is entered and left, a line like the following is written
+   * to {@code eventWriter}, without being buffered:
+   * <pre>
+   * event=enter thread=main action=print
+   * event=leave thread=main result=success duration=1.2ms action=print
+   * event=leave thread=main result=failure duration=3.0ms exception=java.lang.IllegalStateException action=print
+   * </pre>
+   * Every {@code interval}, the tree rendered by {@link ActionReporter} is written
+   * to {@code summaryWriter}, and it is written once more when the action finishes.
+   * To keep the memory footprint bounded for a long run, create this performer
+   * with records that keep a limited history, e.g.,
+   * {@code create(engine, () -> new Record(10))}.
+   *
+   * @param action        An action to be performed.
+   * @param eventWriter   A writer to which progress events are written.
+   * @param summaryWriter A writer to which summaries are written.
+   * @param interval      An interval between summaries.
+   * @param timeUnit      A time unit of {@code interval}.
+   */
+  public void performAndReportLive(Action action, Writer eventWriter, Writer summaryWriter, long interval, TimeUnit timeUnit) {
+    requireNonNull(action);
+    requireNonNull(summaryWriter);
+    ActionListener eventListener = new EventWritingListener(requireNonNull(eventWriter));
+    long timeStartedInNanos = System.nanoTime();
+    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "actionunit-live-report");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.scheduleAtFixedRate(
+        () -> {
+          summaryWriter.writeLine(format("---- %s elapsed ----", Record.formatNanos(System.nanoTime() - timeStartedInNanos)));
+          new ActionReporter(summaryWriter, this.getReport()).report(action);
+        },
+        requireArgument(v -> v > 0, interval),
+        interval,
+        requireNonNull(timeUnit));
+    this.eventBus.register(eventListener);
     try {
       perform(action);
     } finally {
-      new ActionReporter(writer, this.getReport()).report(action);
+      this.eventBus.unregister(eventListener);
+      timer.shutdownNow();
+      try {
+        // Let a summary being rendered finish so that it is not interleaved with the final one.
+        timer.awaitTermination(interval, timeUnit);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      summaryWriter.writeLine(format("---- finished in %s ----", Record.formatNanos(System.nanoTime() - timeStartedInNanos)));
+      new ActionReporter(summaryWriter, this.getReport()).report(action);
     }
   }
 
@@ -80,10 +135,180 @@ public class ReportingActionPerformer extends ActionPerformer {
   }
 
   protected Record createRecord() {
-    return new Record();
+    return recordFactory.get();
+  }
+
+  /**
+   * Records runs of actions in a report.
+   */
+  private static class RecordingListener implements ActionListener {
+    private final Map<Action, Record> report;
+    private final Supplier<Record>    recordFactory;
+
+    RecordingListener(Map<Action, Record> report, Supplier<Record> recordFactory) {
+      this.report = report;
+      this.recordFactory = recordFactory;
+    }
+
+    @Override
+    public void onStart(ActionPath path, Context context) {
+      // Creates a record so that an action being performed is reported as such.
+      report.computeIfAbsent(path.action(), a -> recordFactory.get());
+    }
+
+    @Override
+    public void onSuccess(ActionPath path, Context context, long timeSpentInNanos) {
+      report.get(path.action()).succeededInNanos(timeSpentInNanos);
+    }
+
+    @Override
+    public void onFailure(ActionPath path, Context context, long timeSpentInNanos, Throwable t) {
+      report.get(path.action()).failedInNanos(timeSpentInNanos, t);
+    }
+  }
+
+  /**
+   * Writes a line for each start and end of an action.
+   */
+  private static class EventWritingListener implements ActionListener {
+    private final Writer writer;
+
+    EventWritingListener(Writer writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void onStart(ActionPath path, Context context) {
+      writer.writeLine(format("event=enter thread=%s action=%s", Thread.currentThread().getName(), path.action()));
+    }
+
+    @Override
+    public void onSuccess(ActionPath path, Context context, long timeSpentInNanos) {
+      writer.writeLine(format("event=leave thread=%s result=success duration=%s action=%s",
+          Thread.currentThread().getName(), Record.formatNanos(timeSpentInNanos), path.action()));
+    }
+
+    @Override
+    public void onFailure(ActionPath path, Context context, long timeSpentInNanos, Throwable t) {
+      writer.writeLine(format("event=leave thread=%s result=failure duration=%s exception=%s action=%s",
+          Thread.currentThread().getName(), Record.formatNanos(timeSpentInNanos), t.getClass().getName(), path.action()));
+    }
+  }
+
+  /**
+   * A map from actions to their records, which can be updated by multiple threads
+   * without locking once a record is created for an action. Entries are iterated
+   * in the order they were inserted. Removing an entry takes time proportional
+   * to the number of actions, which is fine for clearing a report between runs.
+   */
+  static class Report extends AbstractMap<Action, Record> {
+    private final Map<Action, Record> records = new ConcurrentHashMap<>();
+    private final Queue<Action>       order   = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public Record get(Object key) {
+      return records.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return records.containsKey(key);
+    }
+
+    @Override
+    public Record computeIfAbsent(Action key, Function<? super Action, ? extends Record> mappingFunction) {
+      // ConcurrentHashMap#computeIfAbsent may lock a bin even if the key is present.
+      Record ret = records.get(key);
+      if (ret != null)
+        return ret;
+      return records.computeIfAbsent(key, k -> {
+        order.add(k);
+        return mappingFunction.apply(k);
+      });
+    }
+
+    @Override
+    public Record put(Action key, Record value) {
+      Record ret = records.put(key, value);
+      if (ret == null)
+        order.add(key);
+      return ret;
+    }
+
+    @Override
+    public Record remove(Object key) {
+      Record ret = records.remove(key);
+      if (ret != null)
+        order.remove(key);
+      return ret;
+    }
+
+    @Override
+    public void clear() {
+      order.clear();
+      records.clear();
+    }
+
+    @Override
+    public int size() {
+      return records.size();
+    }
+
+    @Override
+    public Set<Entry<Action, Record>> entrySet() {
+      return new AbstractSet<Entry<Action, Record>>() {
+        @Override
+        public Iterator<Entry<Action, Record>> iterator() {
+          Iterator<Action> i = order.iterator();
+          return new Iterator<Entry<Action, Record>>() {
+            Action current;
+
+            @Override
+            public boolean hasNext() {
+              return i.hasNext();
+            }
+
+            @Override
+            public Entry<Action, Record> next() {
+              current = i.next();
+              return new SimpleImmutableEntry<>(current, records.get(current));
+            }
+
+            @Override
+            public void remove() {
+              i.remove();
+              records.remove(current);
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return records.size();
+        }
+      };
+    }
   }
 
   public static ReportingActionPerformer create() {
-    return new ReportingActionPerformer();
+    return create(ExecutionEngine.DEFAULT);
+  }
+
+  public static ReportingActionPerformer create(ExecutionEngine executionEngine) {
+    return create(executionEngine, Record::new);
+  }
+
+  /**
+   * Creates a performer whose records are created by a given {@code recordFactory}.
+   * For instance, {@code () -> new Record(10)} gives records that keep only the
+   * last 10 runs of each action, which is suitable for actions performed a large
+   * number of times.
+   *
+   * @param executionEngine An engine that runs parallel actions.
+   * @param recordFactory   A supplier of records.
+   * @return A new performer.
+   */
+  public static ReportingActionPerformer create(ExecutionEngine executionEngine, Supplier<Record> recordFactory) {
+    return new ReportingActionPerformer(executionEngine, recordFactory);
   }
 }
@@ -5,25 +5,24 @@ import com.github.dakusui.actionunit.core.Context;
 
 public class SimpleActionPerformer extends ActionPerformer implements Action.Visitor {
 
-  private SimpleActionPerformer() {
-    this(Context.create());
+  private SimpleActionPerformer(ExecutionEngine executionEngine) {
+    this(Context.create(), executionEngine, new ActionEventBus());
   }
 
-  private SimpleActionPerformer(Context context) {
-    super(context);
-  }
-
-  @Override
-  protected void callAccept(Action action, Action.Visitor visitor) {
-    action.accept(visitor);
+  private SimpleActionPerformer(Context context, ExecutionEngine executionEngine, ActionEventBus eventBus) {
+    super(context, executionEngine, eventBus);
   }
 
   @Override
   protected SimpleActionPerformer newInstance(Context context) {
-    return new SimpleActionPerformer(context);
+    return new SimpleActionPerformer(context, this.executionEngine, this.eventBus);
   }
 
   public static SimpleActionPerformer create() {
-    return new SimpleActionPerformer();
+    return create(ExecutionEngine.DEFAULT);
+  }
+
+  public static SimpleActionPerformer create(ExecutionEngine executionEngine) {
+    return new SimpleActionPerformer(executionEngine);
   }
 }
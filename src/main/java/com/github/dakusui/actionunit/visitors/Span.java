@@ -0,0 +1,135 @@
+package com.github.dakusui.actionunit.visitors;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * A span that represents one run of an action, created by a {@link TracingListener}.
+ * <p>
+ * Identifiers and fields follow OpenTelemetry's data model: a trace ID has 16
+ * bytes and a span ID has 8 bytes, both rendered in lower-case hex. A span
+ * created for the root action has no parent span ID.
+ * <p>
+ * Attributes of a span are set only by the thread that performs its action,
+ * and a span is passed to a {@link SpanExporter} after it ends.
+ */
+public final class Span {
+  /**
+   * A status of an ended span.
+   */
+  public enum Status {
+    OK,
+    ERROR
+  }
+
+  private final String              traceId;
+  private final String              spanId;
+  private final String              parentSpanId;
+  private final String              name;
+  private final long                startEpochNanos;
+  private final Map<String, Object> attributes = new LinkedHashMap<>();
+  private final AtomicInteger       children   = new AtomicInteger();
+  private       long                endEpochNanos;
+  private       Status              status;
+  private       String              statusMessage;
+
+  private Span(String traceId, String parentSpanId, String name) {
+    this.traceId = requireNonNull(traceId);
+    this.spanId = randomHex(8);
+    this.parentSpanId = parentSpanId;
+    this.name = requireNonNull(name);
+    this.startEpochNanos = MILLISECONDS.toNanos(System.currentTimeMillis());
+  }
+
+  static Span start(Span parent, String name) {
+    return parent == null ?
+        new Span(randomHex(16), null, name) :
+        new Span(parent.traceId, parent.spanId, name);
+  }
+
+  public String traceId() {
+    return this.traceId;
+  }
+
+  public String spanId() {
+    return this.spanId;
+  }
+
+  /**
+   * Returns an ID of the parent span, or {@code null} if this span is a root.
+   *
+   * @return An ID of the parent span.
+   */
+  public String parentSpanId() {
+    return this.parentSpanId;
+  }
+
+  public String name() {
+    return this.name;
+  }
+
+  public long startEpochNanos() {
+    return this.startEpochNanos;
+  }
+
+  public long endEpochNanos() {
+    return this.endEpochNanos;
+  }
+
+  public Status status() {
+    return this.status;
+  }
+
+  /**
+   * Returns a message that describes an error, or {@code null} if the span
+   * ended successfully.
+   *
+   * @return A status message.
+   */
+  public String statusMessage() {
+    return this.statusMessage;
+  }
+
+  public Map<String, Object> attributes() {
+    return Collections.unmodifiableMap(this.attributes);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[traceId=%s, spanId=%s, parentSpanId=%s, status=%s, attributes=%s]",
+        name, traceId, spanId, parentSpanId, status, attributes);
+  }
+
+  Span attribute(String key, Object value) {
+    this.attributes.put(requireNonNull(key), requireNonNull(value));
+    return this;
+  }
+
+  /**
+   * Returns how many child spans of this one have been started, including the
+   * one starting, e.g., the number of an attempt of a retry action.
+   */
+  int startChild() {
+    return this.children.incrementAndGet();
+  }
+
+  void end(long timeSpentInNanos, Status status, String statusMessage) {
+    this.endEpochNanos = this.startEpochNanos + timeSpentInNanos;
+    this.status = requireNonNull(status);
+    this.statusMessage = statusMessage;
+  }
+
+  private static String randomHex(int bytes) {
+    StringBuilder b = new StringBuilder(bytes * 2);
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < bytes; i++)
+      b.append(String.format("%02x", random.nextInt(256)));
+    return b.toString();
+  }
+}
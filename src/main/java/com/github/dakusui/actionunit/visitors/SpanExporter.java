@@ -0,0 +1,16 @@
+package com.github.dakusui.actionunit.visitors;
+
+/**
+ * An interface to which a {@link TracingListener} passes ended spans.
+ * <p>
+ * Spans are exported on threads that perform actions, as soon as they end.
+ * A child span is therefore exported before its parent and implementations
+ * should be thread-safe. An implementation that sends spans to a remote
+ * collector should buffer them rather than block the caller.
+ *
+ * @see JsonSpanExporter
+ */
+@FunctionalInterface
+public interface SpanExporter {
+  void export(Span span);
+}
@@ -0,0 +1,109 @@
+package com.github.dakusui.actionunit.visitors;
+
+import com.github.dakusui.actionunit.actions.ForEach;
+import com.github.dakusui.actionunit.actions.Retry;
+import com.github.dakusui.actionunit.actions.cmd.CommandLeaf;
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.exceptions.ActionTimeOutException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A listener that creates a {@link Span} for each run of an action and passes
+ * it to a {@link SpanExporter} when it ends. The parent of a span is the one of
+ * the action that encloses it in its {@link ActionPath}.
+ * <p>
+ * Following attributes are set to spans.
+ * <ul>
+ *   <li>{@code actionunit.loop.variable} and {@code actionunit.loop.value}:
+ *   the name and value of the loop variable, for a run of the body of a
+ *   {@link ForEach} action.</li>
+ *   <li>{@code actionunit.retry.attempt}: the number of an attempt starting
+ *   from 1, for a run of the target of a {@link Retry} action.</li>
+ *   <li>{@code actionunit.retry.count}: the number of retries done by a
+ *   {@link Retry} action.</li>
+ *   <li>{@code actionunit.timed_out}: {@code true} for a timed-out
+ *   {@link com.github.dakusui.actionunit.actions.TimeOut} action.</li>
+ *   <li>{@code process.command_line} and {@code process.exit_code}: the command
+ *   line (with placeholders for variables) and exit code of a command.</li>
+ *   <li>{@code exception.type} and {@code exception.message}: an exception
+ *   thrown by a failed action.</li>
+ * </ul>
+ * <pre>
+ *   performer.eventBus().register(new TracingListener(new JsonSpanExporter(writer)));
+ * </pre>
+ */
+public class TracingListener implements ActionListener {
+  private final SpanExporter          exporter;
+  private final Map<ActionPath, Span> spans = new ConcurrentHashMap<>();
+
+  public TracingListener(SpanExporter exporter) {
+    this.exporter = requireNonNull(exporter);
+  }
+
+  @Override
+  public void onStart(ActionPath path, Context context) {
+    Span parent = path.parent() != null ?
+        spans.get(path.parent()) :
+        null;
+    Action action = path.action();
+    Span span = Span.start(parent, String.format("%s", action));
+    if (parent != null) {
+      Action parentAction = path.parent().action();
+      if (parentAction instanceof ForEach) {
+        String variableName = ((ForEach<?>) parentAction).loopVariableName();
+        span.attribute("actionunit.loop.variable", variableName);
+        span.attribute("actionunit.loop.value", String.valueOf((Object) context.valueOf(variableName)));
+      } else if (parentAction instanceof Retry)
+        span.attribute("actionunit.retry.attempt", parent.startChild());
+    }
+    if (action instanceof CommandLeaf)
+      span.attribute("process.command_line", ((CommandLeaf) action).commander().buildCommandLineComposer().format());
+    spans.put(path, span);
+  }
+
+  @Override
+  public void onSuccess(ActionPath path, Context context, long timeSpentInNanos) {
+    end(path, timeSpentInNanos, null);
+  }
+
+  @Override
+  public void onFailure(ActionPath path, Context context, long timeSpentInNanos, Throwable t) {
+    end(path, timeSpentInNanos, t);
+  }
+
+  @Override
+  public void onRetry(ActionPath path, Context context, int retry, Throwable t) {
+    Span span = spans.get(path);
+    if (span != null)
+      span.attribute("actionunit.retry.count", retry);
+  }
+
+  @Override
+  public void onTimeout(ActionPath path, Context context, ActionTimeOutException e) {
+    Span span = spans.get(path);
+    if (span != null)
+      span.attribute("actionunit.timed_out", true);
+  }
+
+  private void end(ActionPath path, long timeSpentInNanos, Throwable t) {
+    Span span = spans.remove(path);
+    if (span == null)
+      return;
+    if (path.action() instanceof CommandLeaf)
+      CommandLeaf.lastExitCode().ifPresent(exitCode -> span.attribute("process.exit_code", exitCode));
+    if (t == null)
+      span.end(timeSpentInNanos, Span.Status.OK, null);
+    else {
+      span.attribute("exception.type", t.getClass().getName());
+      if (t.getMessage() != null)
+        span.attribute("exception.message", t.getMessage());
+      span.end(timeSpentInNanos, Span.Status.ERROR, t.getMessage());
+    }
+    exporter.export(span);
+  }
+}
@@ -0,0 +1,55 @@
+package com.github.dakusui.actionunit.visitors;
+
+import com.github.dakusui.actionunit.exceptions.ActionException;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Provides an executor backed by virtual threads.
+ * <p>
+ * This is the Java 8 version of this class, which looks up the factory method
+ * reflectively. On Java 21 or later, the one under {@code src/main/java21} is
+ * picked from the multi-release JAR instead, which calls it directly.
+ *
+ * @see ExecutionEngine#virtualThreads()
+ */
+enum VirtualThreads {
+  ;
+
+  /**
+   * Returns an executor that starts a new virtual thread for each task. The
+   * executor is created on the first call and shared afterwards. It is never
+   * shut down, which is fine since it keeps no thread once its tasks finish.
+   *
+   * @return An executor backed by virtual threads.
+   * @throws UnsupportedOperationException The runtime does not support virtual threads.
+   */
+  static ExecutorService executor() {
+    if (Holder.FACTORY == null)
+      throw new UnsupportedOperationException("Virtual threads are not supported by this runtime");
+    return Holder.EXECUTOR;
+  }
+
+  private static class Holder {
+    static final Method          FACTORY  = lookUpFactory();
+    static final ExecutorService EXECUTOR = FACTORY != null ? create(FACTORY) : null;
+
+    private static Method lookUpFactory() {
+      try {
+        return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      } catch (NoSuchMethodException e) {
+        return null;
+      }
+    }
+
+    private static ExecutorService create(Method factory) {
+      try {
+        return (ExecutorService) factory.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        throw ActionException.wrap(e);
+      }
+    }
+  }
+}
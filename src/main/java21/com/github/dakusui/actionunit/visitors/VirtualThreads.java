@@ -0,0 +1,31 @@
+package com.github.dakusui.actionunit.visitors;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Provides an executor backed by virtual threads.
+ * <p>
+ * This is the Java 21 version of this class, packaged under
+ * {@code META-INF/versions/21} of the multi-release JAR.
+ *
+ * @see ExecutionEngine#virtualThreads()
+ */
+enum VirtualThreads {
+  ;
+
+  /**
+   * Returns an executor that starts a new virtual thread for each task. The
+   * executor is created on the first call and shared afterwards. It is never
+   * shut down, which is fine since it keeps no thread once its tasks finish.
+   *
+   * @return An executor backed by virtual threads.
+   */
+  static ExecutorService executor() {
+    return Holder.EXECUTOR;
+  }
+
+  private static class Holder {
+    static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+  }
+}
@@ -0,0 +1,230 @@
+package com.github.dakusui.actionunit.ut;
+
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.exceptions.ActionTimeOutException;
+import com.github.dakusui.actionunit.io.Writer;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.ActionCompiler;
+import com.github.dakusui.actionunit.visitors.ActionListener;
+import com.github.dakusui.actionunit.visitors.ActionPath;
+import com.github.dakusui.actionunit.visitors.CompiledAction;
+import com.github.dakusui.actionunit.visitors.ExecutionEngine;
+import com.github.dakusui.actionunit.visitors.Record;
+import com.github.dakusui.actionunit.visitors.ReportingActionPerformer;
+import com.github.dakusui.actionunit.visitors.SimpleActionPerformer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Formatter;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.attempt;
+import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
+import static com.github.dakusui.actionunit.core.ActionSupport.leaf;
+import static com.github.dakusui.actionunit.core.ActionSupport.named;
+import static com.github.dakusui.actionunit.core.ActionSupport.parallel;
+import static com.github.dakusui.actionunit.core.ActionSupport.repeatWhile;
+import static com.github.dakusui.actionunit.core.ActionSupport.retry;
+import static com.github.dakusui.actionunit.core.ActionSupport.sequential;
+import static com.github.dakusui.actionunit.core.ActionSupport.simple;
+import static com.github.dakusui.actionunit.core.ActionSupport.timeout;
+import static com.github.dakusui.actionunit.core.ActionSupport.when;
+import static com.github.dakusui.crest.Crest.asBoolean;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asListOf;
+import static com.github.dakusui.crest.Crest.asString;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+
+public class ActionCompilerTest extends TestUtils.TestBase {
+  @Test
+  public void givenActionTree$whenCompiledAndPerformed$thenSameAsSimpleActionPerformer() {
+    List<String> byPerformer = new LinkedList<>();
+    List<String> byCompiled = new LinkedList<>();
+
+    SimpleActionPerformer.create().perform(actionTree(byPerformer));
+    ActionCompiler.create().compile(actionTree(byCompiled)).perform();
+
+    assertThat(byCompiled, asListOf(String.class).equalTo(new ArrayList<>(byPerformer)).$());
+    assertThat(byCompiled.isEmpty(), asBoolean().isFalse().$());
+  }
+
+  @Test
+  public void givenCompiledAction$whenPerformedTwice$thenEachRunHasItsOwnContext() {
+    List<String> out = Collections.synchronizedList(new LinkedList<>());
+    AtomicInteger counter = new AtomicInteger();
+    CompiledAction compiled = ActionCompiler.create().compile(
+        forEach("i", c -> Stream.of("a", "b")).perform(
+            leaf(c -> out.add(c.valueOf("i") + ":" + counter.incrementAndGet()))));
+
+    compiled.perform();
+    compiled.perform();
+
+    assertThat(out, asListOf(String.class).equalTo(asArrayList("a:1", "b:2", "a:3", "b:4")).$());
+  }
+
+  @Test
+  public void givenParallelForEach$whenPerformed$thenAllElementsArePerformed() {
+    List<Integer> out = Collections.synchronizedList(new LinkedList<>());
+
+    ActionCompiler.create(ExecutionEngine.DEFAULT).compile(
+        forEach("i", c -> IntStream.range(0, 100).boxed()).parallelly(4).perform(
+            leaf(c -> out.add(c.valueOf("i"))))).perform();
+
+    assertThat(out.stream().sorted().collect(toList()), asListOf(Integer.class).equalTo(IntStream.range(0, 100).boxed().collect(toList())).$());
+  }
+
+  @Test(expected = ActionTimeOutException.class)
+  public void givenSlowAction$whenTimeOutPasses$thenTimeOutException() {
+    ActionCompiler.create().compile(timeout(simple("sleep", c -> {
+      try {
+        SECONDS.sleep(10);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    })).in(10, MILLISECONDS)).perform();
+  }
+
+  @Test
+  public void givenReportingCompiler$whenPerformed$thenReportIsSameAsReportingActionPerformer() {
+    Writer.Impl byPerformer = new Writer.Impl();
+    Writer.Impl byCompiled = new Writer.Impl();
+
+    ReportingActionPerformer.create().performAndReport(actionTree(new LinkedList<>()), byPerformer);
+    ActionCompiler.reporting(ExecutionEngine.DEFAULT, Record::new).compile(actionTree(new LinkedList<>())).performAndReport(byCompiled);
+
+    assertThat(withoutTimes(byCompiled), asListOf(String.class).equalTo(withoutTimes(byPerformer)).$());
+  }
+
+  @Test
+  public void givenListener$whenCompiledActionPerformed$thenNotifiedSameAsActionPerformer() {
+    List<String> byPerformer = Collections.synchronizedList(new LinkedList<>());
+    List<String> byCompiled = Collections.synchronizedList(new LinkedList<>());
+
+    SimpleActionPerformer performer = SimpleActionPerformer.create();
+    performer.eventBus().register(recordingListener(byPerformer));
+    performer.perform(parallelTree());
+    CompiledAction compiled = ActionCompiler.create().compile(parallelTree());
+    compiled.eventBus().register(recordingListener(byCompiled));
+    compiled.perform();
+
+    // Children of the parallel action are notified in any order.
+    assertThat(sorted(byCompiled), asListOf(String.class).equalTo(sorted(byPerformer)).$());
+    assertThat(
+        byCompiled.stream().filter(e -> e.startsWith("retry:")).collect(toList()),
+        asListOf(String.class).equalTo(asArrayList("retry:do parallelly > root > do sequentially > retry twice in 1 [milliseconds] on IllegalStateException:1")).$());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void givenUnknownActionType$whenCompiled$thenRejected() {
+    ActionCompiler.create().compile(new Action() {
+      @Override
+      public void accept(Visitor visitor) {
+        visitor.visit(this);
+      }
+
+      @Override
+      public void formatTo(Formatter formatter, int flags, int width, int precision) {
+        formatter.format("unknown");
+      }
+    });
+  }
+
+  @Test
+  public void givenNonReportingCompiler$whenPerformed$thenNothingIsRecorded() {
+    CompiledAction compiled = ActionCompiler.create().compile(simple("noop", c -> {
+    }));
+
+    compiled.perform();
+
+    assertThat(compiled.report().size(), asInteger().equalTo(0).$());
+    assertThat(String.format("%s", compiled.action()), asString().equalTo("noop").$());
+  }
+
+  private static Action parallelTree() {
+    return parallel(actionTree(new LinkedList<>()), named("other", leaf(c -> {
+    })));
+  }
+
+  private static ActionListener recordingListener(List<String> out) {
+    return new ActionListener() {
+      @Override
+      public void onStart(ActionPath path, Context context) {
+        out.add("start:" + path);
+      }
+
+      @Override
+      public void onSuccess(ActionPath path, Context context, long timeSpentInNanos) {
+        out.add("success:" + path);
+      }
+
+      @Override
+      public void onFailure(ActionPath path, Context context, long timeSpentInNanos, Throwable t) {
+        out.add("failure:" + path);
+      }
+
+      @Override
+      public void onRetry(ActionPath path, Context context, int retry, Throwable t) {
+        out.add("retry:" + path + ":" + retry);
+      }
+    };
+  }
+
+  private static List<String> sorted(List<String> events) {
+    synchronized (events) {
+      return events.stream().map(each -> each.replaceAll("@[0-9a-f]+", "@")).sorted().collect(toList());
+    }
+  }
+
+  /**
+   * Builds a tree that exercises every kind of action, whose leaves write to {@code out}.
+   */
+  private static Action actionTree(List<String> out) {
+    AtomicInteger failures = new AtomicInteger();
+    AtomicInteger whileCounter = new AtomicInteger();
+    return named("root", sequential(
+        forEach("i", c -> Stream.of("a", "b")).perform(
+            when(c -> c.valueOf("i").equals("a"))
+                .perform(leaf(c -> out.add("then:" + c.valueOf("i"))))
+                .otherwise(leaf(c -> out.add("otherwise:" + c.valueOf("i"))))),
+        repeatWhile(c -> whileCounter.getAndIncrement() < 2)
+            .perform(leaf(c -> out.add("while")))
+            .build(),
+        attempt(simple("fail", c -> {
+          throw new IllegalStateException("failed");
+        })).recover(
+            IllegalStateException.class,
+            leaf(c -> out.add("recover:" + c.thrownException().getMessage()))
+        ).ensure(
+            simple("ensure", c -> out.add("ensure"))),
+        retry(simple("flaky", c -> {
+          out.add("flaky");
+          if (failures.getAndIncrement() < 1)
+            throw new IllegalStateException();
+        })).on(IllegalStateException.class).times(2).withIntervalOf(1, MILLISECONDS).$(),
+        timeout(simple("quick", c -> out.add("quick"))).in(10, SECONDS)));
+  }
+
+  /**
+   * Removes times spent, which are printed in records like {@code [o:3]}, and
+   * identities of lambdas, which differ between trees.
+   */
+  private static List<String> withoutTimes(Writer.Impl writer) {
+    List<String> ret = new ArrayList<>();
+    for (String each : writer)
+      ret.add(each.replaceAll(":[0-9]+]", ":]").replaceAll("@[0-9a-f]+", "@"));
+    return ret;
+  }
+
+  private static List<String> asArrayList(String... values) {
+    return Stream.of(values).collect(toList());
+  }
+}
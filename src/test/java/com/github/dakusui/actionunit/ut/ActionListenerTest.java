@@ -0,0 +1,194 @@
+package com.github.dakusui.actionunit.ut;
+
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.exceptions.ActionTimeOutException;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.ActionListener;
+import com.github.dakusui.actionunit.visitors.ActionPath;
+import com.github.dakusui.actionunit.visitors.ReportingActionPerformer;
+import com.github.dakusui.actionunit.visitors.SimpleActionPerformer;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.named;
+import static com.github.dakusui.actionunit.core.ActionSupport.parallel;
+import static com.github.dakusui.actionunit.core.ActionSupport.retry;
+import static com.github.dakusui.actionunit.core.ActionSupport.sequential;
+import static com.github.dakusui.actionunit.core.ActionSupport.simple;
+import static com.github.dakusui.actionunit.core.ActionSupport.timeout;
+import static com.github.dakusui.crest.Crest.asBoolean;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asListOf;
+import static com.github.dakusui.crest.Crest.asString;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
+
+public class ActionListenerTest extends TestUtils.TestBase {
+  @Test
+  public void givenNestedActions$whenPerformed$thenStartAndSuccessAreNotifiedWithPaths() {
+    List<String> events = new LinkedList<>();
+    SimpleActionPerformer performer = SimpleActionPerformer.create();
+    performer.eventBus().register(new ActionListener() {
+      @Override
+      public void onStart(ActionPath path, Context context) {
+        events.add("start:" + path);
+      }
+
+      @Override
+      public void onSuccess(ActionPath path, Context context, long timeSpentInNanos) {
+        events.add(String.format("success:%s:%s", path.depth(), path.action()));
+      }
+    });
+
+    performer.perform(named("root", simple("child", c -> {
+    })));
+
+    assertThat(events, asListOf(String.class).equalTo(asList(
+        "start:root",
+        "start:root > child",
+        "start:root > child > (noname)",
+        "success:2:(noname)",
+        "success:1:child",
+        "success:0:root")).$());
+  }
+
+  @Test
+  public void givenFailingActionUnderRetry$whenPerformed$thenRetriesAndFailuresAreNotified() {
+    List<String> events = Collections.synchronizedList(new LinkedList<>());
+    SimpleActionPerformer performer = SimpleActionPerformer.create();
+    performer.eventBus().register(new ActionListener() {
+      @Override
+      public void onFailure(ActionPath path, Context context, long timeSpentInNanos, Throwable t) {
+        events.add(String.format("failure:%s", path.action()));
+      }
+
+      @Override
+      public void onRetry(ActionPath path, Context context, int retry, Throwable t) {
+        events.add("retry:" + retry + ":" + t.getMessage());
+      }
+    });
+    Action action = retry(named("fail", simple("throw", c -> {
+      throw new IllegalStateException("failed");
+    }))).on(IllegalStateException.class).times(2).withIntervalOf(1, MILLISECONDS).$();
+
+    try {
+      performer.perform(action);
+    } catch (IllegalStateException ignored) {
+    }
+
+    assertThat(
+        events.stream().filter(e -> !e.startsWith("failure:throw") && !e.startsWith("failure:(noname)")).collect(toList()),
+        asListOf(String.class).equalTo(asList(
+            "failure:fail",
+            "retry:1:failed",
+            "failure:fail",
+            "retry:2:failed",
+            "failure:fail",
+            String.format("failure:%s", action))).$());
+  }
+
+  @Test
+  public void givenSlowActionUnderTimeOut$whenPerformed$thenTimeOutIsNotified() {
+    List<String> events = Collections.synchronizedList(new LinkedList<>());
+    SimpleActionPerformer performer = SimpleActionPerformer.create();
+    performer.eventBus().register(new ActionListener() {
+      @Override
+      public void onTimeout(ActionPath path, Context context, ActionTimeOutException e) {
+        events.add(String.format("timeout:%s", path.action()));
+      }
+    });
+    Action action = timeout(simple("sleep", c -> {
+      try {
+        MILLISECONDS.sleep(1_000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    })).in(10, MILLISECONDS);
+
+    try {
+      performer.perform(action);
+    } catch (ActionTimeOutException ignored) {
+    }
+
+    assertThat(events, asListOf(String.class).equalTo(Collections.singletonList(String.format("timeout:%s", action))).$());
+  }
+
+  @Test
+  public void givenParallelActions$whenPerformed$thenChildrenPathsStartFromParent() {
+    List<ActionPath> paths = Collections.synchronizedList(new LinkedList<>());
+    SimpleActionPerformer performer = SimpleActionPerformer.create();
+    performer.eventBus().register(new ActionListener() {
+      @Override
+      public void onStart(ActionPath path, Context context) {
+        if (path.depth() == 1)
+          paths.add(path);
+      }
+    });
+    Action root = parallel(
+        simple("a", c -> sleep()),
+        simple("b", c -> sleep()),
+        simple("c", c -> sleep()));
+
+    performer.perform(root);
+
+    assertThat(paths.size(), asInteger().equalTo(3).$());
+    for (ActionPath each : paths)
+      assertThat(each.parent().action() == root, asBoolean().isTrue().$());
+  }
+
+  @Test
+  public void givenReportingPerformerWithAnotherListener$whenPerformed$thenBothObserveActions() {
+    AtomicInteger successes = new AtomicInteger();
+    ReportingActionPerformer performer = ReportingActionPerformer.create();
+    performer.eventBus().register(new ActionListener() {
+      @Override
+      public void onSuccess(ActionPath path, Context context, long timeSpentInNanos) {
+        successes.incrementAndGet();
+      }
+    });
+    List<String> report = new LinkedList<>();
+
+    performer.performAndReport(sequential(simple("a", c -> {
+    }), simple("b", c -> {
+    })), report::add);
+
+    // sequential, a, (noname), b, (noname)
+    assertThat(successes.get(), asInteger().equalTo(5).$());
+    assertThat(String.join("\n", report), asString().containsString("[o:0]a").$());
+  }
+
+  @Test
+  public void givenListenerUnregistered$whenPerformed$thenNotNotified() {
+    AtomicInteger starts = new AtomicInteger();
+    ActionListener listener = new ActionListener() {
+      @Override
+      public void onStart(ActionPath path, Context context) {
+        starts.incrementAndGet();
+      }
+    };
+    SimpleActionPerformer performer = SimpleActionPerformer.create();
+    performer.eventBus().register(listener);
+    performer.eventBus().unregister(listener);
+
+    performer.perform(simple("a", c -> {
+    }));
+
+    assertThat(starts.get(), asInteger().equalTo(0).$());
+    assertThat(performer.eventBus().isEmpty(), asBoolean().isTrue().$());
+  }
+
+  private static void sleep() {
+    try {
+      MILLISECONDS.sleep(10);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,243 @@
+package com.github.dakusui.actionunit.ut;
+
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.exceptions.ActionTimeOutException;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.AsyncActionPerformer;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.attempt;
+import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
+import static com.github.dakusui.actionunit.core.ActionSupport.leaf;
+import static com.github.dakusui.actionunit.core.ActionSupport.repeatWhile;
+import static com.github.dakusui.actionunit.core.ActionSupport.retry;
+import static com.github.dakusui.actionunit.core.ActionSupport.sequential;
+import static com.github.dakusui.actionunit.core.ActionSupport.simple;
+import static com.github.dakusui.actionunit.core.ActionSupport.timeout;
+import static com.github.dakusui.actionunit.core.ActionSupport.when;
+import static com.github.dakusui.crest.Crest.asBoolean;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asListOf;
+import static com.github.dakusui.crest.Crest.asObject;
+import static com.github.dakusui.crest.Crest.asString;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class AsyncActionPerformerTest extends TestUtils.TestBase {
+  @Test
+  public void givenSequentialActions$whenPerformed$thenPerformedInOrder() throws Exception {
+    List<String> out = Collections.synchronizedList(new LinkedList<>());
+    Action action = sequential(
+        simple("hello", c -> out.add("hello")),
+        forEach("i", c -> Stream.of("a", "b")).perform(leaf(c -> out.add(c.valueOf("i")))),
+        when(c -> true).perform(simple("then", c -> out.add("then"))).otherwise(simple("else", c -> out.add("else"))));
+
+    AsyncActionPerformer.create().perform(action).get();
+
+    assertThat(out, asListOf(String.class).equalTo(asList("hello", "a", "b", "then")).$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenManyRetryingIterations$whenPerformedOnSingleThread$thenBackOffsDoNotHoldTheThread() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Set<Object> failedOnce = ConcurrentHashMap.newKeySet();
+      // 100 iterations back off for 500ms each. Run one by one, they would take 50 seconds.
+      Action action = forEach("i", c -> IntStream.range(0, 100).boxed()).parallelly().perform(
+          retry(leaf(c -> {
+            if (failedOnce.add(c.valueOf("i")))
+              throw new IllegalStateException();
+          })).times(1).withIntervalOf(500, MILLISECONDS).$());
+
+      long before = System.nanoTime();
+      AsyncActionPerformer.create(executor).perform(action).get();
+
+      assertThat(failedOnce.size(), asInteger().equalTo(100).$());
+      assertThat(MILLISECONDS.convert(System.nanoTime() - before, TimeUnit.NANOSECONDS) < 5_000, asBoolean().isTrue().$());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void givenFailFastParallelForEach$whenIterationFails$thenSiblingsAreInterruptedAndSkipped() throws Exception {
+    AtomicInteger performed = new AtomicInteger();
+    Action action = forEach("i", c -> IntStream.range(0, 100).boxed()).parallelly(2).failFast().perform(
+        leaf(c -> {
+          performed.incrementAndGet();
+          if ((Integer) c.valueOf("i") == 1)
+            throw new IllegalStateException("fail");
+          try {
+            SECONDS.sleep(30);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }));
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      AsyncActionPerformer.create(executor).perform(action).get();
+      throw new AssertionError("Not thrown");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause().getMessage(), asObject().equalTo("fail").$());
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(performed.get(), asInteger().lt(10).$());
+  }
+
+  @Test
+  public void givenFailingAction$whenAttempted$thenRecoveredAndEnsured() throws Exception {
+    List<String> out = Collections.synchronizedList(new LinkedList<>());
+    Action action = attempt(simple("fail", c -> {
+      throw new IllegalStateException("failed");
+    })).recover(
+        IllegalStateException.class,
+        leaf(c -> out.add("recover:" + c.thrownException().getMessage()))
+    ).ensure(
+        simple("ensure", c -> out.add("ensure")));
+
+    AsyncActionPerformer.create().perform(action).get();
+
+    assertThat(out, asListOf(String.class).equalTo(asList("recover:failed", "ensure")).$());
+  }
+
+  @Test
+  public void givenFailingAction$whenPerformed$thenFutureFailsWithItsException() throws InterruptedException {
+    AtomicBoolean ensured = new AtomicBoolean();
+    Action action = attempt(sequential(
+        simple("fail", c -> {
+          throw new IllegalStateException("failed");
+        }),
+        simple("never", c -> {
+          throw new AssertionError();
+        })
+    )).ensure(simple("ensure", c -> ensured.set(true)));
+
+    Throwable thrown = null;
+    try {
+      AsyncActionPerformer.create().perform(action).get();
+    } catch (ExecutionException e) {
+      thrown = e.getCause();
+    }
+
+    assertThat(thrown, asObject("getMessage").equalTo("failed").$());
+    assertThat(ensured.get(), asBoolean().isTrue().$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenSlowLeaf$whenTimeOutPasses$thenFutureFailsAndLeafIsInterrupted() throws InterruptedException {
+    CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+    Action action = timeout(simple("sleep", c -> {
+      try {
+        SECONDS.sleep(10);
+        interrupted.complete(false);
+      } catch (InterruptedException e) {
+        interrupted.complete(true);
+      }
+    })).in(100, MILLISECONDS);
+
+    Throwable thrown = null;
+    try {
+      AsyncActionPerformer.create().perform(action).get();
+    } catch (ExecutionException e) {
+      thrown = e.getCause();
+    }
+
+    assertThat(thrown instanceof ActionTimeOutException, asBoolean().isTrue().$());
+    // Same as the one ActionPerformer throws through InternalUtils.runWithTimeout.
+    assertThat(thrown.getMessage(), asString().equalTo(String.format("Action: <%s>;  with message: <null>", action)).$());
+    assertThat(interrupted.join(), asBoolean().isTrue().$());
+  }
+
+  @Test
+  public void givenDefaultPerformer$whenLeafPerformed$thenNotRunInCommonPool() throws Exception {
+    CompletableFuture<String> threadName = new CompletableFuture<>();
+    Action action = leaf(c -> threadName.complete(Thread.currentThread().getName()));
+
+    AsyncActionPerformer.create().perform(action).get();
+
+    assertThat(threadName.join(), asString().startsWith("actionunit-async-leaf-").$());
+  }
+
+  @Test
+  public void givenLongLoopOfSynchronousLeaves$whenPerformed$thenStackDoesNotOverflow() throws Exception {
+    AtomicInteger counter = new AtomicInteger();
+    Action action = repeatWhile(c -> counter.get() < 100_000)
+        .perform(leaf(c -> counter.incrementAndGet()))
+        .build();
+
+    AsyncActionPerformer.create(Runnable::run).perform(action).get();
+
+    assertThat(counter.get(), asInteger().equalTo(100_000).$());
+  }
+
+  @Test
+  public void givenParallelForEachWithParallelism$whenPerformed$thenAtMostThatManyRunAtOnce() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    Action action = forEach("i", c -> IntStream.range(0, 20).boxed()).parallelly(3).perform(
+        leaf(c -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          try {
+            MILLISECONDS.sleep(10);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          } finally {
+            running.decrementAndGet();
+          }
+        }));
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      AsyncActionPerformer.create(executor).perform(action).get();
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(maxRunning.get(), asInteger().equalTo(3).$());
+  }
+
+  @Test
+  public void givenParallelForEachWithoutParallelism$whenPerformed$thenAtMostMaxInFlightRunAtOnce() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    Action action = forEach("i", c -> IntStream.range(0, 50).boxed()).parallelly().perform(
+        leaf(c -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          try {
+            MILLISECONDS.sleep(10);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          } finally {
+            running.decrementAndGet();
+          }
+        }));
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      AsyncActionPerformer.create(executor, 4).perform(action).get();
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(maxRunning.get(), asInteger().equalTo(4).$());
+  }
+}
@@ -0,0 +1,165 @@
+package com.github.dakusui.actionunit.ut;
+
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.context.CachePolicy;
+import com.github.dakusui.actionunit.core.context.CachedContextFunction;
+import com.github.dakusui.actionunit.core.context.ContextConsumer;
+import com.github.dakusui.actionunit.core.context.ContextFunction;
+import com.github.dakusui.actionunit.core.context.StreamGenerator;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.ReportingActionPerformer;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
+import static com.github.dakusui.actionunit.core.ActionSupport.leaf;
+import static com.github.dakusui.actionunit.core.ActionSupport.sequential;
+import static com.github.dakusui.actionunit.core.context.ContextFunctions.cached;
+import static com.github.dakusui.actionunit.core.context.ContextFunctions.cachedStream;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asListOf;
+import static com.github.dakusui.crest.Crest.asLong;
+import static com.github.dakusui.crest.Crest.asString;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+public class CachedContextFunctionTest extends TestUtils.TestBase {
+  @Test
+  public void givenRepeatedKeys$whenPerformedInLoop$thenFunctionIsAppliedOncePerKey() {
+    AtomicInteger invocations = new AtomicInteger();
+    CachedContextFunction<String> cached = cached(lookup(invocations), CachePolicy.DEFAULT, "i");
+
+    perform(forEach("i", c -> Stream.of("a", "b", "a", "a", "b")).perform(use(cached)));
+
+    assertThat(invocations.get(), asInteger().equalTo(2).$());
+    assertThat(cached.misses(), asLong().equalTo(2L).$());
+    assertThat(cached.hits(), asLong().equalTo(3L).$());
+  }
+
+  @Test
+  public void givenTimeToLive$whenExpired$thenFunctionIsAppliedAgain() {
+    AtomicInteger invocations = new AtomicInteger();
+    CachedContextFunction<String> cached = cached(lookup(invocations), CachePolicy.of(10, MILLISECONDS, 16), "i");
+
+    perform(forEach("i", c -> Stream.of("a", "a")).perform(use(cached)));
+    sleep(20);
+    perform(forEach("i", c -> Stream.of("a")).perform(use(cached)));
+
+    assertThat(invocations.get(), asInteger().equalTo(2).$());
+  }
+
+  @Test
+  public void givenMaximumSizeOne$whenKeysAlternate$thenLeastRecentlyUsedIsEvicted() {
+    AtomicInteger invocations = new AtomicInteger();
+    CachedContextFunction<String> cached = cached(lookup(invocations), CachePolicy.lru(1), "i");
+
+    perform(forEach("i", c -> Stream.of("a", "b", "a", "a")).perform(use(cached)));
+
+    assertThat(invocations.get(), asInteger().equalTo(3).$());
+  }
+
+  @Test
+  public void givenSlowFunction$whenEvaluatedConcurrentlyForSameKey$thenAppliedOnlyOnce() {
+    AtomicInteger invocations = new AtomicInteger();
+    CachedContextFunction<String> cached = cached(
+        ContextFunction.of(() -> "slowLookup", c -> {
+          invocations.incrementAndGet();
+          sleep(50);
+          return "value";
+        }),
+        CachePolicy.DEFAULT);
+    List<String> out = Collections.synchronizedList(new LinkedList<>());
+
+    perform(forEach("i", c -> Stream.of(1, 2, 3, 4, 5, 6, 7, 8))
+        .parallelly()
+        .perform(leaf(ContextConsumer.of(cached::toString, c -> out.add(cached.apply(c))))));
+
+    assertThat(invocations.get(), asInteger().equalTo(1).$());
+    assertThat(out.size(), asInteger().equalTo(8).$());
+    assertThat(cached.hits(), asLong().equalTo(7L).$());
+  }
+
+  @Test
+  public void givenFailingFunction$whenEvaluatedAgain$thenFailureIsNotCached() {
+    AtomicInteger invocations = new AtomicInteger();
+    CachedContextFunction<String> cached = cached(
+        ContextFunction.of(() -> "failingLookup", c -> {
+          if (invocations.incrementAndGet() == 1)
+            throw new RuntimeException("temporary");
+          return "value";
+        }),
+        CachePolicy.DEFAULT,
+        "i");
+    Action action = forEach("i", c -> Stream.of("a")).perform(use(cached));
+
+    try {
+      perform(action);
+    } catch (RuntimeException ignored) {
+    }
+    perform(action);
+
+    assertThat(invocations.get(), asInteger().equalTo(2).$());
+  }
+
+  @Test
+  public void givenCachedStream$whenUsedInNestedLoop$thenGeneratedOnceAndElementsAreReplayed() {
+    AtomicInteger invocations = new AtomicInteger();
+    AtomicInteger closed = new AtomicInteger();
+    StreamGenerator<String> generator = cachedStream(
+        c -> {
+          invocations.incrementAndGet();
+          return Stream.of("x", "y").onClose(closed::incrementAndGet);
+        },
+        CachePolicy.DEFAULT);
+    List<String> out = new LinkedList<>();
+
+    perform(forEach("i", c -> Stream.of(1, 2, 3)).perform(
+        forEach("j", generator).perform(
+            leaf(c -> out.add(c.valueOf("j"))))));
+
+    assertThat(invocations.get(), asInteger().equalTo(1).$());
+    assertThat(closed.get(), asInteger().equalTo(1).$());
+    assertThat(out, asListOf(String.class).equalTo(Stream.of("x", "y", "x", "y", "x", "y").collect(Collectors.toList())).$());
+  }
+
+  @Test
+  public void givenCachedFunction$whenReported$thenHitsAndMissesArePrinted() {
+    CachedContextFunction<String> cached = cached(lookup(new AtomicInteger()), CachePolicy.DEFAULT, "i");
+    List<String> report = new LinkedList<>();
+
+    ReportingActionPerformer.create().performAndReport(
+        forEach("i", c -> Stream.of("a", "a")).perform(sequential(use(cached))),
+        report::add);
+
+    assertThat(String.join("\n", report), asString().containsString("cached[hits=1, misses=1](lookup)").$());
+  }
+
+  private static ContextFunction<String> lookup(AtomicInteger invocations) {
+    return ContextFunction.of(() -> "lookup", c -> {
+      invocations.incrementAndGet();
+      return c.valueOf("i").toString().toUpperCase();
+    });
+  }
+
+  private static Action use(CachedContextFunction<String> cached) {
+    return leaf(ContextConsumer.of(cached::toString, cached::apply));
+  }
+
+  private static void perform(Action action) {
+    action.accept(TestUtils.createActionPerformer());
+  }
+
+  private static void sleep(long millis) {
+    try {
+      MILLISECONDS.sleep(millis);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,287 @@
+package com.github.dakusui.actionunit.ut;
+
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Cancellation;
+import com.github.dakusui.actionunit.exceptions.ActionCancelledException;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.ActionCompiler;
+import com.github.dakusui.actionunit.visitors.ActionPerformer;
+import com.github.dakusui.actionunit.visitors.AsyncActionPerformer;
+import com.github.dakusui.actionunit.visitors.CompiledAction;
+import com.github.dakusui.actionunit.visitors.ReportingActionPerformer;
+import com.github.dakusui.actionunit.visitors.SimpleActionPerformer;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.cmd;
+import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
+import static com.github.dakusui.actionunit.core.ActionSupport.leaf;
+import static com.github.dakusui.actionunit.core.ActionSupport.parallel;
+import static com.github.dakusui.actionunit.core.ActionSupport.repeatWhile;
+import static com.github.dakusui.actionunit.core.ActionSupport.retry;
+import static com.github.dakusui.actionunit.core.ActionSupport.simple;
+import static com.github.dakusui.crest.Crest.asBoolean;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asLong;
+import static com.github.dakusui.crest.Crest.asObject;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class CancellationTest extends TestUtils.TestBase {
+  @Test(timeout = 10_000)
+  public void givenRunawayWhile$whenCancelled$thenStops() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    Action action = repeatWhile(c -> true)
+        .perform(leaf(c -> started.countDown()))
+        .build();
+
+    Throwable thrown = performAndCancel(SimpleActionPerformer.create(), action, started);
+
+    assertThat(thrown, asObject().isInstanceOf(ActionCancelledException.class).$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenLoopOverEndlessStream$whenCancelled$thenStops() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    Action action = forEach("i", c -> Stream.iterate(0, i -> i + 1))
+        .perform(leaf(c -> started.countDown()));
+
+    Throwable thrown = performAndCancel(SimpleActionPerformer.create(), action, started);
+
+    assertThat(thrown, asObject().isInstanceOf(ActionCancelledException.class).$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenParallelLoopOverEndlessStream$whenCancelled$thenStops() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    Action action = forEach("i", c -> Stream.iterate(0, i -> i + 1))
+        .parallelly(4)
+        .perform(leaf(c -> started.countDown()));
+
+    Throwable thrown = performAndCancel(SimpleActionPerformer.create(), action, started);
+
+    assertThat(thrown, asObject().isInstanceOf(ActionCancelledException.class).$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenRetryBackingOff$whenCancelled$thenStopsWithoutNextAttempt() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    AtomicInteger attempts = new AtomicInteger();
+    Action action = retry(simple("flaky", c -> {
+      attempts.incrementAndGet();
+      started.countDown();
+      throw new IllegalStateException();
+    })).on(IllegalStateException.class).times(10).withIntervalOf(30, SECONDS).$();
+    ReportingActionPerformer performer = ReportingActionPerformer.create();
+
+    Throwable thrown = performAndCancel(performer, action, started);
+
+    assertThat(thrown, asObject().isInstanceOf(ActionCancelledException.class).$());
+    assertThat(attempts.get(), asInteger().equalTo(1).$());
+    assertThat(performer.getReport().get(action).cancellationCount(), asLong().equalTo(1L).$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenLeafCheckingContext$whenCancelled$thenLeafSeesIt() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    AtomicBoolean seen = new AtomicBoolean();
+    Action action = parallel(
+        leaf(c -> {
+          started.countDown();
+          while (!c.cancelled())
+            Thread.yield();
+          seen.set(true);
+        }));
+
+    performAndCancel(SimpleActionPerformer.create(), action, started);
+
+    assertThat(seen.get(), asBoolean().isTrue().$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenRunningCommand$whenCancelled$thenProcessIsDestroyed() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    Action action = parallel(
+        leaf(c -> started.countDown()),
+        cmd("sleep 30").toAction());
+
+    long before = System.nanoTime();
+    performAndCancel(SimpleActionPerformer.create(), action, started);
+
+    assertThat(System.nanoTime() - before < SECONDS.toNanos(10), asBoolean().isTrue().$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenLoopsOverCommandOutput$whenPerformedRepeatedly$thenNoHookIsLeft() {
+    Cancellation token = Cancellation.create();
+    AtomicReference<Cancellation> contextToken = new AtomicReference<>();
+    Action sequential = forEach("i", cmd("echo hello && echo world").toStreamGenerator())
+        .perform(leaf(c -> contextToken.set(c.cancellation())));
+    Action parallel = forEach("i", cmd("echo hello && echo world").toStreamGenerator())
+        .parallelly()
+        .perform(leaf(c -> {
+        }));
+    SimpleActionPerformer performer = SimpleActionPerformer.create();
+    CompiledAction compiled = ActionCompiler.create().compile(parallel);
+
+    for (int i = 0; i < 3; i++)
+      token.run(() -> {
+        performer.perform(sequential);
+        performer.perform(parallel);
+        compiled.perform();
+      });
+    AsyncActionPerformer.create().perform(sequential).join();
+
+    assertThat(token.numberOfHooks(), asInteger().equalTo(0).$());
+    assertThat(contextToken.get().numberOfHooks(), asInteger().equalTo(0).$());
+  }
+
+  @Test
+  public void givenTokenTree$whenParentCancelled$thenChildAndItsHooksAreCancelled() {
+    Cancellation parent = Cancellation.create();
+    Cancellation child = parent.createChild();
+    AtomicInteger hooked = new AtomicInteger();
+    child.onCancel(hooked::incrementAndGet);
+    Cancellation.Registration unregistered = child.onCancel(hooked::incrementAndGet);
+    unregistered.close();
+
+    parent.cancel();
+
+    assertThat(child.isCancelled(), asBoolean().isTrue().$());
+    assertThat(hooked.get(), asInteger().equalTo(1).$());
+    // A hook registered after cancellation is run immediately.
+    child.onCancel(hooked::incrementAndGet);
+    assertThat(hooked.get(), asInteger().equalTo(2).$());
+  }
+
+  @Test
+  public void givenClosedChild$whenParentCancelled$thenChildHooksAreNotRun() {
+    Cancellation parent = Cancellation.create();
+    Cancellation child = parent.createChild();
+    AtomicInteger hooked = new AtomicInteger();
+    child.onCancel(hooked::incrementAndGet);
+    child.close();
+
+    parent.cancel();
+
+    assertThat(hooked.get(), asInteger().equalTo(0).$());
+    assertThat(child.isCancelled(), asBoolean().isTrue().$());
+  }
+
+  /**
+   * Performs {@code action} on another thread, cancels the performer once
+   * {@code started} is counted down, and returns an exception thrown by the
+   * performer, or {@code null}.
+   */
+  @Test(timeout = 10_000)
+  public void givenRunawayWhile$whenAsyncPerformerCancelled$thenStops() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    Action action = repeatWhile(c -> true)
+        .perform(leaf(c -> started.countDown()))
+        .build();
+
+    Throwable thrown = performAndCancel(AsyncActionPerformer.create(), action, started);
+
+    assertThat(thrown, asObject().isInstanceOf(ActionCancelledException.class).$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenRetryBackingOff$whenAsyncPerformerCancelled$thenStopsWithoutNextAttempt() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    AtomicInteger attempts = new AtomicInteger();
+    Action action = retry(simple("flaky", c -> {
+      attempts.incrementAndGet();
+      started.countDown();
+      throw new IllegalStateException();
+    })).on(IllegalStateException.class).times(10).withIntervalOf(30, SECONDS).$();
+
+    Throwable thrown = performAndCancel(AsyncActionPerformer.create(), action, started);
+
+    assertThat(thrown, asObject().isInstanceOf(ActionCancelledException.class).$());
+    assertThat(attempts.get(), asInteger().equalTo(1).$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenRunningCommand$whenAsyncPerformerCancelled$thenProcessIsDestroyed() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    Action action = parallel(
+        leaf(c -> started.countDown()),
+        cmd("sleep 30").toAction());
+
+    long before = System.nanoTime();
+    performAndCancel(AsyncActionPerformer.create(), action, started);
+
+    assertThat(System.nanoTime() - before < SECONDS.toNanos(10), asBoolean().isTrue().$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenRunawayWhile$whenCompiledActionCancelled$thenStopsAndCanBePerformedAgain() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    AtomicInteger runs = new AtomicInteger();
+    CompiledAction compiled = ActionCompiler.create().compile(
+        repeatWhile(c -> runs.get() < 2)
+            .perform(leaf(c -> {
+              started.countDown();
+              if (runs.get() > 0)
+                runs.incrementAndGet();
+            }))
+            .build());
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Throwable thrown = null;
+    try {
+      Future<?> future = executor.submit(compiled::perform);
+      started.await();
+      compiled.cancel();
+      future.get();
+    } catch (ExecutionException e) {
+      thrown = e.getCause();
+    } finally {
+      executor.shutdownNow();
+    }
+    runs.incrementAndGet();
+    compiled.perform();
+
+    assertThat(thrown, asObject().isInstanceOf(ActionCancelledException.class).$());
+    assertThat(runs.get(), asInteger().equalTo(2).$());
+  }
+
+  private static Throwable performAndCancel(AsyncActionPerformer performer, Action action, CountDownLatch started) throws Exception {
+    CompletableFuture<Void> future = performer.perform(action);
+    started.await();
+    performer.cancel();
+    try {
+      future.join();
+      return null;
+    } catch (CompletionException e) {
+      return e.getCause();
+    }
+  }
+
+  private static Throwable performAndCancel(ActionPerformer performer, Action action, CountDownLatch started) throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> future = executor.submit(() -> performer.perform(action));
+      started.await();
+      performer.cancel();
+      try {
+        future.get();
+        return null;
+      } catch (ExecutionException e) {
+        return e.getCause();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -17,6 +17,7 @@ import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
 import static com.github.dakusui.actionunit.core.ActionSupport.leaf;
 import static com.github.dakusui.actionunit.core.context.ContextFunctions.multiParamsConsumerFor;
 import static com.github.dakusui.actionunit.core.context.ContextFunctions.contextValueOf;
+import static com.github.dakusui.crest.Crest.asInteger;
 import static com.github.dakusui.crest.Crest.asString;
 import static com.github.dakusui.crest.Crest.assertThat;
 import static com.github.dakusui.printables.Printables.printableConsumer;
@@ -53,6 +54,15 @@ public class ContextFunctionsHelperUnitTest {
     );
   }
 
+  @Test
+  public void givenNoParamNames$whenCreateParams$thenEmpty() {
+    Params params = Params.create(Context.create());
+    assertThat(
+        params.paramNames(),
+        asInteger("size").equalTo(0).$()
+    );
+  }
+
   @Test
   public void test2() {
     Context context = Context.create().assignTo("i", 0);
@@ -0,0 +1,108 @@
+package com.github.dakusui.actionunit.ut;
+
+import com.github.dakusui.actionunit.core.Context;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+import static com.github.dakusui.crest.Crest.asBoolean;
+import static com.github.dakusui.crest.Crest.asObject;
+import static com.github.dakusui.crest.Crest.asString;
+import static com.github.dakusui.crest.Crest.assertThat;
+
+@RunWith(Parameterized.class)
+public class ContextTest {
+  private final Context.Type type;
+
+  public ContextTest(Context.Type type) {
+    this.type = type;
+  }
+
+  @Parameterized.Parameters(name = "{0}")
+  public static Collection<Object[]> types() {
+    return Arrays.asList(new Object[][] { { Context.Type.MAP }, { Context.Type.FLAT } });
+  }
+
+  @Test
+  public void givenVariableInParent$whenValueOfInChild$thenParentValueReturned() {
+    Context parent = Context.create(type).assignTo("a", "hello");
+    Context child = parent.createChild();
+
+    assertThat(child.<String>valueOf("a"), asString().equalTo("hello").$());
+    assertThat(child.defined("a"), asBoolean().isTrue().$());
+  }
+
+  @Test
+  public void givenVariableAssignedInChild$whenValueOf$thenChildShadowsParent() {
+    Context parent = Context.create(type).assignTo("a", "hello");
+    Context child = parent.createChild().assignTo(Context.Slot.of("a"), "world");
+
+    assertThat(child.<String>valueOf(Context.Slot.of("a")), asString().equalTo("world").$());
+    assertThat(parent.<String>valueOf("a"), asString().equalTo("hello").$());
+  }
+
+  @Test
+  public void givenVariableReassigned$whenValueOf$thenLatestValueReturned() {
+    Context context = Context.create(type)
+        .assignTo("a", "hello")
+        .assignTo("b", "!")
+        .assignTo("a", "world");
+
+    assertThat(context.<String>valueOf("a"), asString().equalTo("world").$());
+    assertThat(context.<String>valueOf("b"), asString().equalTo("!").$());
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void givenUndefinedVariable$whenValueOf$thenNoSuchElement() {
+    Context context = Context.create(type).createChild();
+
+    assertThat(context.defined("undefined"), asBoolean().isFalse().$());
+    context.valueOf("undefined");
+  }
+
+  @Test
+  public void givenExceptionInParent$whenThrownExceptionInChild$thenNotReturnedButWasThrown() {
+    Context parent = Context.create(type).assignTo(Context.Impl.ONGOING_EXCEPTION, new RuntimeException());
+    Context child = parent.createChild();
+
+    assertThat(child.thrownException(), asObject().isNull().$());
+    assertThat(child.wasExceptionThrown(), asBoolean().isTrue().$());
+  }
+
+  @Test
+  public void givenVariablesInParentAndChild$whenChildCleared$thenOnlyParentVariablesRemain() {
+    Context parent = Context.create(type).assignTo("a", "hello");
+    Context child = parent.createChild()
+        .assignTo("a", "world")
+        .assignTo("b", "!");
+
+    assertThat(child.tryClear(), asBoolean().isTrue().$());
+    assertThat(child.<String>valueOf("a"), asString().equalTo("hello").$());
+    assertThat(child.defined("b"), asBoolean().isFalse().$());
+    assertThat(parent.<String>valueOf("a"), asString().equalTo("hello").$());
+  }
+
+  @Test
+  public void givenClearedContext$whenAssignedAgain$thenNewValueReturned() {
+    Context context = Context.create(type).createChild().assignTo("a", "hello");
+    context.tryClear();
+    context.assignTo("a", "world");
+
+    assertThat(context.<String>valueOf("a"), asString().equalTo("world").$());
+  }
+
+  @Test
+  public void givenVariableAssignedByNameNeverResolved$whenLookedUpBySlotResolvedLater$thenFound() {
+    String name = "dynamic-" + type + "-" + System.nanoTime();
+    Context context = Context.create(type).assignTo(name, "hello");
+    Context child = context.createChild().assignTo(Context.Slot.of(name), "world");
+
+    assertThat(context.<String>valueOf(Context.Slot.of(name)), asString().equalTo("hello").$());
+    assertThat(child.<String>valueOf(name), asString().equalTo("world").$());
+    assertThat(context.toString(), asString().containsString(name + "=hello").$());
+  }
+}
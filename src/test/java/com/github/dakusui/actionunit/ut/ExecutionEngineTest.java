@@ -0,0 +1,222 @@
+package com.github.dakusui.actionunit.ut;
+
+import com.github.dakusui.actionunit.actions.Composite;
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.ExecutionEngine;
+import com.github.dakusui.actionunit.visitors.ReportingActionPerformer;
+import com.github.dakusui.actionunit.visitors.SimpleActionPerformer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
+import static com.github.dakusui.actionunit.core.ActionSupport.parallel;
+import static com.github.dakusui.actionunit.core.ActionSupport.simple;
+import static com.github.dakusui.actionunit.core.context.StreamGenerator.fromCollection;
+import static com.github.dakusui.crest.Crest.allOf;
+import static com.github.dakusui.crest.Crest.asBoolean;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asListOf;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static org.junit.Assume.assumeNoException;
+
+public class ExecutionEngineTest extends TestUtils.TestBase {
+  private ExecutorService executorService;
+
+  @Before
+  public void setUp() {
+    this.executorService = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    this.executorService.shutdownNow();
+  }
+
+  @Test
+  public void givenParallelCompositeWithLimitedParallelism$whenPerformedByDedicatedEngine$thenLimitIsRespected() {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    List<String> out = Collections.synchronizedList(new LinkedList<>());
+    Action action = new Composite.Builder(
+        IntStream.range(0, 8)
+            .mapToObj(i -> simple("task-" + i, c -> {
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              sleepQuietly();
+              out.add("task-" + i);
+              running.decrementAndGet();
+            }))
+            .collect(Collectors.toList()))
+        .parallel(2)
+        .build();
+
+    action.accept(SimpleActionPerformer.create(ExecutionEngine.dedicated(executorService)));
+
+    assertThat(out.size(), asInteger().equalTo(8).$());
+    assertThat(maxRunning.get(), asInteger().le(2).$());
+  }
+
+  @Test(timeout = 5_000)
+  public void givenNestedParallelComposites$whenPerformedBySingleThreadedEngine$thenNoDeadlock() {
+    ExecutorService singleThreaded = Executors.newSingleThreadExecutor();
+    List<String> out = Collections.synchronizedList(new LinkedList<>());
+    try {
+      Action action = parallel(
+          parallel(
+              simple("a-1", c -> out.add("a-1")),
+              simple("a-2", c -> out.add("a-2"))),
+          parallel(
+              simple("b-1", c -> out.add("b-1")),
+              simple("b-2", c -> out.add("b-2"))));
+      action.accept(SimpleActionPerformer.create(ExecutionEngine.dedicated(singleThreaded)));
+    } finally {
+      singleThreaded.shutdownNow();
+    }
+    assertThat(
+        new LinkedList<>(out),
+        allOf(
+            asInteger("size").equalTo(4).$(),
+            asListOf(String.class).contains("a-1").contains("a-2").contains("b-1").contains("b-2").$()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void givenFailingChild$whenPerformedByDedicatedEngine$thenExceptionPropagated() {
+    Action action = parallel(
+        simple("pass", c -> {
+        }),
+        simple("fail", c -> {
+          throw new IllegalStateException("fail");
+        }));
+    action.accept(SimpleActionPerformer.create(ExecutionEngine.dedicated(executorService)));
+  }
+
+  @Test
+  public void givenParallelForEach$whenPerformedByForkJoinEngine$thenAllIterationsPerformed() {
+    ForkJoinPool pool = new ForkJoinPool(2);
+    List<Integer> out = Collections.synchronizedList(new LinkedList<>());
+    try {
+      Action action = forEach(
+          "i",
+          fromCollection(IntStream.range(0, 100).boxed().collect(Collectors.toList())))
+          .parallelly()
+          .perform(simple("add", c -> out.add(c.valueOf("i"))));
+      ReportingActionPerformer.create(ExecutionEngine.forkJoin(pool)).perform(action);
+    } finally {
+      pool.shutdownNow();
+    }
+    assertThat(out.size(), asInteger().equalTo(100).$());
+  }
+
+  /**
+   * Runs only on Java 21 or later, e.g., with {@code mvn -Pjdk21 verify}.
+   */
+  @Test(timeout = 10_000)
+  public void givenVirtualThreadsEngine$whenPerformedRepeatedly$thenAllIterationsRunOnVirtualThreads() throws Exception {
+    try {
+      ExecutionEngine.virtualThreads();
+    } catch (UnsupportedOperationException e) {
+      assumeNoException(e);
+    }
+    Method isVirtual = Thread.class.getMethod("isVirtual");
+    Thread caller = Thread.currentThread();
+    List<Boolean> out = Collections.synchronizedList(new LinkedList<>());
+    Action action = forEach(
+        "i",
+        fromCollection(IntStream.range(0, 100).boxed().collect(Collectors.toList())))
+        .parallelly()
+        .perform(simple("record", c -> {
+          // The caller works on tasks, too.
+          if (Thread.currentThread() != caller)
+            out.add(isVirtual(isVirtual, Thread.currentThread()));
+        }));
+
+    for (int i = 0; i < 3; i++)
+      SimpleActionPerformer.create(ExecutionEngine.virtualThreads()).perform(action);
+
+    assertThat(out.isEmpty() || out.contains(false), asBoolean().isFalse().$());
+  }
+
+  private static boolean isVirtual(Method isVirtual, Thread thread) {
+    try {
+      return (boolean) isVirtual.invoke(thread);
+    } catch (ReflectiveOperationException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void givenUnlimitedParallelForEach$whenPerformedByForkJoinEngine$thenThreadsAreBoundedByPool() {
+    ForkJoinPool pool = new ForkJoinPool(2);
+    Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    try {
+      Action action = forEach("i", c -> IntStream.range(0, 200).boxed())
+          .parallelly()
+          .perform(simple("sleep", c -> {
+            threads.add(Thread.currentThread());
+            sleepQuietly();
+          }));
+      SimpleActionPerformer.create(ExecutionEngine.forkJoin(pool)).perform(action);
+      // The calling thread and as many threads of the pool as its parallelism.
+      assertThat(threads.size(), asInteger().le(3).$());
+      assertThat(pool.getPoolSize(), asInteger().le(2).$());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void givenParallelComposite$whenCallerOfForkJoinEngineIsInterrupted$thenTaskOnPoolIsInterrupted() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(2);
+    CountDownLatch started = new CountDownLatch(2);
+    AtomicInteger interrupted = new AtomicInteger();
+    Action sleeper = simple("sleep", c -> {
+      started.countDown();
+      try {
+        TimeUnit.SECONDS.sleep(30);
+      } catch (InterruptedException e) {
+        interrupted.incrementAndGet();
+        Thread.currentThread().interrupt();
+      }
+    });
+    Thread caller = new Thread(() -> {
+      try {
+        SimpleActionPerformer.create(ExecutionEngine.forkJoin(pool)).perform(parallel(sleeper, sleeper));
+      } catch (RuntimeException ignored) {
+      }
+    });
+    try {
+      caller.start();
+      started.await();
+      caller.interrupt();
+      caller.join();
+      pool.awaitQuiescence(10, TimeUnit.SECONDS);
+      assertThat(interrupted.get(), asInteger().equalTo(2).$());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static void sleepQuietly() {
+    try {
+      Thread.sleep(10);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
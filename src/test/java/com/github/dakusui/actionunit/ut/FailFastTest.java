@@ -0,0 +1,179 @@
+package com.github.dakusui.actionunit.ut;
+
+import com.github.dakusui.actionunit.actions.Composite;
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.io.Writer;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.ActionCompiler;
+import com.github.dakusui.actionunit.visitors.ExecutionEngine;
+import com.github.dakusui.actionunit.visitors.ReportingActionPerformer;
+import com.github.dakusui.actionunit.visitors.SimpleActionPerformer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.cmd;
+import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
+import static com.github.dakusui.actionunit.core.ActionSupport.named;
+import static com.github.dakusui.actionunit.core.ActionSupport.retry;
+import static com.github.dakusui.actionunit.core.ActionSupport.simple;
+import static com.github.dakusui.crest.Crest.asBoolean;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asLong;
+import static com.github.dakusui.crest.Crest.asString;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class FailFastTest extends TestUtils.TestBase {
+  @Test(timeout = 10_000)
+  public void givenFailFastComposite$whenChildFails$thenSleepingSiblingIsCancelledAndRecordedSo() {
+    CountDownLatch sleeping = new CountDownLatch(1);
+    Action sleeper = simple("sleep", c -> {
+      sleeping.countDown();
+      sleepSeconds(30);
+    });
+    Action action = failFastComposite(sleeper, failAfter(sleeping));
+    ReportingActionPerformer performer = ReportingActionPerformer.create();
+
+    try {
+      performer.perform(action);
+      throw new AssertionError("Not thrown");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), asString().equalTo("fail").$());
+    }
+
+    assertThat(performer.getReport().get(sleeper).cancellationCount(), asLong().equalTo(1L).$());
+    assertThat(performer.getReport().get(sleeper).toString(), asString().startsWith("C").$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenFailFastComposite$whenChildFails$thenRetryingSiblingStopsBackingOff() {
+    CountDownLatch retrying = new CountDownLatch(1);
+    AtomicInteger attempts = new AtomicInteger();
+    Action action = failFastComposite(
+        retry(simple("flaky", c -> {
+          attempts.incrementAndGet();
+          retrying.countDown();
+          throw new IllegalArgumentException();
+        })).on(IllegalArgumentException.class).times(10).withIntervalOf(30, SECONDS).$(),
+        failAfter(retrying));
+
+    try {
+      SimpleActionPerformer.create().perform(action);
+      throw new AssertionError("Not thrown");
+    } catch (IllegalStateException ignored) {
+    }
+
+    assertThat(attempts.get(), asInteger().equalTo(1).$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenFailFastComposite$whenChildFails$thenProcessOfSiblingIsDestroyed() {
+    CountDownLatch started = new CountDownLatch(1);
+    Action action = failFastComposite(
+        simple("started", c -> started.countDown()),
+        cmd("sleep 30").toAction(),
+        failAfter(started));
+
+    long before = System.nanoTime();
+    try {
+      SimpleActionPerformer.create().perform(action);
+      throw new AssertionError("Not thrown");
+    } catch (IllegalStateException ignored) {
+    }
+
+    assertThat(System.nanoTime() - before < SECONDS.toNanos(10), asBoolean().isTrue().$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenFailFastForEach$whenIterationFails$thenQueuedIterationsAreSkipped() {
+    AtomicInteger performed = new AtomicInteger();
+    Action action = forEach("i", c -> IntStream.range(0, 1_000).boxed())
+        .parallelly(2)
+        .failFast()
+        .perform(simple("run", c -> {
+          performed.incrementAndGet();
+          if ((Integer) c.valueOf("i") == 0)
+            throw new IllegalStateException("fail");
+          sleepSeconds(30);
+        }));
+
+    try {
+      ReportingActionPerformer.create().performAndReport(action, Writer.Std.OUT);
+      throw new AssertionError("Not thrown");
+    } catch (IllegalStateException ignored) {
+    }
+
+    assertThat(performed.get(), asInteger().lt(10).$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenCompiledFailFastComposite$whenChildFails$thenSiblingIsCancelled() {
+    CountDownLatch sleeping = new CountDownLatch(1);
+    Action action = failFastComposite(
+        simple("sleep", c -> {
+          sleeping.countDown();
+          sleepSeconds(30);
+        }),
+        failAfter(sleeping));
+
+    try {
+      ActionCompiler.create(ExecutionEngine.DEFAULT).compile(action).perform();
+      throw new AssertionError("Not thrown");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), asString().equalTo("fail").$());
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void givenCompositeNotFailFast$whenChildFails$thenSiblingRunsToCompletion() {
+    CountDownLatch sleeping = new CountDownLatch(1);
+    AtomicBoolean finished = new AtomicBoolean();
+    Action action = new Composite.Builder(Arrays.asList(
+        simple("sleep", c -> {
+          sleeping.countDown();
+          sleepSeconds(1);
+          finished.set(true);
+        }),
+        failAfter(sleeping))).parallel().build();
+
+    try {
+      SimpleActionPerformer.create().perform(action);
+      throw new AssertionError("Not thrown");
+    } catch (IllegalStateException ignored) {
+    }
+
+    assertThat(finished.get(), asBoolean().isTrue().$());
+    assertThat(String.format("%s", failFastComposite(action)), asString().equalTo("do parallelly (fail-fast)").$());
+  }
+
+  private static Action failFastComposite(Action... children) {
+    return new Composite.Builder(Arrays.asList(children)).parallel().failFast().build();
+  }
+
+  private static Action failAfter(CountDownLatch latch) {
+    return named("fail", simple("fail", c -> {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      throw new IllegalStateException("fail");
+    }));
+  }
+
+  /**
+   * Sleeps for {@code seconds}, but stops and throws when interrupted.
+   */
+  private static void sleepSeconds(int seconds) {
+    try {
+      SECONDS.sleep(seconds);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package com.github.dakusui.actionunit.ut;
+
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.io.Writer;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.ActionMetrics;
+import com.github.dakusui.actionunit.visitors.MetricsRegistry;
+import com.github.dakusui.actionunit.visitors.SimpleActionPerformer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.cmd;
+import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
+import static com.github.dakusui.actionunit.core.ActionSupport.named;
+import static com.github.dakusui.actionunit.core.ActionSupport.retry;
+import static com.github.dakusui.actionunit.core.ActionSupport.simple;
+import static com.github.dakusui.actionunit.core.ActionSupport.timeout;
+import static com.github.dakusui.crest.Crest.allOf;
+import static com.github.dakusui.crest.Crest.asListOf;
+import static com.github.dakusui.crest.Crest.asLong;
+import static com.github.dakusui.crest.Crest.asString;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
+
+public class MetricsRegistryTest extends TestUtils.TestBase {
+  @Test
+  public void givenNamedActions$whenPerformed$thenOutcomesAreCountedByName() {
+    MetricsRegistry registry = MetricsRegistry.create();
+
+    performIgnoringExceptions(registry, forEach("i", c -> Stream.of(1, 2, 3)).perform(named("check", simple("noop", c -> {
+    }))));
+    performIgnoringExceptions(registry, named("check", simple("assert", c -> {
+      throw new AssertionError("failed");
+    })));
+    performIgnoringExceptions(registry, named("check", simple("throw", c -> {
+      throw new IllegalStateException("error");
+    })));
+
+    assertThat(
+        registry.metricsFor("check", ActionMetrics.Type.NAMED),
+        allOf(
+            asLong((ActionMetrics m) -> m.record().successCount()).equalTo(3L).$(),
+            asLong((ActionMetrics m) -> m.record().failureCount()).equalTo(1L).$(),
+            asLong((ActionMetrics m) -> m.record().errorCount()).equalTo(1L).$(),
+            asLong(ActionMetrics::inFlight).equalTo(0L).$()));
+    // Simple actions are named, too.
+    assertThat(
+        registry.metrics().stream().map(ActionMetrics::name).collect(toList()),
+        asListOf(String.class).equalTo(asList("assert", "check", "noop", "throw")).$());
+  }
+
+  @Test
+  public void givenRetryAndTimeOutInNamedAction$whenPerformed$thenCounted() {
+    MetricsRegistry registry = MetricsRegistry.create();
+
+    performIgnoringExceptions(registry, named("flaky", retry(simple("fail", c -> {
+      throw new IllegalStateException();
+    })).on(IllegalStateException.class).times(2).withIntervalOf(1, MILLISECONDS).$()));
+    performIgnoringExceptions(registry, named("slow", timeout(simple("sleep", c -> sleep(1_000))).in(10, MILLISECONDS)));
+
+    assertThat(
+        registry.metricsFor("flaky", ActionMetrics.Type.NAMED),
+        allOf(
+            asLong(ActionMetrics::retryCount).equalTo(2L).$(),
+            asLong((ActionMetrics m) -> m.record().errorCount()).equalTo(1L).$()));
+    assertThat(
+        registry.metricsFor("slow", ActionMetrics.Type.NAMED),
+        allOf(
+            asLong(ActionMetrics::timeoutCount).equalTo(1L).$(),
+            asLong((ActionMetrics m) -> m.record().errorCount()).equalTo(1L).$()));
+  }
+
+  @Test
+  public void givenDescribedCommand$whenPerformed$thenCommandIsTaggedWithDescription() {
+    MetricsRegistry registry = MetricsRegistry.create();
+
+    performIgnoringExceptions(registry, cmd("echo").add("hello").describe("greet").toAction());
+
+    assertThat(registry.metricsFor("greet", ActionMetrics.Type.COMMAND), asLong((ActionMetrics m) -> m.record().successCount()).equalTo(1L).$());
+    assertThat(registry.metricsFor("greet", ActionMetrics.Type.NAMED), asLong((ActionMetrics m) -> m.record().successCount()).equalTo(1L).$());
+  }
+
+  @Test
+  public void givenRecordedMetrics$whenWrittenToFile$thenPrometheusTextIsWritten() throws IOException {
+    MetricsRegistry registry = MetricsRegistry.create();
+    performIgnoringExceptions(registry, named("say \"hi\"", simple("noop", c -> {
+    })));
+    Path dir = Files.createTempDirectory("metrics-test-");
+    Path file = dir.resolve("actionunit.prom");
+
+    registry.writeTo(file);
+
+    List<String> lines = Files.readAllLines(file);
+    assertThat(
+        String.join("\n", lines),
+        asString()
+            .containsString("# TYPE actionunit_action_duration_seconds summary")
+            .containsString("actionunit_action_duration_seconds{name=\"say \\\"hi\\\"\",type=\"named\",quantile=\"0.99\"} ")
+            .containsString("actionunit_action_duration_seconds_count{name=\"say \\\"hi\\\"\",type=\"named\"} 1")
+            .containsString("actionunit_action_runs_total{name=\"say \\\"hi\\\"\",type=\"named\",outcome=\"success\"} 1")
+            .containsString("actionunit_action_in_flight{name=\"say \\\"hi\\\"\",type=\"named\"} 0")
+            .$());
+    // Only the exported file is left.
+    try (Stream<Path> files = Files.list(dir)) {
+      assertThat(files.count(), asLong().equalTo(1L).$());
+    }
+  }
+
+  @Test
+  public void givenRegistry$whenWrittenToWriter$thenEveryMetricHasHeader() {
+    MetricsRegistry registry = MetricsRegistry.create();
+    performIgnoringExceptions(registry, named("a", simple("noop", c -> {
+    })));
+    Writer.Impl writer = new Writer.Impl();
+
+    registry.writeTo(writer);
+
+    assertThat(
+        String.join("\n", writer),
+        asString()
+            .containsString("# TYPE actionunit_action_runs_total counter")
+            .containsString("# TYPE actionunit_action_retries_total counter")
+            .containsString("# TYPE actionunit_action_timeouts_total counter")
+            .containsString("# TYPE actionunit_action_in_flight gauge")
+            .$());
+  }
+
+  private static void performIgnoringExceptions(MetricsRegistry registry, Action action) {
+    SimpleActionPerformer performer = SimpleActionPerformer.create();
+    performer.eventBus().register(registry.listener());
+    try {
+      performer.perform(action);
+    } catch (RuntimeException | AssertionError ignored) {
+      // Exceptions thrown by actions are counted by the registry.
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      MILLISECONDS.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
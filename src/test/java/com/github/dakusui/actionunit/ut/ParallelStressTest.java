@@ -0,0 +1,135 @@
+package com.github.dakusui.actionunit.ut;
+
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.ActionCompiler;
+import com.github.dakusui.actionunit.visitors.ExecutionEngine;
+import com.github.dakusui.actionunit.visitors.ReportingActionPerformer;
+import com.github.dakusui.actionunit.visitors.SimpleActionPerformer;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.attempt;
+import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
+import static com.github.dakusui.actionunit.core.ActionSupport.leaf;
+import static com.github.dakusui.actionunit.core.ActionSupport.parallel;
+import static com.github.dakusui.actionunit.core.ActionSupport.repeatWhile;
+import static com.github.dakusui.actionunit.core.ActionSupport.retry;
+import static com.github.dakusui.actionunit.core.ActionSupport.sequential;
+import static com.github.dakusui.actionunit.core.ActionSupport.timeout;
+import static com.github.dakusui.actionunit.core.ActionSupport.when;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asListOf;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Performs every kind of action under parallel composites and loops many times
+ * over, and checks that each branch sees only its own variables and exceptions.
+ */
+public class ParallelStressTest extends TestUtils.TestBase {
+  private static final int ROUNDS   = 50;
+  private static final int BRANCHES = 16;
+
+  @Test(timeout = 60_000)
+  public void givenAttemptsInParallelComposite$whenPerformedBySimpleActionPerformer$thenNoInterference() {
+    stress(action -> SimpleActionPerformer.create().perform(action), this::parallelComposite);
+  }
+
+  @Test(timeout = 60_000)
+  public void givenAttemptsInParallelComposite$whenPerformedByReportingActionPerformer$thenNoInterference() {
+    stress(action -> ReportingActionPerformer.create().perform(action), this::parallelComposite);
+  }
+
+  @Test(timeout = 60_000)
+  public void givenAttemptsInParallelForEach$whenPerformedBySimpleActionPerformer$thenNoInterference() {
+    stress(action -> SimpleActionPerformer.create().perform(action), this::parallelForEach);
+  }
+
+  @Test(timeout = 60_000)
+  public void givenAttemptsInParallelComposite$whenCompiled$thenNoInterference() {
+    stress(action -> ActionCompiler.create(ExecutionEngine.DEFAULT).compile(action).perform(), this::parallelComposite);
+  }
+
+  private void stress(Consumer<Action> performer, ActionFactory factory) {
+    List<String> mismatches = Collections.synchronizedList(new LinkedList<>());
+    AtomicInteger completed = new AtomicInteger();
+    for (int i = 0; i < ROUNDS; i++)
+      performer.accept(factory.create(mismatches, completed));
+
+    assertThat(mismatches, asListOf(String.class).isEmpty().$());
+    assertThat(completed.get(), asInteger().equalTo(ROUNDS * BRANCHES).$());
+  }
+
+  private Action parallelComposite(List<String> mismatches, AtomicInteger completed) {
+    return parallel(IntStream.range(0, BRANCHES)
+        .mapToObj(i -> branch(c -> i, mismatches, completed))
+        .collect(toList()));
+  }
+
+  private Action parallelForEach(List<String> mismatches, AtomicInteger completed) {
+    return forEach("branch", c -> IntStream.range(0, BRANCHES).boxed())
+        .parallelly(BRANCHES)
+        .perform(branch(c -> (Integer) c.valueOf("branch"), mismatches, completed));
+  }
+
+  /**
+   * Returns an action that exercises every action type and reports to
+   * {@code mismatches} whenever it sees a value that belongs to another branch.
+   */
+  private static Action branch(BranchId id, List<String> mismatches, AtomicInteger completed) {
+    AtomicInteger attempts = new AtomicInteger();
+    AtomicInteger loops = new AtomicInteger();
+    return sequential(
+        attempt(leaf(c -> {
+          Thread.yield();
+          throw new IllegalStateException(String.valueOf(id.of(c)));
+        })).recover(
+            IllegalStateException.class,
+            leaf(c -> {
+              check(mismatches, "recover", id.of(c), c.thrownException().getMessage());
+              c.assignTo("recovered", id.of(c));
+            })
+        ).ensure(
+            leaf(c -> check(mismatches, "ensure", id.of(c), c.valueOf("recovered")))),
+        retry(timeout(leaf(c -> {
+          if (attempts.incrementAndGet() < 2)
+            throw new IllegalArgumentException();
+        })).in(10, SECONDS)).on(IllegalArgumentException.class).times(1).withIntervalOf(1, MILLISECONDS).$(),
+        repeatWhile(c -> loops.getAndIncrement() < 3)
+            .perform(forEach("j", c -> IntStream.range(0, 3).boxed())
+                .perform(leaf(c -> {
+                  // Variables assigned by 'recover' of any branch must not leak into the shared context.
+                  if (c.defined("recovered"))
+                    mismatches.add("forEach: leaked to " + id.of(c));
+                })))
+            .build(),
+        when(c -> id.of(c) >= 0)
+            .perform(leaf(c -> completed.incrementAndGet()))
+            .otherwise(leaf(c -> mismatches.add("when:" + id.of(c)))));
+  }
+
+  private static void check(List<String> mismatches, String where, int expected, Object actual) {
+    if (!String.valueOf(expected).equals(String.valueOf(actual)))
+      mismatches.add(String.format("%s: expected %s but was %s", where, expected, actual));
+  }
+
+  @FunctionalInterface
+  private interface BranchId {
+    int of(Context context);
+  }
+
+  @FunctionalInterface
+  private interface ActionFactory {
+    Action create(List<String> mismatches, AtomicInteger completed);
+  }
+}
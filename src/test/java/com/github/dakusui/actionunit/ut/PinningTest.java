@@ -0,0 +1,222 @@
+package com.github.dakusui.actionunit.ut;
+
+import com.github.dakusui.actionunit.actions.CircuitBreaker;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.ActionPerformer;
+import com.github.dakusui.actionunit.visitors.ExecutionEngine;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.github.dakusui.crest.Crest.asListOf;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static java.util.Arrays.asList;
+
+/**
+ * Checks that production classes don't use monitors ({@code synchronized}
+ * methods or blocks), which pin virtual threads to their carriers while they
+ * wait for processes run by leaves.
+ * <p>
+ * Classes in {@link PinningTest#ALLOWED} hold monitors only over short
+ * bookkeeping that never blocks, so they don't pin a carrier for long.
+ *
+ * @see ExecutionEngine#virtualThreads()
+ */
+public class PinningTest extends TestUtils.TestBase {
+  private static final int ACC_SYNCHRONIZED = 0x0020;
+  private static final int MONITORENTER     = 0xc2;
+
+  private static final List<String> ALLOWED = asList(
+      CircuitBreaker.Circuit.class.getName(),
+      "com.github.dakusui.actionunit.core.context.CachedContextFunction$Cache");
+
+  @Test
+  public void givenProductionClasses$whenScanned$thenNoMonitorIsUsedExceptAllowedOnes() throws IOException, URISyntaxException {
+    List<String> found = new LinkedList<>();
+    Path root = Paths.get(ActionPerformer.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    try (Stream<Path> classFiles = Files.walk(root)) {
+      for (Path each : (Iterable<Path>) classFiles.filter(p -> p.toString().endsWith(".class"))::iterator)
+        scan(className(root, each), found);
+    }
+    found.removeIf(each -> ALLOWED.contains(each.substring(0, each.indexOf('#'))));
+    assertThat(found, asListOf(String.class).isEmpty().$());
+  }
+
+  @Test
+  public void givenClassUsingMonitors$whenScanned$thenFound() throws IOException {
+    List<String> found = new LinkedList<>();
+    scan(CircuitBreaker.Circuit.class.getName(), found);
+    assertThat(
+        found,
+        asListOf(String.class).containsAll(asList(
+            CircuitBreaker.Circuit.class.getName() + "#state")).$());
+  }
+
+  private static String className(Path root, Path classFile) {
+    String relative = root.relativize(classFile).toString();
+    return relative.substring(0, relative.length() - ".class".length()).replace(classFile.getFileSystem().getSeparator(), ".");
+  }
+
+  /**
+   * Adds methods of the class that are synchronized or have a synchronized
+   * block to {@code found}.
+   *
+   * @return {@code false} if the class is not found.
+   */
+  private static boolean scan(String className, List<String> found) throws IOException {
+    try (InputStream is = PinningTest.class.getResourceAsStream("/" + className.replace('.', '/') + ".class")) {
+      if (is == null)
+        return false;
+      DataInputStream in = new DataInputStream(is);
+      in.readInt();   // magic
+      in.readInt();   // minor and major versions
+      String[] utf8 = readConstantPool(in);
+      in.skipBytes(6); // access flags, this class, super class
+      in.skipBytes(in.readUnsignedShort() * 2);
+      int fields = in.readUnsignedShort();
+      for (int i = 0; i < fields; i++) {
+        in.skipBytes(6);
+        skipAttributes(in);
+      }
+      int methods = in.readUnsignedShort();
+      for (int i = 0; i < methods; i++) {
+        int accessFlags = in.readUnsignedShort();
+        String name = utf8[in.readUnsignedShort()];
+        in.skipBytes(2);
+        boolean monitorEntered = false;
+        int attributes = in.readUnsignedShort();
+        for (int j = 0; j < attributes; j++) {
+          String attributeName = utf8[in.readUnsignedShort()];
+          int length = in.readInt();
+          if ("Code".equals(attributeName)) {
+            byte[] attribute = new byte[length];
+            in.readFully(attribute);
+            monitorEntered = hasMonitorEnter(attribute);
+          } else
+            in.skipBytes(length);
+        }
+        if ((accessFlags & ACC_SYNCHRONIZED) != 0 || monitorEntered)
+          found.add(className + "#" + name);
+      }
+      return true;
+    }
+  }
+
+  private static String[] readConstantPool(DataInputStream in) throws IOException {
+    int count = in.readUnsignedShort();
+    String[] ret = new String[count];
+    for (int i = 1; i < count; i++) {
+      int tag = in.readUnsignedByte();
+      switch (tag) {
+      case 1:
+        ret[i] = in.readUTF();
+        break;
+      case 5:
+      case 6:
+        in.skipBytes(8);
+        i++;
+        break;
+      case 7:
+      case 8:
+      case 16:
+      case 19:
+      case 20:
+        in.skipBytes(2);
+        break;
+      case 15:
+        in.skipBytes(3);
+        break;
+      default:
+        in.skipBytes(4);
+      }
+    }
+    return ret;
+  }
+
+  private static void skipAttributes(DataInputStream in) throws IOException {
+    int attributes = in.readUnsignedShort();
+    for (int i = 0; i < attributes; i++) {
+      in.skipBytes(2);
+      in.skipBytes(in.readInt());
+    }
+  }
+
+  /**
+   * Walks instructions in a {@code Code} attribute, whose code array starts at
+   * offset 8, so that operands are not mistaken for opcodes.
+   */
+  private static boolean hasMonitorEnter(byte[] attribute) {
+    int start = 8;
+    int end = start + readInt(attribute, 4);
+    for (int pc = start; pc < end; ) {
+      int opcode = attribute[pc] & 0xff;
+      if (opcode == MONITORENTER)
+        return true;
+      pc += instructionLength(attribute, start, pc, opcode);
+    }
+    return false;
+  }
+
+  private static int instructionLength(byte[] code, int start, int pc, int opcode) {
+    switch (opcode) {
+    case 0x10: // bipush
+    case 0x12: // ldc
+    case 0xa9: // ret
+    case 0xbc: // newarray
+      return 2;
+    case 0x11: // sipush
+    case 0x13: // ldc_w
+    case 0x14: // ldc2_w
+    case 0x84: // iinc
+    case 0xbb: // new
+    case 0xbd: // anewarray
+    case 0xc0: // checkcast
+    case 0xc1: // instanceof
+    case 0xc6: // ifnull
+    case 0xc7: // ifnonnull
+      return 3;
+    case 0xc5: // multianewarray
+      return 4;
+    case 0xb9: // invokeinterface
+    case 0xba: // invokedynamic
+    case 0xc8: // goto_w
+    case 0xc9: // jsr_w
+      return 5;
+    case 0xc4: // wide
+      return (code[pc + 1] & 0xff) == 0x84 ? 6 : 4;
+    case 0xaa: { // tableswitch
+      int operands = pc + 1 + (3 - (pc - start) % 4);
+      int low = readInt(code, operands + 4);
+      int high = readInt(code, operands + 8);
+      return operands - pc + 12 + (high - low + 1) * 4;
+    }
+    case 0xab: { // lookupswitch
+      int operands = pc + 1 + (3 - (pc - start) % 4);
+      return operands - pc + 8 + readInt(code, operands + 4) * 8;
+    }
+    default:
+      if (opcode >= 0x15 && opcode <= 0x19) // xload
+        return 2;
+      if (opcode >= 0x36 && opcode <= 0x3a) // xstore
+        return 2;
+      if (opcode >= 0x99 && opcode <= 0xa8) // if*, goto, jsr
+        return 3;
+      if (opcode >= 0xb2 && opcode <= 0xb8) // field accesses and invocations
+        return 3;
+      return 1;
+    }
+  }
+
+  private static int readInt(byte[] bytes, int offset) {
+    return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+  }
+}
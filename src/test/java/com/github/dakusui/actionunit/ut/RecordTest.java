@@ -0,0 +1,201 @@
+package com.github.dakusui.actionunit.ut;
+
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.exceptions.ActionCancelledException;
+import com.github.dakusui.actionunit.io.Writer;
+import com.github.dakusui.actionunit.visitors.ExecutionEngine;
+import com.github.dakusui.actionunit.visitors.Record;
+import com.github.dakusui.actionunit.visitors.ReportingActionPerformer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
+import static com.github.dakusui.actionunit.core.ActionSupport.sequential;
+import static com.github.dakusui.actionunit.core.ActionSupport.simple;
+import static com.github.dakusui.actionunit.core.context.StreamGenerator.fromContextWith;
+import static com.github.dakusui.crest.Crest.allOf;
+import static com.github.dakusui.crest.Crest.asBoolean;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asLong;
+import static com.github.dakusui.crest.Crest.asString;
+import static com.github.dakusui.crest.Crest.assertThat;
+
+public class RecordTest {
+  @Test
+  public void givenUnlimitedRecord$whenRunsRecorded$thenAllRunsAndStatisticsKept() {
+    Record record = new Record();
+    record.succeeded(1);
+    record.failed(2, new AssertionError());
+    record.failed(3, new RuntimeException());
+
+    assertThat(record.toString(), asString().equalTo("oFE:0").$());
+    assertThat(
+        record,
+        allOf(
+            asLong("count").equalTo(3L).$(),
+            asLong("successCount").equalTo(1L).$(),
+            asLong("failureCount").equalTo(1L).$(),
+            asLong("errorCount").equalTo(1L).$(),
+            asLong("timeSpentInMillis").equalTo(6L).$(),
+            asLong("minTimeSpentInNanos").equalTo(1_000_000L).$(),
+            asLong("maxTimeSpentInNanos").equalTo(3_000_000L).$(),
+            asBoolean("allFailing").isFalse().$()));
+  }
+
+  @Test
+  public void givenBoundedRecord$whenMoreRunsThanHistoryRecorded$thenOnlyLastRunsKeptButStatisticsAreComplete() {
+    Record record = new Record(3);
+    IntStream.range(0, 10).forEach(i -> record.succeeded(1));
+    record.failed(1, new RuntimeException());
+
+    assertThat(record.toString(), asString().equalTo("ooE:0").$());
+    assertThat(
+        record,
+        allOf(
+            asLong("count").equalTo(11L).$(),
+            asLong("successCount").equalTo(10L).$(),
+            asLong("timeSpentInMillis").equalTo(11L).$()));
+  }
+
+  @Test
+  public void givenCancelledRun$whenRecorded$thenMarkedAsCancelledNotAsError() {
+    Record record = new Record();
+    record.failed(1, new ActionCancelledException("cancelled"));
+    record.failed(1, new RuntimeException());
+
+    assertThat(record.toString(), asString().equalTo("CE:0").$());
+    assertThat(
+        record,
+        allOf(
+            asLong("count").equalTo(2L).$(),
+            asLong("cancellationCount").equalTo(1L).$(),
+            asLong("errorCount").equalTo(1L).$()));
+  }
+
+  @Test
+  public void givenBoundedRecordWrittenConcurrently$whenIterated$thenEachRunHasKindAndTimeOfSameRecording() {
+    Record record = new Record(16);
+    // A success always takes 1ms and an error always takes 2ms.
+    IntStream.range(0, 100_000).parallel().forEach(i -> {
+      if (i % 2 == 0)
+        record.succeeded(1);
+      else
+        record.failed(2, new RuntimeException());
+    });
+
+    record.forEach(run -> assertThat(
+        run.timeSpentInMillis(),
+        asLong().equalTo(run.succeeded() ? 1L : 2L).$()));
+  }
+
+  @Test
+  public void givenRunKnowingOnlyMillis$whenTimeSpentInNanos$thenDerivedFromMillis() {
+    Record.Run run = new Record.Run() {
+      @Override
+      public long timeSpentInMillis() {
+        return 3;
+      }
+
+      @Override
+      public boolean succeeded() {
+        return true;
+      }
+    };
+
+    assertThat(run.timeSpentInNanos(), asLong().equalTo(3_000_000L).$());
+  }
+
+  @Test
+  public void givenRecordWithoutHistory$whenFailuresRecorded$thenAllFailing() {
+    Record record = new Record(0);
+    record.failed(1, new AssertionError());
+
+    assertThat(record.toString(), asString().equalTo(":0").$());
+    assertThat(record.allFailing(), asBoolean().isTrue().$());
+  }
+
+  @Test
+  public void givenPerformerWithBoundedRecords$whenLoopPerformed$thenCountedCorrectly() {
+    Action leaf = simple("leaf", c -> {
+    });
+    Action action = forEach("i", fromContextWith(p -> IntStream.range(0, 1_000).boxed()))
+        .parallelly()
+        .perform(leaf);
+    ReportingActionPerformer performer = ReportingActionPerformer.create(ExecutionEngine.DEFAULT, () -> new Record(5));
+
+    performer.perform(action);
+
+    assertThat(performer.getReport().get(leaf).count(), asLong().equalTo(1_000L).$());
+  }
+
+  @Test
+  public void givenSequentialActions$whenPerformed$thenReportIteratedInOrderOfFirstRun() {
+    Action first = simple("first", c -> {
+    });
+    Action second = simple("second", c -> {
+    });
+    Action action = sequential(first, second, first);
+    ReportingActionPerformer performer = ReportingActionPerformer.create();
+
+    performer.perform(action);
+
+    List<Action> reported = new ArrayList<>(performer.getReport().keySet());
+    assertThat(
+        reported.indexOf(first) < reported.indexOf(second),
+        asBoolean().isTrue().$());
+    assertThat(performer.getReport().get(first).count(), asLong().equalTo(2L).$());
+  }
+
+  @Test
+  public void givenReport$whenEntriesRemovedAndCleared$thenNeitherIteratedNorCountedAnyMore() {
+    Action first = simple("first", c -> {
+    });
+    Action second = simple("second", c -> {
+    });
+    ReportingActionPerformer performer = ReportingActionPerformer.create();
+    performer.perform(sequential(first, second));
+    Map<Action, Record> report = performer.getReport();
+
+    report.remove(first);
+
+    assertThat(
+        new ArrayList<>(report.keySet()),
+        allOf(
+            asBoolean((List<Action> v) -> v.contains(first)).isFalse().$(),
+            asBoolean((List<Action> v) -> v.contains(second)).isTrue().$()));
+
+    report.clear();
+
+    assertThat(report.size(), asInteger().equalTo(0).$());
+    assertThat(report.entrySet().iterator().hasNext(), asBoolean().isFalse().$());
+  }
+
+  @Test
+  public void givenRunsOfVariousDurations$whenPercentiles$thenCloseToActualValues() {
+    Record record = new Record(0);
+    IntStream.rangeClosed(1, 100).forEach(i -> record.succeededInNanos(i * 1_000L));
+
+    assertThat(
+        record,
+        allOf(
+            asLong((Record r) -> r.percentileTimeSpentInNanos(50)).ge(50_000L).le(53_000L).$(),
+            asLong((Record r) -> r.percentileTimeSpentInNanos(99)).ge(99_000L).le(100_000L).$(),
+            asLong((Record r) -> r.percentileTimeSpentInNanos(100)).equalTo(100_000L).$(),
+            asLong("maxTimeSpentInNanos").equalTo(100_000L).$()));
+  }
+
+  @Test
+  public void givenPerformedAction$whenReportedVerbosely$thenPercentilesPrinted() {
+    Writer.Impl out = new Writer.Impl();
+    ReportingActionPerformer.create().performAndReport(simple("leaf", c -> {
+    }), out, true);
+
+    assertThat(
+        out.iterator().next(),
+        asString().matchesRegex("\\[o:0\\(n=1, p50=.+, p95=.+, p99=.+, max=.+\\)]leaf").$());
+  }
+}
@@ -13,10 +13,17 @@ import org.junit.Test;
 import org.junit.experimental.runners.Enclosed;
 import org.junit.runner.RunWith;
 
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import static com.github.dakusui.actionunit.core.ActionSupport.*;
 import static com.github.dakusui.crest.Crest.*;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 
 @RunWith(Enclosed.class)
 public class ReportingActionPerformerTest extends TestUtils.TestBase {
@@ -260,4 +267,86 @@ public class ReportingActionPerformerTest extends TestUtils.TestBase {
       ));
     }
   }
+
+  public static class LiveReport extends TestUtils.TestBase {
+    @Test
+    public void givenSequentialAction$whenPerformedLive$thenEventsAreWrittenInOrder() {
+      List<String> events = Collections.synchronizedList(new LinkedList<>());
+      List<String> summaries = Collections.synchronizedList(new LinkedList<>());
+
+      ReportingActionPerformer.create().performAndReportLive(
+          named("root", simple("hello", c -> {
+          })),
+          events::add,
+          summaries::add,
+          1, TimeUnit.HOURS);
+
+      assertThat(
+          events.stream().map(e -> e.replaceAll("duration=[^ ]+ ", "")).collect(toList()),
+          asListOf(String.class).equalTo(asList(
+              "event=enter thread=main action=root",
+              "event=enter thread=main action=hello",
+              "event=enter thread=main action=(noname)",
+              "event=leave thread=main result=success action=(noname)",
+              "event=leave thread=main result=success action=hello",
+              "event=leave thread=main result=success action=root")).$());
+      assertThat(summaries.get(0), asString().startsWith("---- finished in ").$());
+      assertThat(summaries.get(1), asString().equalTo("[o:0]root").$());
+    }
+
+    @Test
+    public void givenFailingAction$whenPerformedLive$thenFailureEventIsWritten() {
+      List<String> events = Collections.synchronizedList(new LinkedList<>());
+      try {
+        ReportingActionPerformer.create().performAndReportLive(
+            simple("fail", c -> {
+              throw new IllegalStateException();
+            }),
+            events::add,
+            s -> {
+            },
+            1, TimeUnit.HOURS);
+      } catch (IllegalStateException ignored) {
+      }
+
+      assertThat(
+          events.get(events.size() - 1),
+          asString().matchesRegex("event=leave thread=main result=failure duration=[^ ]+ exception=java.lang.IllegalStateException action=fail").$());
+    }
+
+    @Test
+    public void givenSlowAction$whenPerformedLive$thenSummaryIsRenderedWhileRunning() {
+      List<String> summaries = new CopyOnWriteArrayList<>();
+      List<String> renderedWhileRunning = new LinkedList<>();
+
+      ReportingActionPerformer.create().performAndReportLive(
+          sequential(
+              simple("first", c -> {
+              }),
+              simple("second", c -> {
+                long deadline = System.currentTimeMillis() + 5_000;
+                while (summaries.stream().noneMatch(s -> s.contains("[o:0]first")) && System.currentTimeMillis() < deadline)
+                  sleep(10);
+                renderedWhileRunning.addAll(summaries);
+              })),
+          s -> {
+          },
+          summaries::add,
+          20, TimeUnit.MILLISECONDS);
+
+      assertThat(
+          renderedWhileRunning,
+          allOf(
+              asListOf(String.class).contains("+-[o:0]first").$(),
+              asListOf(String.class).contains("+-[:0]second").$()));
+    }
+
+    private static void sleep(long millis) {
+      try {
+        TimeUnit.MILLISECONDS.sleep(millis);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
 }
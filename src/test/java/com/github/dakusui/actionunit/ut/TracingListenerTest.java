@@ -0,0 +1,147 @@
+package com.github.dakusui.actionunit.ut;
+
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.io.Writer;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.JsonSpanExporter;
+import com.github.dakusui.actionunit.visitors.SimpleActionPerformer;
+import com.github.dakusui.actionunit.visitors.Span;
+import com.github.dakusui.actionunit.visitors.TracingListener;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.cmd;
+import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
+import static com.github.dakusui.actionunit.core.ActionSupport.named;
+import static com.github.dakusui.actionunit.core.ActionSupport.retry;
+import static com.github.dakusui.actionunit.core.ActionSupport.simple;
+import static com.github.dakusui.actionunit.core.ActionSupport.timeout;
+import static com.github.dakusui.crest.Crest.allOf;
+import static com.github.dakusui.crest.Crest.asBoolean;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asObject;
+import static com.github.dakusui.crest.Crest.asString;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+
+public class TracingListenerTest extends TestUtils.TestBase {
+  @Test
+  public void givenRetryInLoop$whenPerformed$thenSpansFollowActionTree() {
+    Set<Object> failedOnce = ConcurrentHashMap.newKeySet();
+    Action action = forEach("host", c -> Stream.of("h1", "h2")).perform(
+        retry(timeout(named("clone", simple("git clone", c -> {
+          if (c.valueOf("host").equals("h2") && failedOnce.add(c.valueOf("host")))
+            throw new IllegalStateException("unreachable");
+        }))).in(1, SECONDS)).on(IllegalStateException.class).times(1).withIntervalOf(1, MILLISECONDS).$());
+
+    List<Span> spans = perform(action);
+
+    Span root = spans.get(spans.size() - 1);
+    assertThat(root.parentSpanId() == null, asBoolean().isTrue().$());
+    for (Span each : spans)
+      assertThat(each.traceId(), asString().equalTo(root.traceId()).$());
+    List<Span> clones = spansNamed(spans, "clone");
+    assertThat(clones.size(), asInteger().equalTo(3).$());
+    // forEach > retry > timeout > clone. h2's clone failed once and succeeded at the second attempt.
+    Span retried = clones.get(2);
+    Span timeOut = parentOf(spans, retried);
+    Span retry = parentOf(spans, timeOut);
+    assertThat(parentOf(spans, retry).spanId(), asString().equalTo(root.spanId()).$());
+    assertThat(
+        retry.attributes(),
+        allOf(
+            asString(m -> String.valueOf(((Map<?, ?>) m).get("actionunit.loop.variable"))).equalTo("host").$(),
+            asString(m -> String.valueOf(((Map<?, ?>) m).get("actionunit.loop.value"))).equalTo("h2").$(),
+            asString(m -> String.valueOf(((Map<?, ?>) m).get("actionunit.retry.count"))).equalTo("1").$()));
+    assertThat(timeOut.attributes().get("actionunit.retry.attempt"), asObject().equalTo(2).$());
+    assertThat(clones.get(1).status(), asObject().equalTo(Span.Status.ERROR).$());
+    assertThat(clones.get(1).attributes().get("exception.message"), asObject().equalTo("unreachable").$());
+    assertThat(retried.status(), asObject().equalTo(Span.Status.OK).$());
+  }
+
+  @Test
+  public void givenFailingCommand$whenPerformed$thenCommandLineAndExitCodeAreRecorded() {
+    List<Span> spans = perform(cmd("exit 3").toAction());
+
+    Optional<Span> command = spans.stream().filter(each -> each.attributes().containsKey("process.command_line")).findFirst();
+    assertThat(command.isPresent(), asBoolean().isTrue().$());
+    assertThat(
+        command.get().attributes(),
+        allOf(
+            asString(m -> String.valueOf(((Map<?, ?>) m).get("process.command_line"))).equalTo("exit 3").$(),
+            asString(m -> String.valueOf(((Map<?, ?>) m).get("process.exit_code"))).equalTo("3").$()));
+    assertThat(command.get().status(), asObject().equalTo(Span.Status.ERROR).$());
+  }
+
+  @Test
+  public void givenTimedOutAction$whenPerformed$thenMarked() {
+    List<Span> spans = perform(timeout(simple("sleep", c -> {
+      try {
+        SECONDS.sleep(1);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    })).in(10, MILLISECONDS));
+
+    Span root = spans.get(spans.size() - 1);
+    assertThat(root.attributes().get("actionunit.timed_out"), asObject().equalTo(true).$());
+  }
+
+  @Test
+  public void givenJsonExporter$whenSpanExported$thenOneLineOfJsonIsWritten() {
+    Writer.Impl writer = new Writer.Impl();
+    SimpleActionPerformer performer = SimpleActionPerformer.create();
+    performer.eventBus().register(new TracingListener(new JsonSpanExporter(writer)));
+
+    try {
+      performer.perform(named("say \"hi\"", simple("fail", c -> {
+        throw new IllegalStateException("line1\nline2");
+      })));
+    } catch (IllegalStateException ignored) {
+    }
+
+    // Lines are written in order spans end: (noname), fail, and say "hi"
+    String json = String.join("\n", writer);
+    assertThat(
+        json,
+        asString()
+            .matchesRegex("(?s)\\{\"traceId\":\"[0-9a-f]{32}\",\"spanId\":\"[0-9a-f]{16}\",\"parentSpanId\":\"[0-9a-f]{16}\",\"name\":\"\\(noname\\)\".*")
+            .containsString("\"name\":\"say \\\"hi\\\"\",\"startTimeUnixNano\":")
+            .containsString("\"status\":{\"code\":\"ERROR\",\"message\":\"line1\\nline2\"}")
+            .containsString("\"exception.type\":\"java.lang.IllegalStateException\"")
+            .$());
+    for (String each : writer)
+      assertThat(each, asString().startsWith("{\"traceId\":").$());
+  }
+
+  private static List<Span> perform(Action action) {
+    List<Span> spans = new CopyOnWriteArrayList<>();
+    SimpleActionPerformer performer = SimpleActionPerformer.create();
+    performer.eventBus().register(new TracingListener(spans::add));
+    try {
+      performer.perform(action);
+    } catch (RuntimeException ignored) {
+    }
+    return spans;
+  }
+
+  private static List<Span> spansNamed(List<Span> spans, String name) {
+    return spans.stream().filter(each -> each.name().equals(name)).collect(toList());
+  }
+
+  private static Span parentOf(List<Span> spans, Span span) {
+    for (Span each : spans)
+      if (each.spanId().equals(span.parentSpanId()))
+        return each;
+    throw new AssertionError("No parent for: " + span);
+  }
+}
@@ -0,0 +1,143 @@
+package com.github.dakusui.actionunit.ut.actions;
+
+import com.github.dakusui.actionunit.actions.CircuitBreaker;
+import com.github.dakusui.actionunit.actions.Composite;
+import com.github.dakusui.actionunit.actions.RetryOption;
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.exceptions.CircuitBreakerOpenException;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.ReportingActionPerformer;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.circuitBreaker;
+import static com.github.dakusui.actionunit.core.ActionSupport.simple;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asObject;
+import static com.github.dakusui.crest.Crest.asString;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+public class CircuitBreakerTest extends TestUtils.TestBase {
+  @Test
+  public void givenAlwaysFailingAction$whenPerformedRepeatedly$thenCircuitOpensAndActionIsNotPerformedAnymore() {
+    AtomicInteger attempts = new AtomicInteger();
+    CircuitBreaker.Circuit circuit = CircuitBreaker.Circuit.builder("host").minimumCalls(3).windowSize(5).openFor(1, HOURS).build();
+    Action action = circuitBreaker(failing(attempts)).circuit(circuit).$();
+
+    List<Class<?>> thrown = performRepeatedly(action, 5);
+
+    assertThat(attempts.get(), asInteger().equalTo(3).$());
+    assertThat(thrown.get(4), asObject().equalTo(CircuitBreakerOpenException.class).$());
+    assertThat(circuit.state(), asObject().equalTo(CircuitBreaker.Circuit.State.OPEN).$());
+  }
+
+  @Test
+  public void givenOpenCircuit$whenTrialSucceedsAfterOpenDuration$thenCircuitCloses() throws InterruptedException {
+    AtomicBoolean failing = new AtomicBoolean(true);
+    CircuitBreaker.Circuit circuit = CircuitBreaker.Circuit.builder("host").minimumCalls(1).openFor(10, MILLISECONDS).build();
+    Action action = circuitBreaker(simple("flaky", c -> {
+      if (failing.get())
+        throw new RuntimeException("down");
+    })).circuit(circuit).$();
+    performRepeatedly(action, 1);
+    failing.set(false);
+    MILLISECONDS.sleep(20);
+
+    assertThat(circuit.state(), asObject().equalTo(CircuitBreaker.Circuit.State.HALF_OPEN).$());
+    performRepeatedly(action, 1);
+    assertThat(circuit.state(), asObject().equalTo(CircuitBreaker.Circuit.State.CLOSED).$());
+  }
+
+  @Test
+  public void givenSameKey$whenActionsFail$thenStateIsShared() {
+    String key = "host-" + System.nanoTime();
+    AtomicInteger attempts = new AtomicInteger();
+    for (int i = 0; i < 10; i++)
+      performRepeatedly(circuitBreaker(failing(attempts)).key(key).$(), 1);
+
+    // Opens after 5 failures out of 5 calls with the default settings.
+    assertThat(attempts.get(), asInteger().equalTo(5).$());
+    assertThat(CircuitBreaker.Circuit.of(key).state(), asObject().equalTo(CircuitBreaker.Circuit.State.OPEN).$());
+  }
+
+  @Test
+  public void givenRetryOptionWithCircuit$whenCircuitOpen$thenNoRetriesMade() {
+    AtomicInteger attempts = new AtomicInteger();
+    CircuitBreaker.Circuit circuit = CircuitBreaker.Circuit.builder("host").minimumCalls(1).openFor(1, HOURS).build();
+    Action action = RetryOption.retryAndTimeOut(
+        failing(attempts),
+        RetryOption.builder().retries(2).retryInterval(1, MILLISECONDS).circuit(circuit).build());
+
+    performRepeatedly(action, 3);
+
+    // 1 attempt + 2 retries in the first run, then the circuit is open.
+    assertThat(attempts.get(), asInteger().equalTo(3).$());
+  }
+
+  @Test
+  public void givenCircuitBreaker$whenReported$thenStateIsPrinted() {
+    List<String> report = new LinkedList<>();
+    Action action = circuitBreaker(simple("ok", c -> {
+    })).circuit(CircuitBreaker.Circuit.builder("host").build()).$();
+
+    ReportingActionPerformer.create().performAndReport(action, report::add);
+
+    assertThat(report.get(0), asString().equalTo("[o:0]circuit breaker host(CLOSED, 0/1 failed)").$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenCircuitBreakerInFailFastComposite$whenCancelledBySibling$thenNotCountedAsFailure() {
+    CircuitBreaker.Circuit circuit = CircuitBreaker.Circuit.builder("host").minimumCalls(1).openFor(1, HOURS).build();
+    CountDownLatch sleeping = new CountDownLatch(1);
+    Action action = new Composite.Builder(asList(
+        circuitBreaker(simple("sleep", c -> {
+          sleeping.countDown();
+          try {
+            HOURS.sleep(1);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        })).circuit(circuit).$(),
+        simple("fail", c -> {
+          try {
+            sleeping.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          throw new IllegalStateException("fail");
+        }))).parallel().failFast().build();
+
+    performRepeatedly(action, 1);
+
+    assertThat(circuit.state(), asObject().equalTo(CircuitBreaker.Circuit.State.CLOSED).$());
+    assertThat(circuit.toString(), asString().equalTo("host(CLOSED, 0/0 failed)").$());
+  }
+
+  private static Action failing(AtomicInteger attempts) {
+    return simple("failing", c -> {
+      attempts.incrementAndGet();
+      throw new RuntimeException("down");
+    });
+  }
+
+  private static List<Class<?>> performRepeatedly(Action action, int times) {
+    List<Class<?>> ret = new LinkedList<>();
+    for (int i = 0; i < times; i++) {
+      try {
+        action.accept(TestUtils.createActionPerformer());
+        ret.add(null);
+      } catch (RuntimeException e) {
+        ret.add(e.getClass());
+      }
+    }
+    return ret;
+  }
+}
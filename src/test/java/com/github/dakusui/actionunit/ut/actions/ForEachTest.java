@@ -1,24 +1,40 @@
 package com.github.dakusui.actionunit.ut.actions;
 
 import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Context;
 import com.github.dakusui.actionunit.io.Writer;
 import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.ActionPerformer;
 import com.github.dakusui.actionunit.visitors.ReportingActionPerformer;
 import com.github.dakusui.crest.Crest;
 import org.junit.Test;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
 import static com.github.dakusui.actionunit.core.ActionSupport.sequential;
 import static com.github.dakusui.actionunit.core.ActionSupport.simple;
 import static com.github.dakusui.crest.Crest.allOf;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asBoolean;
 import static com.github.dakusui.crest.Crest.asListOf;
 import static com.github.dakusui.crest.Crest.asString;
 import static com.github.dakusui.crest.Crest.assertThat;
+import static java.util.stream.Collectors.toList;
 
 public class ForEachTest extends TestUtils.TestBase {
   @Test
@@ -82,4 +98,193 @@ public class ForEachTest extends TestUtils.TestBase {
             asListOf(String.class).contains("'!'").$()
         ));
   }
+
+  @Test
+  public void givenLargeStream$whenPerformedParallellyWithLimit$thenInFlightIterationsAreBounded() {
+    AtomicInteger pulled = new AtomicInteger();
+    AtomicInteger finished = new AtomicInteger();
+    AtomicInteger maxAhead = new AtomicInteger();
+    Action action = forEach(
+        "i",
+        (c) -> IntStream.range(0, 1_000).boxed().peek(i -> maxAhead.accumulateAndGet(pulled.incrementAndGet() - finished.get(), Math::max))
+    ).parallelly(3).perform(
+        simple("count", (c) -> finished.incrementAndGet()));
+
+    ReportingActionPerformer.create().perform(action);
+
+    assertThat(finished.get(), asInteger().equalTo(1_000).$());
+    // A task taken by a worker is counted as pulled until it finishes.
+    assertThat(maxAhead.get(), asInteger().le(3).$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenSlowProducer$whenPerformedParallelly$thenFirstIterationStartsBeforeNextElementIsProduced() {
+    CountDownLatch firstIterationStarted = new CountDownLatch(1);
+    List<String> out = Collections.synchronizedList(new LinkedList<>());
+    Iterator<String> producer = new Iterator<String>() {
+      int i = 0;
+
+      @Override
+      public boolean hasNext() {
+        if (i == 1)
+          // The second element is produced only after the first one is processed.
+          awaitUninterruptibly(firstIterationStarted);
+        return i < 2;
+      }
+
+      @Override
+      public String next() {
+        return "element-" + i++;
+      }
+    };
+    Action action = forEach(
+        "i",
+        (c) -> StreamSupport.stream(Spliterators.spliteratorUnknownSize(producer, 0), false)
+    ).parallelly(2).perform(
+        simple("add", (c) -> {
+          out.add(c.valueOf("i"));
+          firstIterationStarted.countDown();
+        }));
+
+    ReportingActionPerformer.create().perform(action);
+
+    assertThat(out.size(), asInteger().equalTo(2).$());
+  }
+
+  @Test
+  public void givenBodyAssigningVariable$whenPerformed$thenNextElementDoesNotSeeIt() {
+    List<String> out = new LinkedList<>();
+    Action action = forEach(
+        "i",
+        (c) -> Stream.of("a", "b", "c")
+    ).perform(
+        simple("assign", (c) -> {
+          out.add(c.valueOf("i") + ":" + c.defined("previous"));
+          c.assignTo("previous", c.valueOf("i"));
+        }));
+
+    ReportingActionPerformer.create().perform(action);
+
+    assertThat(out, asListOf(String.class).equalTo(Stream.of("a:false", "b:false", "c:false").collect(toList())).$());
+  }
+
+  @Test
+  public void givenUserContextNotSupportingClear$whenPerformed$thenNextElementDoesNotSeeVariables() {
+    List<String> out = new LinkedList<>();
+    Action action = forEach(
+        "i",
+        (c) -> Stream.of("a", "b", "c")
+    ).perform(
+        simple("assign", (c) -> {
+          out.add(c.valueOf("i") + ":" + c.defined("previous"));
+          c.assignTo("previous", c.valueOf("i"));
+        }));
+
+    new UserContextPerformer(new UserContext(null)).perform(action);
+
+    assertThat(out, asListOf(String.class).equalTo(Stream.of("a:false", "b:false", "c:false").collect(toList())).$());
+  }
+
+  @Test
+  public void givenParallelForEach$whenElementsInterleave$thenEachElementKeepsItsOwnValue() {
+    List<String> mismatches = Collections.synchronizedList(new LinkedList<>());
+    AtomicInteger performed = new AtomicInteger();
+    Action action = forEach(
+        "i",
+        (c) -> IntStream.range(0, 200).boxed()
+    ).parallelly(4).perform(
+        simple("check", (c) -> {
+          Integer before = c.valueOf("i");
+          Thread.yield();
+          Integer after = c.valueOf("i");
+          if (!before.equals(after))
+            mismatches.add(before + "->" + after);
+          performed.incrementAndGet();
+        }));
+
+    ReportingActionPerformer.create().perform(action);
+
+    assertThat(performed.get(), asInteger().equalTo(200).$());
+    assertThat(mismatches.isEmpty(), asBoolean().isTrue().$());
+  }
+
+  @Test
+  public void givenForEach$whenPerformed$thenOngoingExceptionsTableIsSharedByElements() {
+    Set<Object> tables = ConcurrentHashMap.newKeySet();
+    Action action = forEach(
+        "i",
+        (c) -> IntStream.range(0, 100).boxed()
+    ).parallelly(4).perform(
+        forEach(
+            "j",
+            (c) -> Stream.of(1, 2)
+        ).perform(
+            simple("collect", (c) -> tables.add(c.valueOf(ActionPerformer.ONGOING_EXCEPTIONS_TABLE_NAME)))));
+
+    ReportingActionPerformer.create().perform(action);
+
+    assertThat(tables.size(), asInteger().equalTo(1).$());
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static class UserContextPerformer extends ActionPerformer {
+    UserContextPerformer(Context context) {
+      super(context);
+    }
+
+    @Override
+    protected Action.Visitor newInstance(Context context) {
+      return new UserContextPerformer(context);
+    }
+  }
+
+  /**
+   * A context implemented by a user, which does not override {@link Context#tryClear()}.
+   */
+  private static class UserContext implements Context {
+    private final UserContext         parent;
+    private final Map<String, Object> variables = new HashMap<>();
+
+    UserContext(UserContext parent) {
+      this.parent = parent;
+    }
+
+    @Override
+    public Context createChild() {
+      return new UserContext(this);
+    }
+
+    @Override
+    public boolean defined(String variableName) {
+      return variables.containsKey(variableName) || (parent != null && parent.defined(variableName));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <V> V valueOf(String variableName) {
+      if (variables.containsKey(variableName))
+        return (V) variables.get(variableName);
+      if (parent != null)
+        return parent.valueOf(variableName);
+      throw new NoSuchElementException(variableName);
+    }
+
+    @Override
+    public Context assignTo(String variableName, Object value) {
+      variables.put(variableName, value);
+      return this;
+    }
+
+    @Override
+    public <T extends Throwable> T thrownException() {
+      return valueOf(Context.Impl.ONGOING_EXCEPTION);
+    }
+  }
 }
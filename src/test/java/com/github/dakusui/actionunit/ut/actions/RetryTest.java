@@ -1,6 +1,8 @@
 package com.github.dakusui.actionunit.ut.actions;
 
+import com.github.dakusui.actionunit.actions.Backoff;
 import com.github.dakusui.actionunit.actions.Retry;
+import com.github.dakusui.actionunit.actions.RetryBudget;
 import com.github.dakusui.actionunit.core.Action;
 import com.github.dakusui.actionunit.core.Context;
 import com.github.dakusui.actionunit.core.context.ContextConsumer;
@@ -12,13 +14,22 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
 
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static com.github.dakusui.actionunit.core.ActionSupport.nop;
 import static com.github.dakusui.actionunit.core.ActionSupport.retry;
 import static com.github.dakusui.actionunit.core.ActionSupport.simple;
 import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asListOf;
+import static com.github.dakusui.crest.Crest.asLong;
 import static com.github.dakusui.crest.Crest.asString;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.HOURS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
 
 public class RetryTest extends TestUtils.TestBase {
   @Rule
@@ -114,6 +125,69 @@ public class RetryTest extends TestUtils.TestBase {
     }
   }
 
+  @Test
+  public void givenExponentialBackoff$whenIntervalsComputed$thenDoubledUpToMax() {
+    Backoff backoff = Backoff.exponential(1, 8, MILLISECONDS);
+    List<Long> intervals = new LinkedList<>();
+    long interval = 0;
+    for (int i = 0; i < 6; i++)
+      intervals.add(interval = backoff.nextIntervalInNanos(i, interval));
+
+    Crest.assertThat(
+        intervals,
+        asListOf(Long.class).equalTo(asList(1L, 2L, 4L, 8L, 8L, 8L).stream().map(MILLISECONDS::toNanos).collect(toList())).$());
+  }
+
+  @Test
+  public void givenDecorrelatedJitterBackoff$whenIntervalsComputed$thenWithinBaseAndThreeTimesPrevious() {
+    Backoff backoff = Backoff.decorrelatedJitter(1, 100, MILLISECONDS);
+    long interval = 0;
+    for (int i = 0; i < 1_000; i++) {
+      long previous = Math.max(MILLISECONDS.toNanos(1), interval);
+      interval = backoff.nextIntervalInNanos(i, interval);
+      Crest.assertThat(
+          interval,
+          asLong().ge(MILLISECONDS.toNanos(1)).le(Math.min(MILLISECONDS.toNanos(100), previous * 3)).$());
+    }
+  }
+
+  @Test
+  public void givenRetryWithBackoff$whenFormatted$thenBackoffPrinted() {
+    Action action = retry(nop())
+        .backoff(Backoff.exponential(1, 60, SECONDS))
+        .times(3)
+        .build();
+
+    Crest.assertThat(
+        String.format("%s", action),
+        asString().equalTo("retry 3 times in 1 [seconds]..60 [seconds] (exponential) on Exception").$());
+  }
+
+  @Test
+  public void givenSharedRetryBudget$whenActionsKeepFailing$thenRetriesStopWhenBudgetExhausted() {
+    RetryBudget budget = RetryBudget.of(2, 1, HOURS);
+    AtomicInteger attempts = new AtomicInteger();
+    Action alwaysFailing = simple("always failing", c -> {
+      attempts.incrementAndGet();
+      throw new RuntimeException(testName.getMethodName());
+    });
+    for (int i = 0; i < 2; i++) {
+      try {
+        retry(alwaysFailing)
+            .on(RuntimeException.class)
+            .times(5)
+            .withIntervalOf(1, MILLISECONDS)
+            .budget(budget)
+            .build()
+            .accept(TestUtils.createActionPerformer());
+      } catch (RuntimeException ignored) {
+      }
+    }
+
+    // 1st action: 1 attempt + 2 retries, 2nd action: 1 attempt and no retry.
+    Crest.assertThat(attempts.get(), asInteger().equalTo(4).$());
+  }
+
   private <T extends Throwable, U extends RuntimeException> Action composeRetryAction(final TestUtils.Out out, Class<T> exceptionToBeCaught, final U exceptionToBeThrown) {
     return retry(
         simple(
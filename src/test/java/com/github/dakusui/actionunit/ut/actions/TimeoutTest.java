@@ -14,6 +14,7 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import static com.github.dakusui.actionunit.core.ActionSupport.*;
 import static com.github.dakusui.actionunit.ut.utils.TestUtils.createActionPerformer;
@@ -174,6 +175,64 @@ public class TimeoutTest extends TestUtils.TestBase {
     }
   }
 
+  @Test(expected = ActionTimeOutException.class)
+  public void givenParallelActionUnderTimeOut$whenTimedOut$thenChildrenOnOtherThreadsAreStoppedToo() {
+    Action action = timeout(
+        parallel(
+            sleepActionNotRestoringInterruption(2_000),
+            sleepActionNotRestoringInterruption(2_000),
+            sleepActionNotRestoringInterruption(2_000)
+        )
+    ).in(100, MILLISECONDS);
+    assertStopsAtDeadline(action);
+  }
+
+  @Test(expected = ActionTimeOutException.class)
+  public void givenParallelForEachUnderTimeOut$whenTimedOut$thenIterationsOnOtherThreadsAreStoppedToo() {
+    Action action = timeout(
+        forEach("i", c -> IntStream.range(0, 3).boxed())
+            .parallelly()
+            .perform(sleepActionNotRestoringInterruption(2_000))
+    ).in(100, MILLISECONDS);
+    assertStopsAtDeadline(action);
+  }
+
+  @Test
+  public void givenTimeOutNotReached$whenPerformed$thenRunOnCallerThreadAndNotInterrupted() {
+    List<Thread> threads = new ArrayList<>();
+    Action action = timeout(simple("record thread", c -> threads.add(currentThread()))).in(1, SECONDS);
+
+    action.accept(createActionPerformer());
+
+    assertThat(
+        threads,
+        allOf(
+            asInteger("size").equalTo(1).$(),
+            asObject("get", 0).equalTo(currentThread()).$()));
+    assertThat(currentThread().isInterrupted(), asBoolean().isFalse().$());
+  }
+
+  @Test
+  public void givenTimeOutReached$whenPerformed$thenInterruptionIsCleared() {
+    Action action = timeout(sleepAction(1_000)).in(10, MILLISECONDS);
+    try {
+      action.accept(createActionPerformer());
+    } catch (ActionTimeOutException e) {
+      assertThat(currentThread().isInterrupted(), asBoolean().isFalse().$());
+      return;
+    }
+    throw new AssertionError("ActionTimeOutException was not thrown");
+  }
+
+  private static void assertStopsAtDeadline(Action action) {
+    long before = System.currentTimeMillis();
+    try {
+      action.accept(createActionPerformer());
+    } finally {
+      assertThat(System.currentTimeMillis() - before, asLong().lt(1_000L).$());
+    }
+  }
+
   private Action sleepAction(long millis) {
     return simple(String.format("%d[millis]", millis), new ContextConsumer() {
       @Override
@@ -188,6 +247,21 @@ public class TimeoutTest extends TestUtils.TestBase {
     });
   }
 
+  /**
+   * Unlike {@link TimeoutTest#sleepAction(long)}, this does not set the
+   * interrupted flag again, so the interruption does not reach other threads
+   * through the calling one.
+   */
+  private Action sleepActionNotRestoringInterruption(long millis) {
+    return simple(String.format("%d[millis]", millis), context -> {
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+  }
+
   private Action print(String message) {
     return simple(String.format("print:'%s'", message),
         context -> printf(message)
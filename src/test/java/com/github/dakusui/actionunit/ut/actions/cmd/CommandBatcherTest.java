@@ -0,0 +1,207 @@
+package com.github.dakusui.actionunit.ut.actions.cmd;
+
+import com.github.dakusui.actionunit.actions.Composite;
+import com.github.dakusui.actionunit.actions.ForEach;
+import com.github.dakusui.actionunit.actions.cmd.CommandBatcher;
+import com.github.dakusui.actionunit.actions.cmd.CommandLeaf;
+import com.github.dakusui.actionunit.core.Action;
+import com.github.dakusui.actionunit.core.Context;
+import com.github.dakusui.actionunit.core.context.StreamGenerator;
+import com.github.dakusui.actionunit.exceptions.ActionTimeOutException;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import com.github.dakusui.actionunit.visitors.ActionListener;
+import com.github.dakusui.actionunit.visitors.ActionPath;
+import com.github.dakusui.actionunit.visitors.Record;
+import com.github.dakusui.actionunit.visitors.ReportingActionPerformer;
+import com.github.dakusui.processstreamer.exceptions.CommandExecutionException;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.dakusui.actionunit.core.ActionSupport.cmd;
+import static com.github.dakusui.actionunit.core.ActionSupport.forEach;
+import static com.github.dakusui.actionunit.core.ActionSupport.leaf;
+import static com.github.dakusui.actionunit.core.ActionSupport.sequential;
+import static com.github.dakusui.actionunit.core.ActionSupport.timeout;
+import static com.github.dakusui.crest.Crest.allOf;
+import static com.github.dakusui.crest.Crest.asBoolean;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asListOf;
+import static com.github.dakusui.crest.Crest.asLong;
+import static com.github.dakusui.crest.Crest.asObject;
+import static com.github.dakusui.crest.Crest.asString;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static com.github.dakusui.processstreamer.core.process.ProcessStreamer.Checker.createCheckerForExitCode;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+public class CommandBatcherTest extends TestUtils.TestBase {
+  private final List<String> first  = new LinkedList<>();
+  private final List<String> second = new LinkedList<>();
+  private final List<String> third  = new LinkedList<>();
+  private final List<String> report = new LinkedList<>();
+
+  @Test
+  public void givenConsecutiveCommands$whenOptimizedAndPerformed$thenRunInOneShellAndOutputsDemultiplexed() {
+    perform(sequential(
+        cmd("echo $$; echo hello").describe("first").downstreamConsumer(first::add).toAction(),
+        cmd("echo $$; printf world").describe("second").downstreamConsumer(second::add).toAction(),
+        cmd("echo $$; echo '?' >&2; echo '!'").describe("third").downstreamConsumer(third::add).toAction()));
+
+    assertThat(
+        asList(first.get(0), second.get(0), third.get(0)),
+        asInteger((List<String> pids) -> new HashSet<>(pids).size()).equalTo(1).$());
+    assertThat(
+        asList(first.subList(1, first.size()), second.subList(1, second.size()), third.subList(1, third.size())),
+        asObject().equalTo(asList(asList("hello"), asList("world"), asList("!"))).$());
+    assertThat(
+        report.toString(),
+        allOf(
+            asString().containsString("[o:0]first").$(),
+            asString().containsString("[o:0]second").$(),
+            asString().containsString("[o:0]third").$()));
+  }
+
+  @Test
+  public void givenCommandsInLoop$whenOptimizedAndPerformed$thenBatchedForEachIteration() {
+    perform(forEach("i", StreamGenerator.fromArray("hello", "world")).perform(sequential(
+        cmd("echo").append(" ").appendQuotedVariable("i").downstreamConsumer(first::add).toAction(),
+        cmd("echo $$").downstreamConsumer(second::add).toAction())));
+
+    assertThat(
+        first,
+        asListOf(String.class).equalTo(asList("hello", "world")).$());
+  }
+
+  @Test
+  public void givenFailingCommandInBatch$whenOptimizedAndPerformed$thenFailsAndFollowingCommandNotRun() {
+    try {
+      perform(sequential(
+          cmd("echo hello").downstreamConsumer(first::add).toAction(),
+          cmd("echo oops; exit 3").downstreamConsumer(second::add).toAction(),
+          cmd("echo world").downstreamConsumer(third::add).toAction()));
+    } catch (CommandExecutionException e) {
+      assertThat(first, asListOf(String.class).equalTo(asList("hello")).$());
+      assertThat(second, asListOf(String.class).equalTo(asList("oops")).$());
+      assertThat(third, asListOf(String.class).isEmpty().$());
+      assertThat(e.getMessage(), asString().containsString("exit 3").$());
+      return;
+    }
+    throw new AssertionError("An exception should have been thrown");
+  }
+
+  @Test
+  public void givenCommandAcceptingNonZeroExitCode$whenOptimizedAndPerformed$thenFollowingCommandRunOnItsOwn() {
+    perform(sequential(
+        cmd("echo $$; exit 1").checker(createCheckerForExitCode(1)).downstreamConsumer(first::add).toAction(),
+        cmd("echo $$").downstreamConsumer(second::add).toAction()));
+
+    assertThat(
+        first.get(0).equals(second.get(0)),
+        asBoolean().isFalse().$());
+  }
+
+  @Test
+  public void givenJavaLeafBetweenCommands$whenOptimized$thenNotChanged() {
+    Action action = sequential(
+        cmd("echo hello").toAction(),
+        leaf(c -> {
+        }),
+        cmd("echo world").toAction());
+
+    assertThat(
+        CommandBatcher.optimize(action) == action,
+        asBoolean().isTrue().$());
+  }
+
+  @Test
+  public void givenCommandWritingToStderr$whenOptimizedAndPerformed$thenStderrNotPassedDownstreamLikeUnbatched() {
+    Action action = sequential(
+        cmd("echo out; echo err >&2").downstreamConsumer(first::add).toAction(),
+        cmd("echo out; echo err >&2").downstreamConsumer(second::add).toAction());
+
+    perform(action);
+    ReportingActionPerformer.create().perform(action);
+
+    assertThat(first, asListOf(String.class).equalTo(asList("out", "out")).$());
+    assertThat(second, asListOf(String.class).equalTo(asList("out", "out")).$());
+  }
+
+  @Test
+  public void givenFailFastParallelActions$whenOptimized$thenStillFailFast() {
+    Action body = sequential(
+        cmd("echo hello").toAction(),
+        cmd("echo world").toAction());
+    Composite composite = (Composite) CommandBatcher.optimize(
+        new Composite.Builder(asList(body, body)).parallel(2).failFast().build());
+    ForEach<?> forEach = (ForEach<?>) CommandBatcher.optimize(
+        forEach("i", StreamGenerator.fromArray("a", "b")).parallelly(2).failFast().perform(body));
+
+    assertThat(composite.children().get(0) != body, asBoolean().isTrue().$());
+    assertThat(composite.isParallel() && composite.parallelism() == 2 && composite.failFast(), asBoolean().isTrue().$());
+    assertThat(forEach.perform() != body, asBoolean().isTrue().$());
+    assertThat(forEach.isParallel() && forEach.parallelism() == 2 && forEach.failFast(), asBoolean().isTrue().$());
+  }
+
+  @Test
+  public void givenBatchedCommands$whenPerformed$thenFirstRecordChargedWithWholeScript() {
+    ReportingActionPerformer performer = ReportingActionPerformer.create();
+    performer.perform(CommandBatcher.optimize(sequential(
+        cmd("echo hello").describe("first").toAction(),
+        cmd("sleep 0.3").describe("second").toAction())));
+
+    assertThat(
+        recordOf(performer, "first").totalTimeSpentInNanos(),
+        asLong().ge(MILLISECONDS.toNanos(300)).$());
+    assertThat(
+        recordOf(performer, "second").totalTimeSpentInNanos(),
+        asLong().lt(MILLISECONDS.toNanos(300)).$());
+  }
+
+  @Test
+  public void givenBatchedCommands$whenPerformed$thenLastExitCodeAvailableToListeners() {
+    List<Object> exitCodes = new LinkedList<>();
+    ReportingActionPerformer performer = ReportingActionPerformer.create();
+    performer.eventBus().register(new ActionListener() {
+      @Override
+      public void onSuccess(ActionPath path, Context context, long timeSpentInNanos) {
+        if (path.action() instanceof CommandLeaf)
+          exitCodes.add(CommandLeaf.lastExitCode().orElse(null));
+      }
+    });
+    performer.perform(CommandBatcher.optimize(sequential(
+        cmd("exit 0").toAction(),
+        cmd("exit 2").checker(createCheckerForExitCode(2)).toAction())));
+
+    assertThat(exitCodes, asListOf(Object.class).equalTo(asList(0, 2)).$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenBatchedCommandsUnderTimeOut$whenTimedOut$thenShellDestroyed() {
+    Action action = timeout(sequential(
+        cmd("sleep 30").toAction(),
+        cmd("echo hello").downstreamConsumer(first::add).toAction())).in(300, MILLISECONDS);
+    try {
+      perform(action);
+    } catch (ActionTimeOutException e) {
+      assertThat(first, asListOf(String.class).isEmpty().$());
+      return;
+    }
+    throw new AssertionError("An exception should have been thrown");
+  }
+
+  private static Record recordOf(ReportingActionPerformer performer, String name) {
+    return performer.getReport().entrySet().stream()
+        .filter(each -> name.equals(String.format("%s", each.getKey())))
+        .map(Map.Entry::getValue)
+        .findFirst()
+        .orElseThrow(() -> new AssertionError("Not reported:" + name));
+  }
+
+  private void perform(Action action) {
+    ReportingActionPerformer.create().performAndReport(CommandBatcher.optimize(action), report::add);
+  }
+}
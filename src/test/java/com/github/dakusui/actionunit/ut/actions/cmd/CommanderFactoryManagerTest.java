@@ -2,6 +2,7 @@ package com.github.dakusui.actionunit.ut.actions.cmd;
 
 import com.github.dakusui.actionunit.actions.cmd.CommanderInitializer;
 import com.github.dakusui.actionunit.actions.cmd.CommanderFactoryManager;
+import com.github.dakusui.actionunit.actions.cmd.unix.ControlMaster;
 import com.github.dakusui.actionunit.actions.cmd.unix.Echo;
 import com.github.dakusui.actionunit.actions.cmd.unix.Scp;
 import com.github.dakusui.actionunit.actions.cmd.unix.SshOptions;
@@ -24,6 +25,7 @@ import java.util.OptionalInt;
 import java.util.function.Function;
 
 import static com.github.dakusui.crest.Crest.allOf;
+import static com.github.dakusui.crest.Crest.asBoolean;
 import static com.github.dakusui.crest.Crest.asString;
 import static com.github.dakusui.crest.Crest.assertThat;
 import static com.github.dakusui.crest.Crest.call;
@@ -433,6 +435,75 @@ public class CommanderFactoryManagerTest {
     }
   }
 
+  public static class WithConnectionMultiplexing extends Base {
+    @Override
+    public CommanderInitializer initializerFor(String host) {
+      return "localhost".equals(host) ?
+          new CommanderInitializer() {
+            @Override
+            public SshOptions sshOptions() {
+              return multiplexedSshOptions();
+            }
+          } :
+          new CommanderInitializer() {
+            @Override
+            public Shell shell() {
+              return new SshShellBuilder(host)
+                  .program("ssh")
+                  .sshOptions(sshOptions())
+                  .build();
+            }
+
+            @Override
+            public SshOptions sshOptions() {
+              return multiplexedSshOptions();
+            }
+          };
+    }
+
+    @Test
+    public void givenControlMaster$whenClosed$thenControlDirectoryIsRemoved() {
+      ControlMaster controlMaster = controlMaster();
+      assertThat(controlMaster.controlDirectory().exists(), asBoolean().isTrue().$());
+
+      this.close();
+
+      assertThat(
+          controlMaster,
+          allOf(
+              asBoolean("isClosed").isTrue().$(),
+              asBoolean(call("controlDirectory").andThen("exists").$()).isFalse().$()));
+    }
+
+    @Override
+    public Function<String, String> substringAfterExpectedRegexesForSshOptions() {
+      return substringAfterRegex("ssh")
+          .after("-o ControlMaster=auto")
+          .after("-o ControlPath=.+/%C")
+          .after("-o ControlPersist=60")
+          .after(hostName())
+          .$();
+    }
+
+    @Override
+    Function<String, String> substringAfterExpectedRegexesForSshOptions_Scp() {
+      return substringAfterRegex("scp")
+          .after("-o").after("ControlMaster=auto")
+          .after("-o").after("ControlPath=.+/%C")
+          .after("-o").after("ControlPersist=60")
+          .after("'/local/file'")
+          .after("'user@host:/remote/file'")
+          .$();
+    }
+
+    private SshOptions multiplexedSshOptions() {
+      return new SshOptions.Builder()
+          .disableStrictHostkeyChecking()
+          .controlMaster(controlMaster())
+          .build();
+    }
+  }
+
   public static String hostName() {
     try {
       return InetAddress.getLocalHost().getHostName();
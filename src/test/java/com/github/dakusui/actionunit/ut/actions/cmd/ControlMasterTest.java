@@ -0,0 +1,86 @@
+package com.github.dakusui.actionunit.ut.actions.cmd;
+
+import com.github.dakusui.actionunit.actions.cmd.unix.ControlMaster;
+import com.github.dakusui.actionunit.actions.cmd.unix.SshOptions;
+import com.github.dakusui.actionunit.ut.utils.TestUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import static com.github.dakusui.crest.Crest.asBoolean;
+import static com.github.dakusui.crest.Crest.asInteger;
+import static com.github.dakusui.crest.Crest.asListOf;
+import static com.github.dakusui.crest.Crest.assertThat;
+import static java.util.Arrays.asList;
+
+/**
+ * Tests for {@link ControlMaster} that do not need {@code ssh}.
+ */
+public class ControlMasterTest extends TestUtils.TestBase {
+  @Test
+  public void givenControlMaster$whenSshOptions$thenControlPathIsUnderItsDirectory() throws Exception {
+    File directory = Files.createTempDirectory("cm-").toFile();
+    try (ControlMaster controlMaster = new ControlMaster("ssh", directory, 30)) {
+      assertThat(
+          controlMaster.sshOptions(),
+          asListOf(String.class).equalTo(asList(
+              "ControlMaster=auto",
+              "ControlPath=" + directory.getAbsolutePath() + "/%C",
+              "ControlPersist=30")).$());
+    }
+  }
+
+  @Test
+  public void givenSshOptionsWithControlMaster$whenFormattedForSshAndScp$thenEachOptionFollowsDashO() throws Exception {
+    File directory = Files.createTempDirectory("cm-").toFile();
+    try (ControlMaster controlMaster = new ControlMaster("ssh", directory, 30)) {
+      SshOptions sshOptions = new SshOptions.Builder()
+          .disableStrictHostkeyChecking()
+          .controlMaster(controlMaster)
+          .build();
+      List<String> expected = asList(
+          "-o", "StrictHostkeyChecking=no",
+          "-o", "ControlMaster=auto",
+          "-o", "ControlPath=" + directory.getAbsolutePath() + "/%C",
+          "-o", "ControlPersist=30");
+
+      assertThat(sshOptions.options(SshOptions.Formatter.forSsh()), asListOf(String.class).equalTo(expected).$());
+      assertThat(sshOptions.options(SshOptions.Formatter.forScp()), asListOf(String.class).equalTo(expected).$());
+    }
+  }
+
+  @Test
+  public void givenDefaultControlMaster$whenControlPathExpanded$thenFitsInUnixSocketPathLimit() {
+    try (ControlMaster controlMaster = new ControlMaster(60)) {
+      // ssh expands '%C' into a 40-character hash, and sun_path holds 104 bytes on macOS.
+      int length = controlMaster.controlDirectory().getAbsolutePath().length() + "/".length() + 40;
+      assertThat(length, asInteger().lt(104).$());
+    }
+  }
+
+  @Test
+  public void givenOwner$whenOfCalledTwiceAndReleased$thenSameMasterIsReturnedAndClosed() {
+    Object owner = new Object();
+    ControlMaster controlMaster = ControlMaster.of(owner);
+
+    assertThat(ControlMaster.of(owner) == controlMaster, asBoolean().isTrue().$());
+    ControlMaster.release(owner);
+    assertThat(controlMaster.isClosed(), asBoolean().isTrue().$());
+    assertThat(controlMaster.controlDirectory().exists(), asBoolean().isFalse().$());
+  }
+
+  @Test(timeout = 10_000)
+  public void givenOwnerNotReleased$whenCollected$thenItsMasterIsClosed() throws InterruptedException {
+    ControlMaster controlMaster = ControlMaster.of(new Object());
+
+    while (!controlMaster.isClosed()) {
+      System.gc();
+      Thread.sleep(10);
+      // Masters of collected owners are closed when control masters are looked up.
+      ControlMaster.release(new Object());
+    }
+    assertThat(controlMaster.controlDirectory().exists(), asBoolean().isFalse().$());
+  }
+}
@@ -47,4 +47,34 @@ public class StableTemplatingUtilsUnitTest {
         asString().equalTo("Hello world, everyone.").$()
     );
   }
+
+  @Test
+  public void givenPlaceHoldersSharingPrefix$whenTemplating$thenFirstOneInMappingWins() {
+    assertThat(
+        StableTemplatingUtils.template(
+            "echo $1 $10",
+            new TreeMap<String, Object>() {{
+              put("$1", "A");
+              put("$10", "B");
+            }}
+        ),
+        asString().equalTo("echo A A0").$()
+    );
+  }
+
+  @Test
+  public void givenCompiledTemplate$whenRenderedTwice$thenEachValuesRendered() {
+    StableTemplatingUtils.Template template = StableTemplatingUtils.compile(
+        "cp {{1}} {{0}} {{1}}",
+        StableTemplatingUtils.toSlots(i -> "{{" + i + "}}", 2));
+
+    assertThat(
+        template.render(new Object[] { "a", "b" }),
+        asString().equalTo("cp b a b").$()
+    );
+    assertThat(
+        template.render(new Object[] { "x", null }),
+        asString().equalTo("cp null x null").$()
+    );
+  }
 }